@@ -2,7 +2,7 @@
  * Created by Brian Lau on 2018-03-20
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-03-28
+ * Last modified: 2018-04-16
  */
 
 package com.justbnutz.dockorientationrotatorlator;
@@ -11,7 +11,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -29,7 +28,9 @@ public class ActivityRotatorlator extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        StartupTimings.mark(StartupTimings.MARK_MAIN_CREATED);
+
+        mSharedPrefs = ApplicationRotatorlator.getSharedPrefs(this);
 
         // Init the layout
         setContentView(R.layout.activity_rotatorlator);
@@ -125,17 +126,18 @@ public class ActivityRotatorlator extends AppCompatActivity {
         // Invert the preference
         boolean showPanel = !mSharedPrefs.getBoolean(getString(R.string.prefkey_show_wireless_options), true);
 
-        SharedPreferences.Editor updatePrefs = mSharedPrefs.edit();
-        updatePrefs.putBoolean(getString(R.string.prefkey_show_wireless_options), showPanel);
+        mSharedPrefs.edit()
+                .putBoolean(getString(R.string.prefkey_show_wireless_options), showPanel)
+                .apply();
 
         // If we're disabling the panel, set the Wireless Charging option to "No Change" as well
         if (showPanel) {
-            updatePrefs.putInt(getString(R.string.prefkey_set_autorotate_wireless), 0);
+            ProfileStore.getInstance(this).setRotationMode(
+                    ReceiverPortStatus.POWER_STATUS_WIRELESSLY_CHARGING,
+                    ReceiverPortStatus.ROTATION_MODE_NO_CHANGE
+            );
         }
 
-        // Commit the change
-        updatePrefs.apply();
-
-        // GUI update will be handled in the OnSharedPreferenceChangeListener in the Configurator Fragment
+        // GUI update will be handled in the Configurator Fragment's preference / profile listeners
     }
 }
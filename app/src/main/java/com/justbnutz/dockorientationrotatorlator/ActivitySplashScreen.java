@@ -3,7 +3,7 @@ package com.justbnutz.dockorientationrotatorlator;
  * Created by Brian Lau on 2018-03-20
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-03-23
+ * Last modified: 2018-04-16
  */
 
 import android.Manifest;
@@ -12,6 +12,7 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
 import android.support.v4.app.ActivityCompat;
@@ -22,6 +23,10 @@ import android.support.v7.app.AppCompatActivity;
 /**
  * Activity for showing a splash screen while we're waiting for the app to load.
  *
+ * If we've already got the permission, it goes straight through to the main Activity from onCreate()
+ * (no waiting for onResume(), no transition), with the preferences / profile loading in the
+ * background in the meantime. The permission flow only comes into it if we don't have it yet.
+ *
  * Reference: https://android.jlelse.eu/right-way-to-create-splash-screen-on-android-e7f1709ba154
  * - 2018/03/20
  */
@@ -36,13 +41,28 @@ public class ActivitySplashScreen extends AppCompatActivity {
     // region ================== PRIMARY FLOW ==================
     // ====== ================== ============ ==================
 
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // (The launch timing starts in ApplicationRotatorlator, this is a no-op if the preload is already going)
+        StartupPreloader.preload(this);
+
+        // Fast path, nothing to ask for so don't hang around
+        if (hasWriteSettingsPermission()) {
+            startMainActivity();
+        }
+    }
+
+
     @Override
     protected void onResume() {
         super.onResume();
 
         // Run the permission check, placing in onResume so that it can rerun when coming back from Permission Settings menu
-        startPermissionCheckFlow();
-
+        if (!isFinishing()) {
+            startPermissionCheckFlow();
+        }
     }
 
 
@@ -59,8 +79,9 @@ public class ActivitySplashScreen extends AppCompatActivity {
                 )
         );
 
-        // Close Splash Screen Activity
+        // Close Splash Screen Activity, the splash is just the window background so no need to animate out of it
         finish();
+        overridePendingTransition(0, 0);
     }
 
     // endregion
@@ -137,6 +158,20 @@ public class ActivitySplashScreen extends AppCompatActivity {
     }
 
 
+    /**
+     * Return whether we can already write to System Settings
+     */
+    private boolean hasWriteSettingsPermission() {
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return Settings.System.canWrite(this);
+
+        } else {
+            return ContextCompat.checkSelfPermission(this, Manifest.permission.WRITE_SETTINGS) == PackageManager.PERMISSION_GRANTED;
+        }
+    }
+
+
     /**
      * Request the Write Settings permission
      */
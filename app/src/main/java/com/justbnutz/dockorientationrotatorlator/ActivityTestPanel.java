@@ -2,7 +2,7 @@
  * Created by Brian Lau on 2018-03-31
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-03-31
+ * Last modified: 2018-04-16
  */
 
 package com.justbnutz.dockorientationrotatorlator;
@@ -18,15 +18,14 @@ import android.content.pm.PackageManager;
 import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.provider.Settings;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
-import android.text.method.ScrollingMovementMethod;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.Surface;
@@ -34,6 +33,11 @@ import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.justbnutz.dockorientationrotatorlator.core.DeviceState;
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+
+import java.util.Locale;
+
 /**
  * Activity for testing the different dock/orientation profiles
  */
@@ -41,8 +45,6 @@ public class ActivityTestPanel extends AppCompatActivity {
 
     public static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".ActivityTestPanel";
 
-    private static final String BUNDLEKEY_EVENT_LOG = TAG + ".BUNDLEKEY_EVENT_LOG";
-
     // ContentObserver for the device Rotation setting
     private ObserverRotationSetting mRotationSettingsObserver;
 
@@ -53,7 +55,14 @@ public class ActivityTestPanel extends AppCompatActivity {
     TextView mTxtRotationUser;
     TextView mTxtStateDock;
     TextView mTxtStateBattery;
-    TextView mTxtEventLog;
+    TextView mTxtRotationWrites;
+    TextView mTxtRotationConfirmations;
+    TextView mTxtLatency;
+    TextView mTxtEventLogEmpty;
+    RecyclerView mRecyclerEventLog;
+
+    // Event Log contents, only the visible rows get rendered
+    AdapterEventLog mAdapterEventLog;
 
     FloatingActionButton mBtnCopyLogs;
 
@@ -73,8 +82,9 @@ public class ActivityTestPanel extends AppCompatActivity {
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        // Init the ContentObserver
-        mRotationSettingsObserver = new ObserverRotationSetting(new Handler());
+        // Init the ContentObserver, it'll start and stop along with the Activity
+        mRotationSettingsObserver = new ObserverRotationSetting();
+        mRotationSettingsObserver.bindTo(this, this);
 
         // Init the layout
         setContentView(R.layout.activity_test_panel);
@@ -86,26 +96,27 @@ public class ActivityTestPanel extends AppCompatActivity {
         mTxtRotationUser = findViewById(R.id.txt_rotation_user);
         mTxtStateDock = findViewById(R.id.txt_dock_state);
         mTxtStateBattery = findViewById(R.id.txt_battery_state);
-        mTxtEventLog = findViewById(R.id.txt_event_log);
+        mTxtRotationWrites = findViewById(R.id.txt_rotation_writes);
+        mTxtRotationConfirmations = findViewById(R.id.txt_rotation_confirmations);
+        mTxtLatency = findViewById(R.id.txt_latency);
+        mTxtEventLogEmpty = findViewById(R.id.txt_event_log_empty);
+        mRecyclerEventLog = findViewById(R.id.recycler_event_log);
 
         mBtnCopyLogs = findViewById(R.id.btn_copy_logs);
         mBtnCopyLogs.setOnClickListener(mFabClickListener);
 
-        // Disable word wrap and make the text selectable and scrollable in the Event Log
-        mTxtEventLog.setMovementMethod(new ScrollingMovementMethod());
-
-        mTxtEventLog.setHorizontallyScrolling(true);
-        mTxtEventLog.setHorizontalScrollBarEnabled(true);
-        mTxtEventLog.setVerticalScrollBarEnabled(true);
+        // Link the Event Log, its size is fixed by the layout so new entries don't need to re-measure it
+        mAdapterEventLog = new AdapterEventLog();
 
-        mTxtEventLog.setTextIsSelectable(true);
+        mRecyclerEventLog.setHasFixedSize(true);
+        mRecyclerEventLog.setAdapter(mAdapterEventLog);
 
         // Restore the Event contents if we rotated the screen
         if (savedInstanceState != null) {
-            mTxtEventLog.setText(
-                    savedInstanceState.getString(BUNDLEKEY_EVENT_LOG, "")
-            );
+            mAdapterEventLog.restoreState(savedInstanceState);
         }
+
+        updateEventLogVisibility();
     }
 
 
@@ -113,7 +124,7 @@ public class ActivityTestPanel extends AppCompatActivity {
     protected void onStart() {
         super.onStart();
 
-        mRotationSettingsObserver.startObserver(this);
+        MonitorSnapshot.subscribe(mSnapshotListener);
         initBroadcastReceivers();
     }
 
@@ -130,7 +141,12 @@ public class ActivityTestPanel extends AppCompatActivity {
     @Override
     protected void onStop() {
         clearBroadcastReceivers();
-        mRotationSettingsObserver.stopObserver();
+        MonitorSnapshot.unsubscribe(mSnapshotListener);
+
+        if (!ServicePortStatusHandler.isArmed()) {
+            // We were the ones keeping the port state up to date, nobody is now
+            PowerSnapshot.getInstance().invalidate();
+        }
 
         super.onStop();
     }
@@ -138,10 +154,7 @@ public class ActivityTestPanel extends AppCompatActivity {
 
     @Override
     protected void onSaveInstanceState(Bundle outState) {
-        outState.putString(
-                BUNDLEKEY_EVENT_LOG,
-                mTxtEventLog.getText().toString()
-        );
+        mAdapterEventLog.saveState(outState);
 
         super.onSaveInstanceState(outState);
     }
@@ -161,6 +174,9 @@ public class ActivityTestPanel extends AppCompatActivity {
         // Unchecked by default (in XML)
         mMnuShowBatteryChanged = menu.findItem(R.id.mnu_show_battery_changed);
 
+        // Tracing is process-wide, so show whatever it's currently set to
+        menu.findItem(R.id.mnu_trace_sections).setChecked(TraceSections.isEnabled());
+
         return true;
     }
 
@@ -174,6 +190,15 @@ public class ActivityTestPanel extends AppCompatActivity {
                 item.setChecked(!item.isChecked());
                 return true;
 
+            case R.id.mnu_trace_sections:
+                item.setChecked(!item.isChecked());
+                TraceSections.setEnabled(item.isChecked());
+                return true;
+
+            case R.id.mnu_copy_event_journal:
+                copyEventJournal();
+                return true;
+
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -188,10 +213,7 @@ public class ActivityTestPanel extends AppCompatActivity {
 
 
     /**
-     * Handler for receiving incoming Local and System Intents.
-     *
-     * Should be able to use the same BroadcastReceiver for both since we're doing the same action
-     * for all incoming Intents; Just opening them up and seeing whats inside.
+     * Handler for receiving incoming System Intents, just opening them up and seeing whats inside.
      */
     private final BroadcastReceiver mIntentCheckerReceiver = new BroadcastReceiver() {
 
@@ -203,7 +225,8 @@ public class ActivityTestPanel extends AppCompatActivity {
             // Since we're just analysing Intents, can just do the same action for all Intents
             if (!TextUtils.isEmpty(actionKey)) {
 
-                // Update labels
+                // Feed any port events into the snapshot (anything else gets ignored), then update the labels from it
+                PowerSnapshot.getInstance().decodeIntent(intent);
                 setStateLabels();
 
                 // Log the Intent
@@ -213,18 +236,38 @@ public class ActivityTestPanel extends AppCompatActivity {
     };
 
 
+    /**
+     * Log the app's own events (Rotation-Lock and Power Status updates) straight off the event bus
+     */
+    private final MonitorEventBus.Subscriber mEventSubscriber = new MonitorEventBus.Subscriber() {
+        @Override
+        public void onMonitorEvent(int eventType, long deviceState) {
+            logEvent(MonitorEventBus.getEventName(eventType), null);
+        }
+    };
+
+
+    /**
+     * Refresh the labels whenever something else (e.g. the monitor) publishes a new state snapshot
+     */
+    private final MonitorSnapshot.OnSnapshotChangedListener mSnapshotListener = new MonitorSnapshot.OnSnapshotChangedListener() {
+        @Override
+        public void onSnapshotChanged(@NonNull MonitorSnapshot snapshot) {
+            showStateLabels(snapshot);
+        }
+    };
+
+
     /**
      * Register to receive incoming Intents with the given Filters.
      */
     private void initBroadcastReceivers() {
 
-        // Register the listener for LocalBroadcast Intents (for Rotation-Lock updates)
-        IntentFilter localFilter = new IntentFilter();
-        localFilter.addAction(ObserverRotationSetting.ACTION_KEY_ROTATION_SETTING_UPDATED);
-
-        LocalBroadcastManager.getInstance(this).registerReceiver(
-                mIntentCheckerReceiver,
-                localFilter
+        // Subscribe to the app's own events (for Rotation-Lock updates, and Power Status while the monitor is running)
+        MonitorEventBus.subscribe(
+                mEventSubscriber,
+                MonitorEventBus.EVENT_ALL,
+                MonitorEventBus.DISPATCH_MAIN
         );
 
         // Register the listener for device-wide Intents (for Power Status updates)
@@ -246,9 +289,7 @@ public class ActivityTestPanel extends AppCompatActivity {
      */
     private void clearBroadcastReceivers() {
 
-        LocalBroadcastManager.getInstance(this).unregisterReceiver(
-                mIntentCheckerReceiver
-        );
+        MonitorEventBus.unsubscribe(mEventSubscriber);
 
         unregisterReceiver(
                 mIntentCheckerReceiver
@@ -263,15 +304,24 @@ public class ActivityTestPanel extends AppCompatActivity {
 
 
     /**
-     * Update the header label fields in the Test Panel
+     * Update the header label fields in the Test Panel. The Settings and port state come from the
+     * published MonitorSnapshot: whatever it already knows is shown straight away, anything it doesn't
+     * gets looked up on the pipeline thread and shown once it's back.
      */
     private void setStateLabels() {
+        showStateLabels(MonitorSnapshot.requestPopulated(this, true, mSnapshotListener));
+    }
+
+
+    private void showStateLabels(@NonNull MonitorSnapshot snapshot) {
+
         showOsBuildVersion();
         showSystemSettingsPermission();
-        showAccelerometerRotation();
-        showUserRotation();
-        showDockState();
-        showBatteryState();
+        showAccelerometerRotation(snapshot);
+        showUserRotation(snapshot);
+        showDockState(snapshot);
+        showBatteryState(snapshot);
+        showRotationActuatorStats();
     }
 
 
@@ -313,13 +363,11 @@ public class ActivityTestPanel extends AppCompatActivity {
      *
      * Reference: https://stackoverflow.com/a/4909079
      */
-    private void showAccelerometerRotation() {
+    private void showAccelerometerRotation(@NonNull MonitorSnapshot snapshot) {
 
-        int accelerometerRotation = Settings.System.getInt(
-                getContentResolver(),
-                Settings.System.ACCELEROMETER_ROTATION,
-                -1
-        );
+        int accelerometerRotation = (snapshot.getAutoRotate() != PowerStateTracker.STATE_UNKNOWN)
+                ? snapshot.getAutoRotate()
+                : -1;
 
         String label;
 
@@ -345,13 +393,10 @@ public class ActivityTestPanel extends AppCompatActivity {
      * Show the current User-Rotation setting of the device.
      * This is the rotation that will be used when Accelerometer Rotation is disabled (0).
      */
-    private void showUserRotation() {
+    private void showUserRotation(@NonNull MonitorSnapshot snapshot) {
 
-        int userRotation = Settings.System.getInt(
-                getContentResolver(),
-                Settings.System.USER_ROTATION,
-                -1
-        );
+        // (ROTATION_NONE if there isn't one)
+        int userRotation = snapshot.getUserRotation();
 
         String label;
 
@@ -386,15 +431,13 @@ public class ActivityTestPanel extends AppCompatActivity {
      *
      * Reference: https://developer.android.com/training/monitoring-device-state/docking-monitoring.html
      */
-    private void showDockState() {
+    private void showDockState(@NonNull MonitorSnapshot snapshot) {
 
-        IntentFilter intentFilter = new IntentFilter(Intent.ACTION_DOCK_EVENT);
-        Intent dockStatus = registerReceiver(null, intentFilter);
+        int dockState = DeviceState.getDockState(snapshot.getDeviceState());
 
         String label = mInitSetting;
 
-        if (dockStatus != null) {
-            int dockState = dockStatus.getIntExtra(Intent.EXTRA_DOCK_STATE, -1);
+        if (dockState != PowerStateTracker.STATE_UNKNOWN) {
 
             switch (dockState) {
                 case Intent.EXTRA_DOCK_STATE_UNDOCKED:
@@ -432,15 +475,13 @@ public class ActivityTestPanel extends AppCompatActivity {
      *
      * Reference: https://developer.android.com/training/monitoring-device-state/battery-monitoring.html
      */
-    private void showBatteryState() {
+    private void showBatteryState(@NonNull MonitorSnapshot snapshot) {
 
-        IntentFilter intentFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-        Intent batteryStatus = registerReceiver(null, intentFilter);
+        int plugState = DeviceState.getPlugState(snapshot.getDeviceState());
 
         String label = mInitSetting;
 
-        if (batteryStatus != null) {
-            int plugState = batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
+        if (plugState != PowerStateTracker.STATE_UNKNOWN) {
 
             switch (plugState) {
                 case BatteryManager.BATTERY_PLUGGED_AC:
@@ -464,6 +505,39 @@ public class ActivityTestPanel extends AppCompatActivity {
         mTxtStateBattery.setText(label);
     }
 
+
+    /**
+     * Show how the Rotation Actuator has been getting on: Settings writes made vs skipped, and how many
+     * transitions were confirmed to have landed on the device (plus retries and the last confirmation time),
+     * along with the p50 / p95 / p99 latency of each stage on the way there.
+     */
+    private void showRotationActuatorStats() {
+
+        RotationActuator rotationActuator = RotationActuator.getInstance();
+
+        mTxtRotationWrites.setText(
+                String.format(
+                        Locale.US,
+                        "%d written / %d skipped",
+                        rotationActuator.getSettingsWriteCount(),
+                        rotationActuator.getSkippedWriteCount()
+                )
+        );
+
+        mTxtRotationConfirmations.setText(
+                String.format(
+                        Locale.US,
+                        "%d ok / %d failed / %d retries (last: %d ms)",
+                        rotationActuator.getConfirmedTransitionCount(),
+                        rotationActuator.getUnconfirmedTransitionCount(),
+                        rotationActuator.getConfirmationRetryCount(),
+                        rotationActuator.getLastConfirmationMs()
+                )
+        );
+
+        mTxtLatency.setText(LatencyTracker.getInstance().buildReport());
+    }
+
     // endregion
 
 
@@ -472,37 +546,39 @@ public class ActivityTestPanel extends AppCompatActivity {
 
 
     /**
-     * Add an entry to the Event Log textbox, showing the ActionKey of a given
-     * Intent and the keys of any Extras it might be carrying.
+     * Add an entry to the Event Log, showing the ActionKey of a given Intent and the keys of any
+     * Extras it might be carrying.
      */
     private void logEvent(String actionKey, @Nullable Bundle intentExtras) {
 
         if (!actionKey.equals(Intent.ACTION_BATTERY_CHANGED) || (mMnuShowBatteryChanged != null && mMnuShowBatteryChanged.isChecked())) {
 
-            // If it exists, trim off the package name prefix from the front of the Tag
-            if (actionKey.startsWith(ActivityRotatorlator.PACKAGE_NAME)) {
-                actionKey = actionKey.substring(
-                        ActivityRotatorlator.PACKAGE_NAME.length()
-                );
-            }
+            // Only follow the new entry if we were already at the bottom of the log (don't yank the view away while scrolling back)
+            boolean followLog = !mRecyclerEventLog.canScrollVertically(1);
 
-            // Enter the Intent ActionKey to the box
-            mTxtEventLog.append(
-                    String.format("%s:\n", actionKey)
-            );
+            mAdapterEventLog.logEvent(actionKey, intentExtras);
 
-            // If present, enter the list of Extra Keys underneath
-            if (intentExtras != null) {
-                for (String eachKey : intentExtras.keySet()) {
-                    mTxtEventLog.append(
-                            String.format("- %s\n", eachKey)
-                    );
-                }
+            if (followLog) {
+                mRecyclerEventLog.scrollToPosition(mAdapterEventLog.getItemCount() - 1);
             }
+
+            updateEventLogVisibility();
         }
     }
 
 
+    /**
+     * Show the Event Log hint while there's nothing in the log
+     */
+    private void updateEventLogVisibility() {
+
+        boolean isEmpty = (mAdapterEventLog.getItemCount() == 0);
+
+        mTxtEventLogEmpty.setVisibility(isEmpty ? View.VISIBLE : View.INVISIBLE);
+        mRecyclerEventLog.setVisibility(isEmpty ? View.INVISIBLE : View.VISIBLE);
+    }
+
+
     /**
      * Listener to copy out the current contents of the Test Panel to the Clipboard
      *
@@ -531,6 +607,39 @@ public class ActivityTestPanel extends AppCompatActivity {
     };
 
 
+    /**
+     * Decode the on-device EventJournal and copy it out to the Clipboard. The decoding reads the
+     * segment files, so keep that on the pipeline thread (which is also where most of the records
+     * get written from, so it won't be decoding in the middle of one).
+     * - 2018/04/13
+     */
+    private void copyEventJournal() {
+
+        final Context appContext = getApplicationContext();
+
+        PipelineExecutor.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+
+                final String journalOutput = new EventJournalExporter().export(EventJournal.getInstance(appContext));
+
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+
+                        ClipboardManager clipboardManager = (ClipboardManager) appContext.getSystemService(Context.CLIPBOARD_SERVICE);
+
+                        if (clipboardManager != null) {
+                            clipboardManager.setPrimaryClip(ClipData.newPlainText("Event Journal", journalOutput));
+                            Toast.makeText(appContext, R.string.toast_journal_copied, Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+
     /**
      * Collect all the outputs from all the TextViews in the Activity into a nicely formatted plain-text output
      */
@@ -542,8 +651,12 @@ public class ActivityTestPanel extends AppCompatActivity {
                 buildLogLine(R.string.lbl_rotation_user, mTxtRotationUser.getText()) +
                 buildLogLine(R.string.lbl_dock_state, mTxtStateDock.getText()) +
                 buildLogLine(R.string.lbl_battery_state, mTxtStateBattery.getText()) +
+                buildLogLine(R.string.lbl_rotation_writes, mTxtRotationWrites.getText()) +
+                buildLogLine(R.string.lbl_rotation_confirmations, mTxtRotationConfirmations.getText()) +
+                buildLogLine(R.string.lbl_latency, "\n" + mTxtLatency.getText()) +
+                buildLogLine(R.string.lbl_startup_timings, "\n" + StartupTimings.buildReport()) +
                 "\n" +
-                buildLogLine(R.string.lbl_log_hint, mTxtEventLog.getText());
+                buildLogLine(R.string.lbl_log_hint, mAdapterEventLog.buildLogOutput());
     }
 
 
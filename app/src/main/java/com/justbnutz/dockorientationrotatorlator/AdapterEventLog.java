@@ -0,0 +1,171 @@
+/*
+ * Created by Brian Lau on 2018-04-12
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-12
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+
+/**
+ * RecyclerView Adapter for the Test Panel Event Log. The events themselves live in an EventLogBuffer,
+ * they only get turned into text when a row is actually bound (or when the log is copied out).
+ */
+public class AdapterEventLog extends RecyclerView.Adapter<AdapterEventLog.ViewHolderEventLog> {
+
+    // How many events to keep before the oldest start dropping off
+    private static final int EVENT_LOG_CAPACITY = 500;
+
+    private final EventLogBuffer mEventLog;
+
+    // Reused for formatting each row
+    private final StringBuilder mRowBuilder;
+    private final SimpleDateFormat mTimeFormat;
+    private final Date mTimestamp;
+
+
+    AdapterEventLog() {
+        mEventLog = new EventLogBuffer(EVENT_LOG_CAPACITY);
+
+        mRowBuilder = new StringBuilder();
+        mTimeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        mTimestamp = new Date();
+    }
+
+
+    /**
+     * Add an event to the bottom of the log, dropping the oldest one off the top if it's full
+     */
+    void logEvent(@NonNull String actionKey, @Nullable Bundle intentExtras) {
+
+        boolean droppedOldest = mEventLog.add(System.currentTimeMillis(), actionKey, intentExtras);
+
+        if (droppedOldest) {
+            notifyItemRemoved(0);
+        }
+
+        notifyItemInserted(getItemCount() - 1);
+    }
+
+
+    void saveState(@NonNull Bundle outState) {
+        mEventLog.saveState(outState);
+    }
+
+
+    void restoreState(@NonNull Bundle savedState) {
+        mEventLog.restoreState(savedState);
+        notifyDataSetChanged();
+    }
+
+
+    /**
+     * Write the whole log out as plain text (oldest first), for copying out of the Test Panel
+     */
+    String buildLogOutput() {
+
+        StringBuilder logOutput = new StringBuilder();
+
+        for (int i = 0; i < mEventLog.size(); i++) {
+            appendEntry(logOutput, i);
+        }
+
+        return logOutput.toString();
+    }
+
+
+    /**
+     * Format the given entry into the given StringBuilder, showing the ActionKey of the Intent and
+     * the keys of any Extras it was carrying.
+     */
+    private void appendEntry(StringBuilder builder, int position) {
+
+        String actionKey = mEventLog.getActionKey(mEventLog.getActionId(position));
+
+        // If it exists, trim off the package name prefix from the front of the Tag
+        if (actionKey.startsWith(ActivityRotatorlator.PACKAGE_NAME)) {
+            actionKey = actionKey.substring(
+                    ActivityRotatorlator.PACKAGE_NAME.length()
+            );
+        }
+
+        mTimestamp.setTime(mEventLog.getTimestamp(position));
+
+        builder.append(mTimeFormat.format(mTimestamp))
+                .append(' ')
+                .append(actionKey)
+                .append(":\n");
+
+        // If present, enter the list of Extra Keys underneath
+        int extrasMask = mEventLog.getExtrasMask(position);
+
+        for (int bitIndex = 0; extrasMask != 0 && bitIndex < 31; bitIndex++) {
+            if ((extrasMask & (1 << bitIndex)) != 0) {
+                builder.append("- ")
+                        .append(mEventLog.getExtraKey(bitIndex))
+                        .append('\n');
+            }
+        }
+
+        if ((extrasMask & EventLogBuffer.EXTRAS_MASK_OVERFLOW) != 0) {
+            builder.append("- (other keys)\n");
+        }
+    }
+
+
+    @NonNull
+    @Override
+    public ViewHolderEventLog onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+
+        View itemView = LayoutInflater
+                .from(parent.getContext())
+                .inflate(R.layout.itemrow_event_log, parent, false);
+
+        return new ViewHolderEventLog(itemView);
+    }
+
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolderEventLog viewHolder, int position) {
+
+        mRowBuilder.setLength(0);
+        appendEntry(mRowBuilder, position);
+
+        // Drop the trailing newline
+        mRowBuilder.setLength(mRowBuilder.length() - 1);
+
+        viewHolder.txtEventLogEntry.setText(mRowBuilder);
+    }
+
+
+    @Override
+    public int getItemCount() {
+        return mEventLog.size();
+    }
+
+
+    static class ViewHolderEventLog extends RecyclerView.ViewHolder {
+
+        final TextView txtEventLogEntry;
+
+        ViewHolderEventLog(View itemView) {
+            super(itemView);
+
+            txtEventLogEntry = itemView.findViewById(R.id.txt_event_log_entry);
+        }
+    }
+}
@@ -2,13 +2,12 @@
  * Created by Brian Lau on 2018-03-28
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-03-28
+ * Last modified: 2018-04-16
  */
 
 package com.justbnutz.dockorientationrotatorlator;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.drawable.Animatable;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
@@ -33,17 +32,35 @@ public class AdapterRotatorlatorConfigs extends RecyclerView.Adapter<AdapterRota
     private static final String PAYLOAD_KEY_UPDATE_LABELS = "PAYLOAD_KEY_UPDATE_LABELS";
 
     private final Context mContext;
-    private final SharedPreferences mSharedPrefs;
 
     private List<String> mPowerStatePrefKey;
 
-    AdapterRotatorlatorConfigs(@NonNull Context context, @NonNull SharedPreferences sharedPreferences) {
+    AdapterRotatorlatorConfigs(@NonNull Context context) {
         mContext = context;
-        mSharedPrefs = sharedPreferences;
         mPowerStatePrefKey = new ArrayList<>();
     }
 
 
+    /**
+     * Set the whole list of Toggle Panels in one go (e.g. the initial list), rather than inserting
+     * them one at a time
+     */
+    void setTogglePanels(@NonNull List<String> powerStatePrefKeys) {
+
+        mPowerStatePrefKey.clear();
+
+        for (String eachPrefKey : powerStatePrefKeys) {
+            if (!TextUtils.isEmpty(eachPrefKey)
+                    && !mPowerStatePrefKey.contains(eachPrefKey)) {
+
+                mPowerStatePrefKey.add(eachPrefKey);
+            }
+        }
+
+        notifyDataSetChanged();
+    }
+
+
     /**
      * Add a Toggle Panel to the list, must be one of the known Power State types that is recognised
      * by ReceiverPortStatus
@@ -131,7 +148,7 @@ public class AdapterRotatorlatorConfigs extends RecyclerView.Adapter<AdapterRota
 
         // Set the base properties of the Toggle Panel (these won't change)
         viewHolder.prefKey = mPowerStatePrefKey.get(position);
-        viewHolder.rotationModeIndex = mSharedPrefs.getInt(viewHolder.prefKey, 0);
+        viewHolder.powerStatus = RotationProfileTable.getPowerStatus(mContext, viewHolder.prefKey);
 
         // Update the Views depending on which Power State toggle we're setting up
         if (viewHolder.prefKey
@@ -169,63 +186,21 @@ public class AdapterRotatorlatorConfigs extends RecyclerView.Adapter<AdapterRota
 
     private void setPowerStateRotationModeLabels(ViewHolderRotatorlatorConfig viewHolder) {
 
-        // Fetch the stored RotationMode for the current Power State (index stored in the ViewHolder)
-        ReceiverPortStatus.RotationMode rotationMode = getRotationMode(
-                viewHolder.rotationModeIndex
-        );
+        if (viewHolder.powerStatus == ReceiverPortStatus.POWER_STATUS_NONE) {
+            return;
+        }
+
+        // Fetch the stored RotationMode for the current Power State from the compiled profile
+        RotationProfileTable profileTable = RotationProfileTable.getInstance(mContext);
+
+        viewHolder.rotationModeIndex = profileTable.getRotationMode(viewHolder.powerStatus);
 
         // Update the TextSwitcher and ImageButton accordingly
-        switch (rotationMode) {
-
-            case PORTRAIT:
-                updateRotationModeLabels(
-                        viewHolder,
-                        mContext.getString(R.string.lbl_status_portrait),
-                        R.drawable.avd_no_change_to_portrait
-                );
-                break;
-
-            case PORTRAIT_INVERTED:
-                updateRotationModeLabels(
-                        viewHolder,
-                        mContext.getString(R.string.lbl_status_portrait_inverted),
-                        R.drawable.avd_portrait_to_portrait_inverted
-                );
-                break;
-
-            case LANDSCAPE:
-                updateRotationModeLabels(
-                        viewHolder,
-                        mContext.getString(R.string.lbl_status_landscape),
-                        R.drawable.avd_portrait_to_landscape
-                );
-                break;
-
-            case LANDSCAPE_INVERTED:
-                updateRotationModeLabels(
-                        viewHolder,
-                        mContext.getString(R.string.lbl_status_landscape_inverted),
-                        R.drawable.avd_landscape_to_landscape_inverted
-                );
-                break;
-
-            case AUTO_ROTATE:
-                updateRotationModeLabels(
-                        viewHolder,
-                        mContext.getString(R.string.lbl_status_auto_rotate),
-                        R.drawable.avd_landscape_to_rotate
-                );
-                break;
-
-            case NO_CHANGE:
-            default:
-                updateRotationModeLabels(
-                        viewHolder,
-                        mContext.getString(R.string.lbl_status_no_change),
-                        R.drawable.avd_rotate_to_no_change
-                );
-                break;
-        }
+        updateRotationModeLabels(
+                viewHolder,
+                mContext.getString(RotationModeResources.getModeLabel(viewHolder.rotationModeIndex)),
+                RotationModeResources.getModeToggleIcon(viewHolder.rotationModeIndex)
+        );
     }
 
 
@@ -252,23 +227,6 @@ public class AdapterRotatorlatorConfigs extends RecyclerView.Adapter<AdapterRota
     }
 
 
-    /**
-     * Fetch the corresponding RotationMode to the given index, defaults to NO_CHANGE if the index is invalid
-     */
-    private ReceiverPortStatus.RotationMode getRotationMode(int modeIndex) {
-
-        ReceiverPortStatus.RotationMode rotationMode = ReceiverPortStatus.RotationMode.NO_CHANGE;
-
-        if (modeIndex >= 0
-                && modeIndex < ReceiverPortStatus.RotationMode.values().length) {
-
-            rotationMode = ReceiverPortStatus.RotationMode.values()[modeIndex];
-        }
-
-        return rotationMode;
-    }
-
-
     @Override
     public int getItemCount() {
         return mPowerStatePrefKey.size();
@@ -282,6 +240,7 @@ public class AdapterRotatorlatorConfigs extends RecyclerView.Adapter<AdapterRota
         final ImageButton btnPowerStateOrientationToggle;
 
         String prefKey;
+        int powerStatus;
         int rotationModeIndex;
 
 
@@ -313,20 +272,23 @@ public class AdapterRotatorlatorConfigs extends RecyclerView.Adapter<AdapterRota
          * and save the change.
          */
         private void setNextRotationMode() {
+
+            if (powerStatus == ReceiverPortStatus.POWER_STATUS_NONE) {
+                return;
+            }
+
             // Increment the current Rotation index
             rotationModeIndex++;
 
             // Make sure it stays within range
-            if (rotationModeIndex >= ReceiverPortStatus.RotationMode.values().length) {
+            if (rotationModeIndex >= RotationProfileTable.getRotationModeCount()) {
                 rotationModeIndex = 0;
             }
 
             // Save the updated option
-            mSharedPrefs.edit()
-                    .putInt(prefKey, rotationModeIndex)
-                    .apply();
+            ProfileStore.getInstance(mContext).setRotationMode(powerStatus, rotationModeIndex);
 
-            // (Callbacks will be handled in the OnSharedPreferenceChangeListener in the Configurator Fragment)
+            // (Callbacks will be handled in the OnProfileChangedListener in the Configurator Fragment)
         }
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Created by Brian Lau on 2018-04-15
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+
+import com.justbnutz.dockorientationrotatorlator.core.RotationEngine;
+
+
+/**
+ * Application class, mostly here so the app's shared state gets warmed up as early as possible.
+ *
+ * onCreate() runs before any Activity / Service / Receiver, so it starts the preferences, compiled
+ * Rotation Profile and natural orientation loading on the pipeline thread (see StartupPreloader).
+ * Whoever gets to them first after that is very likely to find them already in memory, rather than
+ * stalling on the preferences file on the main thread. It's also where the StartupTimings launch
+ * starts, so the preload phase is measured from the same point it was kicked off.
+ *
+ * Also holds the one RotationEngine and SharedPreferences instance everything else shares.
+ * - 2018/04/15
+ */
+public class ApplicationRotatorlator extends Application {
+
+    // The dock / rotation decision engine, shared by every component in the process
+    private static final RotationEngine sRotationEngine = new RotationEngine();
+
+    private static volatile SharedPreferences sSharedPrefs;
+
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        StartupTimings.startLaunch();
+        StartupPreloader.preload(this);
+    }
+
+
+    static RotationEngine getRotationEngine() {
+        return sRotationEngine;
+    }
+
+
+    /**
+     * Return the app's default SharedPreferences. The first call loads the file (if the warm-up
+     * hasn't already), after that it's just a field read.
+     */
+    static SharedPreferences getSharedPrefs(@NonNull Context context) {
+
+        SharedPreferences sharedPrefs = sSharedPrefs;
+
+        if (sharedPrefs == null) {
+            sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+            sSharedPrefs = sharedPrefs;
+        }
+
+        return sharedPrefs;
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Created by Brian Lau on 2018-04-13
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.BatteryManager;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+
+
+/**
+ * Append-only on-device journal of port events, rotation decisions and Settings writes, so there's
+ * still something to look at after the Test Panel (and its clipboard dump) is long gone.
+ *
+ * Records are written into fixed-size memory-mapped segment files, so appending one is just a few
+ * bytes into a buffer (the OS takes care of getting it to disk). Each segment starts with a header
+ * holding its base timestamp, and each record after that is:
+ *
+ *   [type byte] [time delta since the previous record, varint ms] [fields, zig-zag varints]
+ *
+ * Once a segment fills up the next one is started, and only the newest MAX_SEGMENTS are kept.
+ * A zero type byte marks the end of the records in a segment (the mapped file starts out zeroed), so
+ * a new process can scan to there and carry on appending to the newest segment rather than starting
+ * a fresh (mostly empty) one every time it's cold-started.
+ *
+ * See EventJournalExporter for reading it back.
+ * - 2018/04/13
+ */
+class EventJournal {
+
+    private static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".EventJournal";
+
+    static final String JOURNAL_DIR = "journal";
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".bin";
+
+    // Segment header: magic, format version, base timestamp (wall clock ms)
+    static final int SEGMENT_MAGIC = 0x444f524a;
+    static final byte FORMAT_VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 4 + 1 + 8;
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SEGMENTS = 4;
+
+    // Record types
+    static final byte TYPE_END = 0;
+    static final byte TYPE_BROADCAST = 1;
+    static final byte TYPE_DECISION = 2;
+    static final byte TYPE_SETTINGS_WRITE = 3;
+
+    // Broadcast action ids
+    static final int ACTION_OTHER = 0;
+    static final int ACTION_DOCK_EVENT = 1;
+    static final int ACTION_POWER_CONNECTED = 2;
+    static final int ACTION_POWER_DISCONNECTED = 3;
+    static final int ACTION_BATTERY_CHANGED = 4;
+
+    // Marker for a broadcast that didn't carry a state value
+    static final int STATE_NONE = -1;
+
+    // Enough room for the largest record (type + delta of up to 10 bytes + 5 fields of up to 5 bytes)
+    private static final int MAX_RECORD_SIZE = 1 + 10 + (5 * 5);
+
+    private static EventJournal sInstance;
+
+    private final File mJournalDir;
+
+    private MappedByteBuffer mSegment;
+    private int mSegmentIndex;
+
+    // Timestamp of the last record in the current segment, and of the one being encoded
+    private long mLastTimestamp;
+    private long mRecordTimestamp;
+
+    // Records are encoded in here first, so we know whether they'll fit before touching the segment
+    private final byte[] mScratch;
+    private int mScratchLength;
+
+    // Set if the journal couldn't be opened, in which case everything is a no-op
+    private boolean mFailed;
+
+
+    private EventJournal(@NonNull Context context) {
+        mJournalDir = new File(context.getFilesDir(), JOURNAL_DIR);
+        mScratch = new byte[MAX_RECORD_SIZE];
+        mSegmentIndex = -1;
+    }
+
+
+    static synchronized EventJournal getInstance(@NonNull Context context) {
+
+        if (sInstance == null) {
+            sInstance = new EventJournal(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+
+    // region ================== RECORDING ==================
+    // ====== ================== ========= ==================
+
+
+    /**
+     * Record a port / battery broadcast, along with the dock or plug state it was carrying (if any)
+     */
+    void recordBroadcast(@NonNull Intent intent) {
+
+        String intentAction = intent.getAction();
+
+        int actionId = ACTION_OTHER;
+        int stateValue = STATE_NONE;
+
+        if (Intent.ACTION_DOCK_EVENT.equals(intentAction)) {
+            actionId = ACTION_DOCK_EVENT;
+            stateValue = intent.getIntExtra(Intent.EXTRA_DOCK_STATE, STATE_NONE);
+
+        } else if (Intent.ACTION_BATTERY_CHANGED.equals(intentAction)) {
+            actionId = ACTION_BATTERY_CHANGED;
+            stateValue = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, STATE_NONE);
+
+        } else if (Intent.ACTION_POWER_CONNECTED.equals(intentAction)) {
+            actionId = ACTION_POWER_CONNECTED;
+
+        } else if (Intent.ACTION_POWER_DISCONNECTED.equals(intentAction)) {
+            actionId = ACTION_POWER_DISCONNECTED;
+        }
+
+        synchronized (this) {
+            beginRecord(TYPE_BROADCAST);
+            putField(actionId);
+            putField(stateValue);
+            endRecord();
+        }
+    }
+
+
+    /**
+     * Record a decision from the rotation engine (one of the RotationEngine.DECISION_* values) and
+     * what it was made against / aiming for
+     */
+    void recordDecision(int decision, int powerStatus, int rotationMode, int targetAutoRotate, int targetUserRotation) {
+
+        synchronized (this) {
+            beginRecord(TYPE_DECISION);
+            putField(decision);
+            putField(powerStatus);
+            putField(rotationMode);
+            putField(targetAutoRotate);
+            putField(targetUserRotation);
+            endRecord();
+        }
+    }
+
+
+    /**
+     * Record a write to one of the rotation Settings (WritePlan.SETTING_*)
+     */
+    void recordSettingsWrite(int setting, int settingValue) {
+
+        synchronized (this) {
+            beginRecord(TYPE_SETTINGS_WRITE);
+            putField(setting);
+            putField(settingValue);
+            endRecord();
+        }
+    }
+
+
+    /**
+     * Push whatever has been written so far out to disk (e.g. before exporting)
+     */
+    synchronized void flush() {
+
+        if (mSegment != null) {
+            mSegment.force();
+        }
+    }
+
+
+    /**
+     * Return the journal segment files, oldest first
+     */
+    File[] getSegmentFiles() {
+
+        File[] segmentFiles = mJournalDir.listFiles();
+
+        if (segmentFiles == null) {
+            return new File[0];
+        }
+
+        // Segment names are zero-padded, so sorting by name puts them in order
+        Arrays.sort(segmentFiles);
+
+        return segmentFiles;
+    }
+
+    // endregion
+
+
+    // region ================== ENCODING ==================
+    // ====== ================== ======== ==================
+
+
+    private void beginRecord(byte recordType) {
+
+        mRecordTimestamp = System.currentTimeMillis();
+
+        mScratchLength = 0;
+        mScratch[mScratchLength++] = recordType;
+        putVarint(getRecordDelta());
+    }
+
+
+    /**
+     * Time since the previous record. Wall clock can go backwards (NTP / manual changes), just clamp
+     * the delta rather than go negative.
+     */
+    private long getRecordDelta() {
+        return Math.max(0, mRecordTimestamp - mLastTimestamp);
+    }
+
+
+    private void putField(int fieldValue) {
+        // Zig-zag, so small negative values (like -1 for "none") stay small
+        putVarint(((fieldValue << 1) ^ (fieldValue >> 31)) & 0xFFFFFFFFL);
+    }
+
+
+    private void putVarint(long value) {
+
+        while ((value & ~0x7FL) != 0) {
+            mScratch[mScratchLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        mScratch[mScratchLength++] = (byte) value;
+    }
+
+
+    /**
+     * Copy the encoded record into the current segment, rolling over to a new one if it won't fit
+     */
+    private void endRecord() {
+
+        if (mFailed) {
+            return;
+        }
+
+        // Leave room for the end marker
+        if (mSegment == null || mSegment.remaining() < mScratchLength + 1) {
+
+            if (!openNextSegment()) {
+                return;
+            }
+
+            // The delta was against the previous segment (or nothing), redo it against this one
+            rewriteDelta(mScratch[0]);
+        }
+
+        mSegment.put(mScratch, 0, mScratchLength);
+        mLastTimestamp = mRecordTimestamp;
+    }
+
+
+    /**
+     * Re-encode the delta of the record in the scratch buffer against the (new) segment's last
+     * timestamp. The fields after it don't change, so they just get shifted along.
+     */
+    private void rewriteDelta(byte recordType) {
+
+        // Skip the old delta
+        int fieldsStart = 1;
+
+        while ((mScratch[fieldsStart] & 0x80) != 0) {
+            fieldsStart++;
+        }
+
+        fieldsStart++;
+
+        byte[] fields = Arrays.copyOfRange(mScratch, fieldsStart, mScratchLength);
+
+        mScratchLength = 0;
+        mScratch[mScratchLength++] = recordType;
+        putVarint(getRecordDelta());
+
+        System.arraycopy(fields, 0, mScratch, mScratchLength, fields.length);
+        mScratchLength += fields.length;
+    }
+
+    // endregion
+
+
+    // region ================== SEGMENT OPS ==================
+    // ====== ================== =========== ==================
+
+
+    /**
+     * Start a new segment file, dropping the oldest ones if there are too many. The first time round
+     * in a process, carry on with the newest existing segment instead if it's still got room.
+     */
+    private boolean openNextSegment() {
+
+        try {
+            if (mSegmentIndex < 0) {
+                // First segment for this process, carry on numbering from whatever is already there
+                if (!mJournalDir.isDirectory() && !mJournalDir.mkdirs()) {
+                    throw new IOException("Unable to create " + mJournalDir);
+                }
+
+                for (File eachFile : getSegmentFiles()) {
+                    mSegmentIndex = Math.max(mSegmentIndex, getSegmentIndex(eachFile));
+                }
+
+                if (mSegmentIndex >= 0
+                        && resumeSegment(new File(mJournalDir, getSegmentName(mSegmentIndex)))) {
+                    return true;
+                }
+            }
+
+            mSegmentIndex++;
+
+            mSegment = mapSegment(new File(mJournalDir, getSegmentName(mSegmentIndex)));
+            mLastTimestamp = System.currentTimeMillis();
+
+            mSegment.putInt(SEGMENT_MAGIC);
+            mSegment.put(FORMAT_VERSION);
+            mSegment.putLong(mLastTimestamp);
+
+            deleteOldSegments();
+            return true;
+
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to open journal segment, journal disabled", e);
+
+            mSegment = null;
+            mFailed = true;
+            return false;
+        }
+    }
+
+
+    /**
+     * Map an existing segment and move to the end of its records, picking up the last record's
+     * timestamp along the way. Returns false if it's not one we can append to (unrecognised,
+     * unreadable or full), in which case a new segment should be started instead.
+     */
+    private boolean resumeSegment(@NonNull File segmentFile) throws IOException {
+
+        if (!segmentFile.isFile() || segmentFile.length() != SEGMENT_SIZE) {
+            return false;
+        }
+
+        MappedByteBuffer segment = mapSegment(segmentFile);
+
+        if (segment.getInt() != SEGMENT_MAGIC || segment.get() != FORMAT_VERSION) {
+            return false;
+        }
+
+        long timestamp = segment.getLong();
+
+        try {
+            while (true) {
+                int recordStart = segment.position();
+                byte recordType = segment.get();
+
+                if (recordType == TYPE_END) {
+                    // Next record goes over the end marker
+                    segment.position(recordStart);
+                    break;
+                }
+
+                int fieldCount = getFieldCount(recordType);
+
+                if (fieldCount < 0) {
+                    // Don't know how long this record is, so can't find the end
+                    return false;
+                }
+
+                timestamp += readVarint(segment);
+
+                for (int i = 0; i < fieldCount; i++) {
+                    readVarint(segment);
+                }
+            }
+
+        } catch (BufferUnderflowException e) {
+            // Ran off the end without an end marker, so it's full anyway
+            return false;
+        }
+
+        if (segment.remaining() < MAX_RECORD_SIZE + 1) {
+            return false;
+        }
+
+        mSegment = segment;
+        mLastTimestamp = timestamp;
+
+        return true;
+    }
+
+
+    /**
+     * Map the given segment file read / write, creating it (zeroed) if it's not there yet
+     */
+    private static MappedByteBuffer mapSegment(@NonNull File segmentFile) throws IOException {
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFile, "rw");
+
+        try {
+            randomAccessFile.setLength(SEGMENT_SIZE);
+
+            // The mapping stays valid after the file is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+
+    /**
+     * Return how many fields follow the delta in a record of the given type, or -1 if it's not a known type
+     */
+    private static int getFieldCount(byte recordType) {
+
+        switch (recordType) {
+            case TYPE_BROADCAST:
+                return 2;
+
+            case TYPE_DECISION:
+                return 5;
+
+            case TYPE_SETTINGS_WRITE:
+                return 2;
+
+            default:
+                return -1;
+        }
+    }
+
+
+    private static long readVarint(@NonNull MappedByteBuffer buffer) {
+
+        long value = 0;
+        int shift = 0;
+        byte eachByte;
+
+        do {
+            eachByte = buffer.get();
+            value |= (long) (eachByte & 0x7F) << shift;
+            shift += 7;
+
+        } while ((eachByte & 0x80) != 0);
+
+        return value;
+    }
+
+
+    private void deleteOldSegments() {
+
+        File[] segmentFiles = getSegmentFiles();
+
+        for (int i = 0; i < segmentFiles.length - MAX_SEGMENTS; i++) {
+            if (!segmentFiles[i].delete()) {
+                Log.w(TAG, "Unable to delete old journal segment " + segmentFiles[i]);
+            }
+        }
+    }
+
+
+    private static String getSegmentName(int segmentIndex) {
+        return String.format(Locale.US, "%s%010d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX);
+    }
+
+
+    private static int getSegmentIndex(File segmentFile) {
+
+        String fileName = segmentFile.getName();
+
+        if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX)) {
+            try {
+                return Integer.parseInt(
+                        fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length())
+                );
+
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+
+        return -1;
+    }
+
+    // endregion
+}
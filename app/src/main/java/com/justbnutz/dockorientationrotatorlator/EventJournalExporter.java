@@ -0,0 +1,201 @@
+/*
+ * Created by Brian Lau on 2018-04-13
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-13
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.support.annotation.NonNull;
+
+import com.justbnutz.dockorientationrotatorlator.core.RotationEngine;
+import com.justbnutz.dockorientationrotatorlator.core.WritePlan;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+
+/**
+ * Decodes the EventJournal segments back into readable text, one line per record (oldest first).
+ * - 2018/04/13
+ */
+class EventJournalExporter {
+
+    private static final String[] ACTION_NAMES = {
+            "OTHER",
+            "DOCK_EVENT",
+            "POWER_CONNECTED",
+            "POWER_DISCONNECTED",
+            "BATTERY_CHANGED"
+    };
+
+    private static final String[] DECISION_NAMES = new String[RotationEngine.DECISION_ROTATE + 1];
+
+    static {
+        DECISION_NAMES[RotationEngine.DECISION_MONITOR_DISABLED] = "MONITOR_DISABLED";
+        DECISION_NAMES[RotationEngine.DECISION_NEEDS_PLUG_STATE] = "NEEDS_PLUG_STATE";
+        DECISION_NAMES[RotationEngine.DECISION_NEEDS_DOCK_STATE] = "NEEDS_DOCK_STATE";
+        DECISION_NAMES[RotationEngine.DECISION_NEEDS_ORIENTATION] = "NEEDS_ORIENTATION";
+        DECISION_NAMES[RotationEngine.DECISION_NO_CHANGE] = "NO_CHANGE";
+        DECISION_NAMES[RotationEngine.DECISION_ROTATE] = "ROTATE";
+    }
+
+    private final SimpleDateFormat mTimeFormat;
+    private final Date mTimestamp;
+
+
+    EventJournalExporter() {
+        mTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        mTimestamp = new Date();
+    }
+
+
+    /**
+     * Decode all of the journal's segments into text
+     */
+    String export(@NonNull EventJournal eventJournal) {
+
+        // Make sure the latest records have made it into the files
+        eventJournal.flush();
+
+        StringBuilder output = new StringBuilder();
+
+        for (File eachSegment : eventJournal.getSegmentFiles()) {
+            try {
+                exportSegment(eachSegment, output);
+
+            } catch (IOException e) {
+                output.append("# Unable to read ").append(eachSegment.getName()).append(": ").append(e.getMessage()).append('\n');
+            }
+        }
+
+        return output.toString();
+    }
+
+
+    private void exportSegment(@NonNull File segmentFile, @NonNull StringBuilder output) throws IOException {
+
+        ByteBuffer segment;
+
+        FileInputStream inputStream = new FileInputStream(segmentFile);
+
+        try {
+            FileChannel fileChannel = inputStream.getChannel();
+            segment = ByteBuffer.allocate((int) fileChannel.size());
+
+            while (segment.hasRemaining() && fileChannel.read(segment) >= 0) {
+                // Keep reading until the buffer is full
+            }
+
+            segment.flip();
+
+        } finally {
+            inputStream.close();
+        }
+
+        if (segment.remaining() < EventJournal.SEGMENT_HEADER_SIZE
+                || segment.getInt() != EventJournal.SEGMENT_MAGIC
+                || segment.get() != EventJournal.FORMAT_VERSION) {
+
+            output.append("# Skipping unrecognised segment ").append(segmentFile.getName()).append('\n');
+            return;
+        }
+
+        long timestamp = segment.getLong();
+
+        output.append("# ").append(segmentFile.getName()).append('\n');
+
+        try {
+            while (segment.hasRemaining()) {
+
+                byte recordType = segment.get();
+
+                if (recordType == EventJournal.TYPE_END) {
+                    break;
+                }
+
+                timestamp += readVarint(segment);
+                mTimestamp.setTime(timestamp);
+
+                output.append(mTimeFormat.format(mTimestamp)).append(' ');
+
+                switch (recordType) {
+                    case EventJournal.TYPE_BROADCAST:
+                        output.append("BROADCAST ").append(getName(ACTION_NAMES, readField(segment)));
+
+                        int stateValue = readField(segment);
+
+                        if (stateValue != EventJournal.STATE_NONE) {
+                            output.append(" state=").append(stateValue);
+                        }
+                        break;
+
+                    case EventJournal.TYPE_DECISION:
+                        output.append("DECISION ").append(getName(DECISION_NAMES, readField(segment)))
+                                .append(" power=").append(readField(segment))
+                                .append(" mode=").append(readField(segment))
+                                .append(" auto=").append(readField(segment))
+                                .append(" user=").append(readField(segment));
+                        break;
+
+                    case EventJournal.TYPE_SETTINGS_WRITE:
+                        output.append("WRITE ")
+                                .append(readField(segment) == WritePlan.SETTING_ACCELEROMETER_ROTATION
+                                        ? "ACCELEROMETER_ROTATION"
+                                        : "USER_ROTATION")
+                                .append('=').append(readField(segment));
+                        break;
+
+                    default:
+                        // Don't know how long this record is, so can't go any further in this segment
+                        output.append("# Unknown record type ").append(recordType).append('\n');
+                        return;
+                }
+
+                output.append('\n');
+            }
+
+        } catch (BufferUnderflowException e) {
+            // Record got cut off (e.g. the process died mid-write), everything before it is still good
+            output.append("# Truncated record\n");
+        }
+    }
+
+
+    private static String getName(String[] names, int index) {
+        return (index >= 0 && index < names.length)
+                ? names[index]
+                : String.valueOf(index);
+    }
+
+
+    private static int readField(ByteBuffer buffer) {
+        int zigZag = (int) readVarint(buffer);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+
+    private static long readVarint(ByteBuffer buffer) {
+
+        long value = 0;
+        int shift = 0;
+        byte eachByte;
+
+        do {
+            eachByte = buffer.get();
+            value |= (long) (eachByte & 0x7F) << shift;
+            shift += 7;
+
+        } while ((eachByte & 0x80) != 0);
+
+        return value;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Created by Brian Lau on 2018-04-12
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-12
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+
+
+/**
+ * Fixed-capacity ring buffer of Test Panel events.
+ *
+ * Each event is stored as primitives only (timestamp, action id and a bitmask of which extras it was
+ * carrying), in parallel arrays that are allocated once up front. The action keys and extra keys are
+ * interned into small lookup tables, so the Strings only exist once no matter how many events come
+ * through. Once full, the oldest event gets overwritten.
+ * - 2018/04/12
+ */
+class EventLogBuffer {
+
+    private static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".EventLogBuffer";
+
+    private static final String BUNDLEKEY_TIMESTAMPS = TAG + ".BUNDLEKEY_TIMESTAMPS";
+    private static final String BUNDLEKEY_ACTION_IDS = TAG + ".BUNDLEKEY_ACTION_IDS";
+    private static final String BUNDLEKEY_EXTRAS_MASKS = TAG + ".BUNDLEKEY_EXTRAS_MASKS";
+    private static final String BUNDLEKEY_ACTION_KEYS = TAG + ".BUNDLEKEY_ACTION_KEYS";
+    private static final String BUNDLEKEY_EXTRA_KEYS = TAG + ".BUNDLEKEY_EXTRA_KEYS";
+
+    // One bit per interned extra key, the last bit is shared by any keys that didn't fit
+    private static final int MAX_EXTRA_KEYS = 31;
+    static final int EXTRAS_MASK_OVERFLOW = 1 << MAX_EXTRA_KEYS;
+
+    private final int mCapacity;
+
+    private final long[] mTimestamps;
+    private final int[] mActionIds;
+    private final int[] mExtrasMasks;
+
+    // Index of the oldest entry, and how many entries there are
+    private int mHead;
+    private int mSize;
+
+    // Interned action / extra keys, looked up by id / bit index
+    private final ArrayList<String> mActionKeys;
+    private final ArrayList<String> mExtraKeys;
+
+
+    EventLogBuffer(int capacity) {
+        mCapacity = capacity;
+
+        mTimestamps = new long[capacity];
+        mActionIds = new int[capacity];
+        mExtrasMasks = new int[capacity];
+
+        mActionKeys = new ArrayList<>();
+        mExtraKeys = new ArrayList<>();
+    }
+
+
+    /**
+     * Add an event to the end of the log, overwriting the oldest one if the log is full.
+     * Returns true if an entry had to be dropped to make room.
+     */
+    boolean add(long timestamp, @NonNull String actionKey, @Nullable Bundle intentExtras) {
+
+        int extrasMask = 0;
+
+        if (intentExtras != null) {
+            for (String eachKey : intentExtras.keySet()) {
+                extrasMask |= getExtraKeyBit(eachKey);
+            }
+        }
+
+        int tail = (mHead + mSize) % mCapacity;
+
+        mTimestamps[tail] = timestamp;
+        mActionIds[tail] = getActionId(actionKey);
+        mExtrasMasks[tail] = extrasMask;
+
+        if (mSize < mCapacity) {
+            mSize++;
+            return false;
+
+        } else {
+            mHead = (mHead + 1) % mCapacity;
+            return true;
+        }
+    }
+
+
+    int size() {
+        return mSize;
+    }
+
+
+    int capacity() {
+        return mCapacity;
+    }
+
+
+    void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+
+    // region ================== ENTRY LOOKUPS ==================
+    // ====== ================== ============= ==================
+
+
+    /**
+     * Entries are indexed from 0 (oldest) to size() - 1 (newest)
+     */
+    long getTimestamp(int position) {
+        return mTimestamps[getIndex(position)];
+    }
+
+
+    int getActionId(int position) {
+        return mActionIds[getIndex(position)];
+    }
+
+
+    int getExtrasMask(int position) {
+        return mExtrasMasks[getIndex(position)];
+    }
+
+
+    String getActionKey(int actionId) {
+        return mActionKeys.get(actionId);
+    }
+
+
+    /**
+     * Return the extra key for the given bit index (0 - 30)
+     */
+    String getExtraKey(int bitIndex) {
+        return mExtraKeys.get(bitIndex);
+    }
+
+
+    private int getIndex(int position) {
+        return (mHead + position) % mCapacity;
+    }
+
+    // endregion
+
+
+    // region ================== INTERNING ==================
+    // ====== ================== ========= ==================
+
+
+    private int getActionId(@NonNull String actionKey) {
+
+        int actionId = mActionKeys.indexOf(actionKey);
+
+        if (actionId < 0) {
+            actionId = mActionKeys.size();
+            mActionKeys.add(actionKey);
+        }
+
+        return actionId;
+    }
+
+
+    private int getExtraKeyBit(@NonNull String extraKey) {
+
+        int bitIndex = mExtraKeys.indexOf(extraKey);
+
+        if (bitIndex < 0) {
+            if (mExtraKeys.size() >= MAX_EXTRA_KEYS) {
+                return EXTRAS_MASK_OVERFLOW;
+            }
+
+            bitIndex = mExtraKeys.size();
+            mExtraKeys.add(extraKey);
+        }
+
+        return 1 << bitIndex;
+    }
+
+    // endregion
+
+
+    // region ================== SAVE / RESTORE ==================
+    // ====== ================== ============== ==================
+
+
+    /**
+     * Save the log contents (oldest first) into the given Bundle, e.g. for screen rotations
+     */
+    void saveState(@NonNull Bundle outState) {
+
+        long[] timestamps = new long[mSize];
+        int[] actionIds = new int[mSize];
+        int[] extrasMasks = new int[mSize];
+
+        for (int i = 0; i < mSize; i++) {
+            int index = getIndex(i);
+
+            timestamps[i] = mTimestamps[index];
+            actionIds[i] = mActionIds[index];
+            extrasMasks[i] = mExtrasMasks[index];
+        }
+
+        outState.putLongArray(BUNDLEKEY_TIMESTAMPS, timestamps);
+        outState.putIntArray(BUNDLEKEY_ACTION_IDS, actionIds);
+        outState.putIntArray(BUNDLEKEY_EXTRAS_MASKS, extrasMasks);
+        outState.putStringArrayList(BUNDLEKEY_ACTION_KEYS, mActionKeys);
+        outState.putStringArrayList(BUNDLEKEY_EXTRA_KEYS, mExtraKeys);
+    }
+
+
+    /**
+     * Restore the log contents from a Bundle filled in by saveState()
+     */
+    void restoreState(@NonNull Bundle savedState) {
+
+        long[] timestamps = savedState.getLongArray(BUNDLEKEY_TIMESTAMPS);
+        int[] actionIds = savedState.getIntArray(BUNDLEKEY_ACTION_IDS);
+        int[] extrasMasks = savedState.getIntArray(BUNDLEKEY_EXTRAS_MASKS);
+        ArrayList<String> actionKeys = savedState.getStringArrayList(BUNDLEKEY_ACTION_KEYS);
+        ArrayList<String> extraKeys = savedState.getStringArrayList(BUNDLEKEY_EXTRA_KEYS);
+
+        if (timestamps == null || actionIds == null || extrasMasks == null || actionKeys == null || extraKeys == null) {
+            return;
+        }
+
+        mActionKeys.clear();
+        mActionKeys.addAll(actionKeys);
+        mExtraKeys.clear();
+        mExtraKeys.addAll(extraKeys);
+
+        // Only keep the newest entries if there's more than we can hold
+        int restoreCount = Math.min(timestamps.length, mCapacity);
+        int offset = timestamps.length - restoreCount;
+
+        System.arraycopy(timestamps, offset, mTimestamps, 0, restoreCount);
+        System.arraycopy(actionIds, offset, mActionIds, 0, restoreCount);
+        System.arraycopy(extrasMasks, offset, mExtrasMasks, 0, restoreCount);
+
+        mHead = 0;
+        mSize = restoreCount;
+    }
+
+    // endregion
+}
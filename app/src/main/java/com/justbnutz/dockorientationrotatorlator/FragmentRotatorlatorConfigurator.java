@@ -2,57 +2,58 @@
  * Created by Brian Lau on 2018-03-20
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-03-28
+ * Last modified: 2018-04-16
  */
 
 package com.justbnutz.dockorientationrotatorlator;
 
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.ViewModelProviders;
 import android.content.SharedPreferences;
-import android.content.res.Configuration;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.preference.PreferenceManager;
-import android.provider.Settings;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.app.Fragment;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.widget.RecyclerView;
-import android.text.TextUtils;
 import android.view.LayoutInflater;
-import android.view.Surface;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Switch;
 import android.widget.TextSwitcher;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * Fragment for configuring the different dock/orientation profiles
  * - 2018/03/20
  */
-public class FragmentRotatorlatorConfigurator extends Fragment implements View.OnClickListener, SharedPreferences.OnSharedPreferenceChangeListener {
+public class FragmentRotatorlatorConfigurator extends Fragment implements View.OnClickListener, SharedPreferences.OnSharedPreferenceChangeListener, ProfileStore.OnProfileChangedListener {
 
     public static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".FragmentRotatorlatorConfigurator";
 
 
     // Preferences
     private SharedPreferences mSharedPrefs;
+    private ProfileStore mProfileStore;
 
     // This won't actually be used as a BroadcastReceiever, but it holds the methods for checking current Port Statuses
     private ReceiverPortStatus mReceiverPortStatus;
 
-    // ContentObserver for getting notified when Rotation Settings are notified
+    // ContentObserver for keeping the Rotation Settings in the MonitorSnapshot up to date while we're showing them
     private ObserverRotationSetting mRotationSettingsObserver;
 
+    // Works out the current status labels off the main thread (and hangs on to them across config changes)
+    private StatusLabelsViewModel mStatusLabelsModel;
+
+    // The status labels currently showing
+    private StatusLabelsViewModel.StatusLabels mShownLabels;
+
     // Adapter for the RecyclerView Config Panel
     private AdapterRotatorlatorConfigs mAdapterRotatorlatorConfigs;
 
@@ -93,16 +94,23 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
 
         if (getContext() != null) {
             // Init the toolboxes
-            mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(getContext());
+            mSharedPrefs = ApplicationRotatorlator.getSharedPrefs(getContext());
+            mProfileStore = ProfileStore.getInstance(getContext());
             mReceiverPortStatus = new ReceiverPortStatus();
-            mRotationSettingsObserver = new ObserverRotationSetting(new Handler());
-            mAdapterRotatorlatorConfigs = new AdapterRotatorlatorConfigs(getContext(), mSharedPrefs);
+            mRotationSettingsObserver = new ObserverRotationSetting(false);
+            mRotationSettingsObserver.bindTo(this, getContext());
+            mAdapterRotatorlatorConfigs = new AdapterRotatorlatorConfigs(getContext());
+
+            // Start following the status labels (they'll come through once we're started)
+            mStatusLabelsModel = ViewModelProviders.of(this).get(StatusLabelsViewModel.class);
+            mStatusLabelsModel.getStatusLabels().observe(this, mStatusLabelsObserver);
 
             // If the device was previously rebooted then the Service will be stopped, check if we need to start it back up again
+            // (If it's already up and armed there's nothing to do)
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
-                    && mSharedPrefs.getBoolean(getContext().getString(R.string.prefkey_enable_dock_monitor), false)) {
+                    && !ServicePortStatusHandler.isArmed()
+                    && mProfileStore.isMonitorEnabled()) {
 
-                // If the Service is already running then this will just do onStartCommand() again on the existing Service
                 ServicePortStatusHandler.startRotatorlatorService(getContext());
             }
         }
@@ -127,6 +135,10 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
         mTxtSwchCurrentPowerStatus = view.findViewById(R.id.txtswch_current_power_status);
         mTxtSwchCurrentOrientationStatus = view.findViewById(R.id.txtswch_current_orientation_status);
 
+        // Fill in the Config panels for each of the enabled Power States in one go, before the
+        // RecyclerView gets its first layout
+        mAdapterRotatorlatorConfigs.setTogglePanels(getEnabledTogglePanels());
+
         // Link the RecyclerView
         RecyclerView recyclerConfigs = view.findViewById(R.id.recycler_rotatorlator_configs);
         recyclerConfigs.setAdapter(mAdapterRotatorlatorConfigs);
@@ -138,34 +150,45 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
         mToggleDockMonitor.setOnClickListener(this);
         btnMinimise.setOnClickListener(this);
 
-        // Wait for Views to be fully drawn before calling to update the labels
+        // A new set of Views, so whatever labels come next all need setting
+        mShownLabels = null;
+
+        if (mStatusLabelsModel != null
+                && mStatusLabelsModel.getStatusLabels().getValue() != null) {
+
+            setCurrentStatusLabels(mStatusLabelsModel.getStatusLabels().getValue());
+        }
+
+        // Mark when the Views are fully drawn (the labels follow on from the ViewModel)
         btnMinimise.post(
                 new Runnable() {
                     @Override
                     public void run() {
-                        if (getContext() != null) {
-                            // Update the current Status labels
-                            updateCurrentStatusLabels();
-
-                            // Insert the Config panels for each of the enabled Power States
-                            mAdapterRotatorlatorConfigs.insertTogglePanel(
-                                    getString(R.string.prefkey_set_autorotate_unplugged)
-                            );
-
-                            mAdapterRotatorlatorConfigs.insertTogglePanel(
-                                    getString(R.string.prefkey_set_autorotate_plugged)
-                            );
-
-                            // The Wireless Charging toggle panel is optional, since not all devices have Wireless Charging
-                            if (mSharedPrefs.getBoolean(getString(R.string.prefkey_show_wireless_options), true)) {
-                                mAdapterRotatorlatorConfigs.insertTogglePanel(
-                                        getString(R.string.prefkey_set_autorotate_wireless)
-                                );
-                            }
-                        }
+                        StartupTimings.mark(StartupTimings.MARK_FIRST_FRAME);
                     }
                 }
         );
+
+        StartupTimings.mark(StartupTimings.MARK_PANELS_BUILT);
+    }
+
+
+    /**
+     * Return the Power State preference keys that should have a Config panel showing
+     */
+    private List<String> getEnabledTogglePanels() {
+
+        List<String> togglePanels = new ArrayList<>(3);
+
+        togglePanels.add(getString(R.string.prefkey_set_autorotate_unplugged));
+        togglePanels.add(getString(R.string.prefkey_set_autorotate_plugged));
+
+        // The Wireless Charging toggle panel is optional, since not all devices have Wireless Charging
+        if (mSharedPrefs.getBoolean(getString(R.string.prefkey_show_wireless_options), true)) {
+            togglePanels.add(getString(R.string.prefkey_set_autorotate_wireless));
+        }
+
+        return togglePanels;
     }
 
 
@@ -177,9 +200,8 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
                 && mSharedPrefs != null
                 && mRotationSettingsObserver != null) {
 
-            initBroadcastReceivers();
-            mRotationSettingsObserver.startObserver(getContext());
             mSharedPrefs.registerOnSharedPreferenceChangeListener(this);
+            mProfileStore.registerListener(this);
         }
     }
 
@@ -188,7 +210,9 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
     public void onResume() {
         super.onResume();
         // Sometimes the toggle doesn't refresh properly if Service was disabled from notification - double-check here
-        updateCurrentStatusLabels();
+        if (mStatusLabelsModel != null) {
+            mStatusLabelsModel.refresh();
+        }
     }
 
 
@@ -200,9 +224,8 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
                 && mSharedPrefs != null
                 && mRotationSettingsObserver != null) {
 
+            mProfileStore.unregisterListener(this);
             mSharedPrefs.unregisterOnSharedPreferenceChangeListener(this);
-            mRotationSettingsObserver.stopObserver();
-            clearBroadcastReceivers();
         }
     }
 
@@ -212,12 +235,8 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
 
         switch (view.getId()) {
             case R.id.switch_toggle_port_monitor:
-                // Update the preference
-                mSharedPrefs.edit()
-                        .putBoolean(
-                                getString(R.string.prefkey_enable_dock_monitor),
-                                mToggleDockMonitor.isChecked()
-                        ).apply();
+                // Update the profile
+                mProfileStore.setMonitorEnabled(mToggleDockMonitor.isChecked());
 
                 // If on Oreo or higher, need to place the Receiver in a Service for it to register
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
@@ -231,9 +250,9 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
                     }
                 }
 
-                // If enabling, see if we need to set the Rotation Mode already
+                // If enabling, see if we need to set the Rotation Mode already (off the main thread)
                 if (getContext() != null && mToggleDockMonitor.isChecked()) {
-                    mReceiverPortStatus.checkSetDeviceRotation(getContext());
+                    mReceiverPortStatus.requestDeviceRotationCheck(getContext());
                 }
                 break;
 
@@ -253,23 +272,8 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String prefKey) {
 
-        // Always update the status labels whenever any Preference is changed
-        updateCurrentStatusLabels();
-
-        // Check which Preference was updated and update the UI accordingly
-        if (prefKey.equals(getString(R.string.prefkey_set_autorotate_unplugged))
-                || prefKey.equals(getString(R.string.prefkey_set_autorotate_plugged))
-                || prefKey.equals(getString(R.string.prefkey_set_autorotate_wireless))) {
-
-            // If one of the Rotation Mode ImageButtons were clicked, then need to update the labels
-            mAdapterRotatorlatorConfigs.updateTogglePanel(prefKey);
-
-            // Also need to check if we need to set update the device rotate-lock setting as well
-            if (getContext() != null) {
-                mReceiverPortStatus.checkSetDeviceRotation(getContext());
-            }
-
-        } else if (prefKey.equals(getString(R.string.prefkey_show_wireless_options))) {
+        // (The Rotation Profile itself is in the ProfileStore, see onProfileChanged() below)
+        if (prefKey.equals(getString(R.string.prefkey_show_wireless_options))) {
 
             // If the "Show Wireless Option" preference was changed, add/remove its Toggle Panel from the list
             if (sharedPreferences.getBoolean(getString(R.string.prefkey_show_wireless_options), true)) {
@@ -284,64 +288,21 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
         }
     }
 
-    // endregion
-
-
-    // region ================== BROADCASTRECEIVER OPERATIONS ==================
-    // ====== ================== ============================ ==================
-
-
-    /**
-     * Handler for receiving incoming Local Intents.
-     */
-    private final BroadcastReceiver mLocalReceiver = new BroadcastReceiver() {
-
-        @Override
-        public void onReceive(Context context, Intent intent) {
-
-            String actionKey = intent.getAction();
-
-            if (!TextUtils.isEmpty(actionKey)) {
-
-                switch (actionKey) {
-                    case ReceiverPortStatus.ACTION_KEY_POWER_STATUS_UPDATED:
-                    case ObserverRotationSetting.ACTION_KEY_ROTATION_SETTING_UPDATED:
-                        updateCurrentStatusLabels();
-                        break;
-
-                    default:
-                        break;
-                }
-            }
-        }
-    };
 
+    @Override
+    public void onProfileChanged(int changedPowerStatus) {
 
-    /**
-     * Register to receive incoming Intents with the given Filters.
-     */
-    private void initBroadcastReceivers() {
-        if (getContext() != null) {
-            IntentFilter intentFilter = new IntentFilter();
-            intentFilter.addAction(ObserverRotationSetting.ACTION_KEY_ROTATION_SETTING_UPDATED);
-            intentFilter.addAction(ReceiverPortStatus.ACTION_KEY_POWER_STATUS_UPDATED);
+        // (The status labels will catch up with the new profile through the StatusLabelsViewModel)
+        if (changedPowerStatus != ProfileStore.CHANGED_MONITOR_ENABLED
+                && getContext() != null) {
 
-            LocalBroadcastManager.getInstance(getContext()).registerReceiver(
-                    mLocalReceiver,
-                    intentFilter
+            // If one of the Rotation Mode ImageButtons were clicked, then need to update the labels
+            mAdapterRotatorlatorConfigs.updateTogglePanel(
+                    RotationProfileTable.getPrefKey(getContext(), changedPowerStatus)
             );
-        }
-    }
 
-
-    /**
-     * Unregister the MessageReceiver when leaving the Activity
-     */
-    private void clearBroadcastReceivers() {
-        if (getContext() != null) {
-            LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(
-                    mLocalReceiver
-            );
+            // Also need to check if we need to set update the device rotate-lock setting as well
+            mReceiverPortStatus.requestDeviceRotationCheck(getContext());
         }
     }
 
@@ -353,178 +314,47 @@ public class FragmentRotatorlatorConfigurator extends Fragment implements View.O
 
 
     /**
-     * Update the Current Port Status label
+     * New status labels from the ViewModel, only touch the ones that are different to what's showing
      */
-    private void updateCurrentStatusLabels() {
-
-        boolean monitoringPowerStatus = mSharedPrefs.getBoolean(
-                getString(R.string.prefkey_enable_dock_monitor), false
-        );
-
-        // Update the Monitor toggle
-        mToggleDockMonitor.setChecked(monitoringPowerStatus);
-
-        // Init the text label placeholders
-        String currentPowerText = getString(R.string.lbl_status_blank);
-        String currentOrientationText = getString(R.string.lbl_status_blank);
-
-        int currentPowerIcon = 0;
-        int currentOrientationIcon = 0;
+    private final Observer<StatusLabelsViewModel.StatusLabels> mStatusLabelsObserver = new Observer<StatusLabelsViewModel.StatusLabels>() {
+        @Override
+        public void onChanged(@Nullable StatusLabelsViewModel.StatusLabels statusLabels) {
 
-        if (getContext() != null
-                && monitoringPowerStatus
-                && mReceiverPortStatus != null) {
-
-            // Fetch the current Power Status
-            ReceiverPortStatus.PowerStatus powerStatus = mReceiverPortStatus.getCurrentPowerStatus(getContext());
-
-            // Set the Power Status text
-            switch (powerStatus) {
-                case DISCONNECTED:
-                    currentPowerText = getString(R.string.lbl_status_unplugged);
-                    currentPowerIcon = R.drawable.ic_dock_grey_400;
-                    break;
-
-                case PLUGGED_IN:
-                    currentPowerText = getString(R.string.lbl_status_plugged);
-                    currentPowerIcon = R.drawable.ic_power_grey_400;
-                    break;
-
-                case WIRELESSLY_CHARGING:
-                    currentPowerText = getString(R.string.lbl_status_wireless);
-                    currentPowerIcon = R.drawable.ic_tap_and_play_grey_400;
-                    break;
-
-                default:
-                    break;
+            if (statusLabels != null && mToggleDockMonitor != null) {
+                setCurrentStatusLabels(statusLabels);
             }
+        }
+    };
 
-            // Set the current Rotation-Lock setting text
-            if (isAutoRotate()) {
-                currentOrientationText = getString(R.string.lbl_status_auto_rotate);
-                currentOrientationIcon = R.drawable.ic_screen_rotation_grey_400;
 
-            } else {
-                // If Auto-Rotate is disabled, then will need to work out the current User Rotation setting relative to the natural orientation
-                if (mReceiverPortStatus != null) {
-                    int naturalOrientation = mReceiverPortStatus.getNaturalOrientation(getContext());
-
-                    // Only set the label if we have a baseline orientation to check against
-                    if (naturalOrientation != Configuration.ORIENTATION_UNDEFINED) {
-
-                        switch (getUserRotation()) {
-                            case Surface.ROTATION_0:
-                                if (naturalOrientation == Configuration.ORIENTATION_PORTRAIT) {
-                                    currentOrientationText = getString(R.string.lbl_status_portrait);
-                                    currentOrientationIcon = R.drawable.ic_stay_primary_portrait_grey_400;
-                                } else {
-                                    currentOrientationText = getString(R.string.lbl_status_landscape);
-                                    currentOrientationIcon = R.drawable.ic_stay_primary_landscape_grey_400;
-                                }
-                                break;
-
-                            case Surface.ROTATION_90:
-                                if (naturalOrientation == Configuration.ORIENTATION_PORTRAIT) {
-                                    currentOrientationText = getString(R.string.lbl_status_landscape);
-                                    currentOrientationIcon = R.drawable.ic_stay_primary_landscape_grey_400;
-                                } else {
-                                    currentOrientationText = getString(R.string.lbl_status_portrait);
-                                    currentOrientationIcon = R.drawable.ic_stay_primary_portrait_grey_400;
-                                }
-                                break;
-
-                            case Surface.ROTATION_180:
-                                if (naturalOrientation == Configuration.ORIENTATION_PORTRAIT) {
-                                    currentOrientationText = getString(R.string.lbl_status_portrait_inverted);
-                                    currentOrientationIcon = R.drawable.ic_stay_primary_portrait_grey_400;
-                                } else {
-                                    currentOrientationText = getString(R.string.lbl_status_landscape_inverted);
-                                    currentOrientationIcon = R.drawable.ic_stay_primary_landscape_grey_400;
-                                }
-                                break;
-
-                            case Surface.ROTATION_270:
-                                if (naturalOrientation == Configuration.ORIENTATION_PORTRAIT) {
-                                    currentOrientationText = getString(R.string.lbl_status_landscape_inverted);
-                                    currentOrientationIcon = R.drawable.ic_stay_primary_landscape_grey_400;
-                                } else {
-                                    currentOrientationText = getString(R.string.lbl_status_portrait_inverted);
-                                    currentOrientationIcon = R.drawable.ic_stay_primary_portrait_grey_400;
-                                }
-                                break;
-
-                            default:
-                                break;
-                        }
-                    }
-                }
-            }
+    private void setCurrentStatusLabels(@NonNull StatusLabelsViewModel.StatusLabels statusLabels) {
+
+        // Update the Monitor toggle
+        if (mToggleDockMonitor.isChecked() != statusLabels.mMonitorEnabled) {
+            mToggleDockMonitor.setChecked(statusLabels.mMonitorEnabled);
         }
 
-        // Only update the labels if they're actually different from the current text
-        if (!((TextView) mTxtSwchCurrentPowerStatus.getCurrentView()).getText().equals(currentPowerText)) {
+        if (!statusLabels.hasSamePowerLabel(mShownLabels)) {
 
             // Prep the Power State icon for when the label updates
             ((TextView) mTxtSwchCurrentPowerStatus.getNextView())
-                    .setCompoundDrawablesWithIntrinsicBounds(0, 0, currentPowerIcon, 0);
+                    .setCompoundDrawablesWithIntrinsicBounds(0, 0, statusLabels.mPowerIcon, 0);
 
             // Set the Power State text
-            mTxtSwchCurrentPowerStatus.setText(currentPowerText);
+            mTxtSwchCurrentPowerStatus.setText(getString(statusLabels.mPowerText));
         }
 
-        if (!((TextView) mTxtSwchCurrentOrientationStatus.getCurrentView()).getText().equals(currentOrientationText)) {
+        if (!statusLabels.hasSameOrientationLabel(mShownLabels)) {
 
             // Prep the Orientation State icon for when the label updates
             ((TextView) mTxtSwchCurrentOrientationStatus.getNextView())
-                    .setCompoundDrawablesWithIntrinsicBounds(0, 0, currentOrientationIcon, 0);
+                    .setCompoundDrawablesWithIntrinsicBounds(0, 0, statusLabels.mOrientationIcon, 0);
 
             // Set the Orientation State text
-            mTxtSwchCurrentOrientationStatus.setText(currentOrientationText);
-        }
-    }
-
-
-    /**
-     * Return the current Rotation-Lock setting of the device
-     */
-    private boolean isAutoRotate() {
-
-        int rotationSetting = 0;
-
-        if (getContext() != null) {
-
-            // Read the current rotation setting value from Settings
-            rotationSetting = Settings.System.getInt(
-                    getContext().getContentResolver(),
-                    Settings.System.ACCELEROMETER_ROTATION,
-                    0
-            );
-            // 0: Portrait | 1: Auto-Rotate
-        }
-
-        return (rotationSetting == 1);
-    }
-
-
-    /**
-     * Return the current User Rotation setting of the device
-     */
-    private int getUserRotation() {
-
-        int userRotation = -1;
-
-        if (getContext() != null) {
-
-            // Read the user rotation setting value from Settings
-            userRotation = Settings.System.getInt(
-                    getContext().getContentResolver(),
-                    Settings.System.USER_ROTATION,
-                    -1
-            );
-            // Corresponds to Surface.Rotation contants
+            mTxtSwchCurrentOrientationStatus.setText(getString(statusLabels.mOrientationText));
         }
 
-        return userRotation;
+        mShownLabels = statusLabels;
     }
 
     // endregion
@@ -0,0 +1,148 @@
+/*
+ * Created by Brian Lau on 2018-04-14
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-15
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.os.SystemClock;
+
+import com.justbnutz.dockorientationrotatorlator.core.LatencyHistogram;
+
+import java.util.Locale;
+
+
+/**
+ * Per-stage latency histograms for getting from a port broadcast to the device actually sitting in
+ * the right orientation:
+ *
+ *   broadcast received -> decision made -> each Settings write -> ObserverRotationSetting sees it
+ *
+ * plus the whole thing end-to-end (received -> Actuator confirms the transition landed).
+ *
+ * Also how long ServicePortStatusHandler takes from being started to being armed (receivers, observer
+ * and notification all up), split by whether it actually had to arm or was already armed.
+ *
+ * Timestamps are all SystemClock.elapsedRealtimeNanos() in microseconds (see now()), and get passed
+ * along with the work itself rather than kept here, so overlapping transitions don't get mixed up.
+ * - 2018/04/14
+ */
+class LatencyTracker {
+
+    static final int STAGE_RECEIVE_TO_DECISION = 0;
+    static final int STAGE_DECISION_TO_WRITE = 1;
+    static final int STAGE_WRITE_TO_OBSERVED = 2;
+    static final int STAGE_RECEIVE_TO_CONFIRMED = 3;
+    static final int STAGE_SERVICE_START_TO_ARMED = 4;
+    static final int STAGE_SERVICE_START_ALREADY_ARMED = 5;
+
+    static final int STAGE_COUNT = 6;
+
+    private static final String[] STAGE_LABELS = {
+            "Receive -> Decision",
+            "Decision -> Write",
+            "Write -> Observed",
+            "Receive -> Confirmed",
+            "Service start -> Armed",
+            "Service start (already armed)"
+    };
+
+    // Marker for "no timestamp", e.g. a rotation check that wasn't kicked off by a broadcast
+    static final long TIME_NONE = -1;
+
+    private static LatencyTracker sInstance;
+
+    private final LatencyHistogram[] mHistograms;
+
+
+    private LatencyTracker() {
+        mHistograms = new LatencyHistogram[STAGE_COUNT];
+
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+
+    static synchronized LatencyTracker getInstance() {
+
+        if (sInstance == null) {
+            sInstance = new LatencyTracker();
+        }
+
+        return sInstance;
+    }
+
+
+    /**
+     * Current timestamp (us) on the clock all the stages are measured against
+     */
+    static long now() {
+        return SystemClock.elapsedRealtimeNanos() / 1000;
+    }
+
+
+    /**
+     * Record the time from the given start timestamp until now against the given stage.
+     * Does nothing if the start time was never set.
+     */
+    void recordSince(int stage, long startedAtUs) {
+
+        if (startedAtUs != TIME_NONE) {
+            mHistograms[stage].record(now() - startedAtUs);
+        }
+    }
+
+
+    LatencyHistogram getHistogram(int stage) {
+        return mHistograms[stage];
+    }
+
+
+    void reset() {
+
+        for (LatencyHistogram eachHistogram : mHistograms) {
+            eachHistogram.reset();
+        }
+    }
+
+
+    /**
+     * Write out p50 / p95 / p99 for each stage, one line per stage (e.g. for the Test Panel and its
+     * clipboard output)
+     */
+    String buildReport() {
+
+        StringBuilder report = new StringBuilder();
+
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LatencyHistogram histogram = mHistograms[i];
+
+            if (i > 0) {
+                report.append('\n');
+            }
+
+            report.append(STAGE_LABELS[i]).append(": ");
+
+            if (histogram.getCount() == 0) {
+                report.append('-');
+
+            } else {
+                report.append(
+                        String.format(
+                                Locale.US,
+                                "p50 %.1f / p95 %.1f / p99 %.1f ms (n=%d)",
+                                histogram.getPercentile(50) / 1000.0,
+                                histogram.getPercentile(95) / 1000.0,
+                                histogram.getPercentile(99) / 1000.0,
+                                histogram.getCount()
+                        )
+                );
+            }
+        }
+
+        return report.toString();
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+
+/**
+ * Typed in-process event bus for the monitor, instead of going through LocalBroadcastManager.
+ *
+ * Each event is just a type and a long payload (the new DeviceState), so posting one doesn't
+ * allocate an Intent, match action Strings or take LocalBroadcastManager's global lock. Subscribers
+ * pick which events they want and which thread they want them on:
+ * - DISPATCH_POSTING: straight away, on whichever thread posted it
+ * - DISPATCH_MAIN / DISPATCH_PIPELINE: handed over through a (pooled) Message to that thread
+ *
+ * Subscriptions are kept in a copy-on-write array, so posting is just a volatile read and a loop.
+ * - 2018/04/16
+ */
+final class MonitorEventBus {
+
+    // Event types, also used as bits for the subscription mask
+    static final int EVENT_POWER_STATUS_UPDATED = 1;
+    static final int EVENT_ROTATION_SETTING_UPDATED = 1 << 1;
+
+    static final int EVENT_ALL = EVENT_POWER_STATUS_UPDATED | EVENT_ROTATION_SETTING_UPDATED;
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({DISPATCH_POSTING, DISPATCH_MAIN, DISPATCH_PIPELINE})
+    @interface DispatchThread {}
+
+    static final int DISPATCH_POSTING = 0;
+    static final int DISPATCH_MAIN = 1;
+    static final int DISPATCH_PIPELINE = 2;
+
+    /**
+     * Subscriber for monitor events, called on the thread it subscribed with
+     */
+    interface Subscriber {
+
+        /**
+         * One of the EVENT_* types, along with the DeviceState it was posted with
+         */
+        void onMonitorEvent(int eventType, long deviceState);
+    }
+
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    // Replaced (never modified) whenever someone subscribes / unsubscribes
+    private static volatile Subscription[] sSubscriptions = NO_SUBSCRIPTIONS;
+
+
+    private MonitorEventBus() {}
+
+
+    // region ================== SUBSCRIPTIONS ==================
+    // ====== ================== ============= ==================
+
+
+    /**
+     * Subscribe to the given EVENT_* types (OR'd together) on the given thread. Subscribing again
+     * replaces the previous subscription.
+     */
+    static synchronized void subscribe(@NonNull Subscriber subscriber, int eventMask, @DispatchThread int dispatchThread) {
+
+        // Drop any previous subscription first
+        unsubscribe(subscriber);
+
+        Subscription[] currentSubscriptions = sSubscriptions;
+        Subscription[] updatedSubscriptions = new Subscription[currentSubscriptions.length + 1];
+
+        System.arraycopy(currentSubscriptions, 0, updatedSubscriptions, 0, currentSubscriptions.length);
+        updatedSubscriptions[currentSubscriptions.length] = new Subscription(subscriber, eventMask, dispatchThread);
+
+        sSubscriptions = updatedSubscriptions;
+    }
+
+
+    static synchronized void unsubscribe(@NonNull Subscriber subscriber) {
+
+        Subscription[] currentSubscriptions = sSubscriptions;
+        Subscription[] updatedSubscriptions = removeFrom(currentSubscriptions, subscriber);
+
+        if (updatedSubscriptions != currentSubscriptions) {
+            for (Subscription eachSubscription : currentSubscriptions) {
+                if (eachSubscription.mSubscriber == subscriber) {
+                    // Drop anything that's already on its way to it
+                    eachSubscription.cancel();
+                }
+            }
+
+            sSubscriptions = updatedSubscriptions;
+        }
+    }
+
+
+    /**
+     * Return a copy of the given array without the given subscriber (or the same array if it's not in there)
+     */
+    private static Subscription[] removeFrom(Subscription[] subscriptions, Subscriber subscriber) {
+
+        for (int i = 0; i < subscriptions.length; i++) {
+
+            if (subscriptions[i].mSubscriber == subscriber) {
+
+                if (subscriptions.length == 1) {
+                    return NO_SUBSCRIPTIONS;
+                }
+
+                Subscription[] updatedSubscriptions = new Subscription[subscriptions.length - 1];
+
+                System.arraycopy(subscriptions, 0, updatedSubscriptions, 0, i);
+                System.arraycopy(subscriptions, i + 1, updatedSubscriptions, i, subscriptions.length - i - 1);
+
+                return updatedSubscriptions;
+            }
+        }
+
+        return subscriptions;
+    }
+
+    // endregion
+
+
+    // region ================== POSTING ==================
+    // ====== ================== ======= ==================
+
+
+    /**
+     * Send the given event out to everyone subscribed to it
+     */
+    static void post(int eventType, long deviceState) {
+
+        for (Subscription eachSubscription : sSubscriptions) {
+            if ((eachSubscription.mEventMask & eventType) != 0) {
+                eachSubscription.dispatch(eventType, deviceState);
+            }
+        }
+    }
+
+
+    /**
+     * Readable name of the given event type, for logs
+     */
+    static String getEventName(int eventType) {
+
+        switch (eventType) {
+            case EVENT_POWER_STATUS_UPDATED:
+                return "EVENT_POWER_STATUS_UPDATED";
+
+            case EVENT_ROTATION_SETTING_UPDATED:
+                return "EVENT_ROTATION_SETTING_UPDATED";
+
+            default:
+                return "EVENT_" + eventType;
+        }
+    }
+
+    // endregion
+
+
+    /**
+     * A subscriber along with what it wants and where. Events for another thread go over as a
+     * Message, with the payload split across arg1 / arg2.
+     */
+    private static final class Subscription implements Handler.Callback {
+
+        final Subscriber mSubscriber;
+        final int mEventMask;
+
+        // Null for DISPATCH_POSTING
+        private final Handler mHandler;
+
+        // Cleared on unsubscribe, in case a post() still had hold of the old array
+        private volatile boolean mActive;
+
+
+        Subscription(@NonNull Subscriber subscriber, int eventMask, @DispatchThread int dispatchThread) {
+            mSubscriber = subscriber;
+            mEventMask = eventMask;
+            mActive = true;
+
+            switch (dispatchThread) {
+                case DISPATCH_MAIN:
+                    mHandler = new Handler(Looper.getMainLooper(), this);
+                    break;
+
+                case DISPATCH_PIPELINE:
+                    mHandler = new Handler(PipelineExecutor.getInstance().getHandler().getLooper(), this);
+                    break;
+
+                default:
+                    mHandler = null;
+                    break;
+            }
+        }
+
+
+        void dispatch(int eventType, long deviceState) {
+
+            if (!mActive) {
+                return;
+            }
+
+            if (mHandler == null) {
+                mSubscriber.onMonitorEvent(eventType, deviceState);
+
+            } else {
+                mHandler.obtainMessage(
+                        eventType,
+                        (int) (deviceState >>> 32),
+                        (int) deviceState
+                ).sendToTarget();
+            }
+        }
+
+
+        void cancel() {
+            mActive = false;
+
+            if (mHandler != null) {
+                mHandler.removeCallbacksAndMessages(null);
+            }
+        }
+
+
+        @Override
+        public boolean handleMessage(Message message) {
+
+            if (mActive) {
+                long deviceState = ((long) message.arg1 << 32) | (message.arg2 & 0xffffffffL);
+
+                mSubscriber.onMonitorEvent(message.what, deviceState);
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.justbnutz.dockorientationrotatorlator.core.DeviceState;
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+import com.justbnutz.dockorientationrotatorlator.core.RotationEngine;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Immutable snapshot of everything the UI shows about the monitor: the port / power state, the
+ * current Rotation Settings, the Rotation Profile and the natural orientation.
+ *
+ * Whoever finds something out first (PowerSnapshot for the port state, ObserverRotationSetting for
+ * the Settings, RotationProfileTable for the profile, NaturalOrientationCache for the orientation)
+ * publishes it here, each change swapping in a new snapshot with the next version number. So the
+ * Configurator, Test Panel and notification just read the current one instead of each going back
+ * to the sticky Intents and Settings on every refresh, and can subscribe to hear about new ones.
+ *
+ * Anything still missing is only ever looked up on the pipeline thread (it's all IPC), the main
+ * thread asks for it with requestPopulated() and carries on with whatever is already in memory.
+ * - 2018/04/16
+ */
+final class MonitorSnapshot {
+
+    /**
+     * Listener for new snapshots, called on the main thread. Changes that land close together are
+     * delivered as one call with the latest snapshot.
+     */
+    interface OnSnapshotChangedListener {
+        void onSnapshotChanged(@NonNull MonitorSnapshot snapshot);
+    }
+
+    private static final MonitorSnapshot EMPTY = new MonitorSnapshot(
+            0,
+            DeviceState.NONE,
+            RotationProfile.DISABLED,
+            RotationEngine.ORIENTATION_UNKNOWN
+    );
+
+    private static final AtomicReference<MonitorSnapshot> sCurrent = new AtomicReference<>(EMPTY);
+
+    private static final CopyOnWriteArrayList<OnSnapshotChangedListener> sListeners = new CopyOnWriteArrayList<>();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    // Whether a delivery to the listeners is already waiting on the main thread
+    private static final AtomicBoolean sDispatchPending = new AtomicBoolean();
+
+    // Whether a populate is already waiting on the pipeline thread, whether any of the requests for
+    // it wanted the port state, and who still wants the result (requestPopulated() callers, each one
+    // stays in here until it's been handed a populated snapshot or unsubscribes)
+    private static final AtomicBoolean sPopulatePending = new AtomicBoolean();
+    private static final AtomicBoolean sPopulatePortState = new AtomicBoolean();
+    private static final CopyOnWriteArrayList<OnSnapshotChangedListener> sPopulateCallbacks = new CopyOnWriteArrayList<>();
+    private static volatile Context sAppContext;
+
+    private final long mVersion;
+
+    // Power Status, plug / dock state, current Auto-Rotate / User Rotation Settings and the profile's
+    // Rotation Mode for the Power Status, packed into a DeviceState
+    private final long mDeviceState;
+
+    private final RotationProfile mProfile;
+    private final int mNaturalOrientation;
+
+
+    private MonitorSnapshot(long version, long deviceState, @NonNull RotationProfile profile, int naturalOrientation) {
+        mVersion = version;
+        mProfile = profile;
+        mNaturalOrientation = naturalOrientation;
+
+        // The Rotation Mode always follows from the Power Status and the profile
+        mDeviceState = DeviceState.withRotationMode(
+                deviceState,
+                DeviceState.isKnown(deviceState, DeviceState.FIELD_POWER_STATUS)
+                        ? profile.getRotationMode(DeviceState.getPowerStatus(deviceState))
+                        : RotationProfile.MODE_NO_CHANGE
+        );
+    }
+
+
+    // region ================== READERS ==================
+    // ====== ================== ======= ==================
+
+
+    /**
+     * Return the latest snapshot, whatever's in it
+     */
+    @NonNull
+    static MonitorSnapshot getCurrent() {
+        return sCurrent.get();
+    }
+
+
+    /**
+     * Return the latest snapshot, first looking up anything it doesn't know yet. Only the first call
+     * (or the first after the port state went stale) should actually have to look anything up.
+     *
+     * The port state is only looked up if asked for, since it's not tracked while the monitor is off.
+     * The lookups are IPC, so this is for the pipeline thread only, see requestPopulated().
+     */
+    @NonNull
+    static MonitorSnapshot getPopulated(@NonNull Context context, boolean withPortState) {
+
+        MonitorSnapshot snapshot = sCurrent.get();
+
+        if (snapshot.mProfile == RotationProfile.DISABLED) {
+            // Compiling the profile publishes it
+            RotationProfileTable.getInstance(context);
+        }
+
+        if (snapshot.mNaturalOrientation == RotationEngine.ORIENTATION_UNKNOWN) {
+            // As does working out the natural orientation
+            NaturalOrientationCache.getInstance().getNaturalOrientation(context);
+        }
+
+        if (withPortState
+                && (!DeviceState.isKnown(snapshot.mDeviceState, DeviceState.FIELD_PLUG_STATE)
+                || !DeviceState.isKnown(snapshot.mDeviceState, DeviceState.FIELD_DOCK_STATE))) {
+
+            PowerSnapshot.getInstance().readUnknownState(context);
+        }
+
+        // The Settings are only kept up to date while someone's observing them
+        if (!ObserverRotationSetting.isObserving()
+                || !DeviceState.isKnown(snapshot.mDeviceState, DeviceState.FIELD_AUTO_ROTATE)) {
+
+            readRotationSettings(context, null);
+        }
+
+        return sCurrent.get();
+    }
+
+
+    /**
+     * Return the latest snapshot straight away (whatever's in it), and have anything it's missing
+     * looked up on the pipeline thread. The populated snapshot is then handed to the given callback
+     * on the main thread, as well as published to the subscribers if anything changed.
+     *
+     * Requests that come in while one is still waiting are all served by the same populate. A
+     * callback that's unsubscribed before then doesn't get called.
+     */
+    @NonNull
+    static MonitorSnapshot requestPopulated(@NonNull Context context, boolean withPortState,
+                                            @Nullable OnSnapshotChangedListener callback) {
+
+        sAppContext = context.getApplicationContext();
+
+        if (withPortState) {
+            sPopulatePortState.set(true);
+        }
+
+        if (callback != null) {
+            sPopulateCallbacks.addIfAbsent(callback);
+        }
+
+        if (sPopulatePending.compareAndSet(false, true)) {
+            PipelineExecutor.getInstance().execute(sPopulate);
+        }
+
+        return sCurrent.get();
+    }
+
+
+    static void subscribe(@NonNull OnSnapshotChangedListener listener) {
+        sListeners.addIfAbsent(listener);
+    }
+
+
+    /**
+     * Stop hearing about new snapshots, including any requestPopulated() result still on its way
+     */
+    static void unsubscribe(@NonNull OnSnapshotChangedListener listener) {
+        sListeners.remove(listener);
+        sPopulateCallbacks.remove(listener);
+    }
+
+
+    long getVersion() {
+        return mVersion;
+    }
+
+
+    /**
+     * Return the whole packed state, see DeviceState for reading it
+     */
+    long getDeviceState() {
+        return mDeviceState;
+    }
+
+
+    boolean isMonitorEnabled() {
+        return mProfile.isMonitorEnabled();
+    }
+
+
+    boolean hasPowerStatus() {
+        return DeviceState.isKnown(mDeviceState, DeviceState.FIELD_POWER_STATUS);
+    }
+
+
+    /**
+     * Return the Power Status, or PowerStateTracker.POWER_STATUS_UNKNOWN (check hasPowerStatus())
+     */
+    int getPowerStatus() {
+        return DeviceState.getPowerStatus(mDeviceState);
+    }
+
+
+    /**
+     * Return the profile's Rotation Mode for the current Power Status
+     */
+    @ReceiverPortStatus.RotationMode
+    int getRotationMode() {
+        return DeviceState.getRotationMode(mDeviceState);
+    }
+
+
+    /**
+     * Return the Auto-Rotate Setting (0 / 1), or STATE_UNKNOWN
+     */
+    int getAutoRotate() {
+        return DeviceState.getAutoRotate(mDeviceState);
+    }
+
+
+    /**
+     * Return the User Rotation Setting (Surface.ROTATION_*), or ROTATION_NONE
+     */
+    int getUserRotation() {
+        return DeviceState.getUserRotation(mDeviceState);
+    }
+
+
+    int getNaturalOrientation() {
+        return mNaturalOrientation;
+    }
+
+    // endregion
+
+
+    // region ================== PUBLISHERS ==================
+    // ====== ================== ========== ==================
+
+
+    /**
+     * Publish the port state, with POWER_STATUS_NONE if it couldn't be resolved yet
+     */
+    static void publishPowerState(int plugState, int dockState, int powerStatus) {
+
+        MonitorSnapshot current;
+        MonitorSnapshot next;
+
+        do {
+            current = sCurrent.get();
+            next = current.withDeviceState(
+                    DeviceState.withPowerStatus(
+                            DeviceState.withDockState(
+                                    DeviceState.withPlugState(current.mDeviceState, plugState),
+                                    dockState
+                            ),
+                            powerStatus
+                    )
+            );
+        } while (next != current && !sCurrent.compareAndSet(current, next));
+
+        onPublished(current, next);
+    }
+
+
+    /**
+     * Publish the Rotation Settings, either can be STATE_UNKNOWN / ROTATION_NONE
+     */
+    static void publishRotationSettings(int autoRotate, int userRotation) {
+
+        MonitorSnapshot current;
+        MonitorSnapshot next;
+
+        do {
+            current = sCurrent.get();
+            next = current.withDeviceState(
+                    DeviceState.withUserRotation(
+                            DeviceState.withAutoRotate(current.mDeviceState, autoRotate),
+                            userRotation
+                    )
+            );
+        } while (next != current && !sCurrent.compareAndSet(current, next));
+
+        onPublished(current, next);
+    }
+
+
+    static void publishProfile(@NonNull RotationProfile profile) {
+
+        MonitorSnapshot current;
+        MonitorSnapshot next;
+
+        do {
+            current = sCurrent.get();
+            next = (profile == current.mProfile)
+                    ? current
+                    : new MonitorSnapshot(current.mVersion + 1, current.mDeviceState, profile, current.mNaturalOrientation);
+        } while (next != current && !sCurrent.compareAndSet(current, next));
+
+        onPublished(current, next);
+    }
+
+
+    static void publishNaturalOrientation(int naturalOrientation) {
+
+        MonitorSnapshot current;
+        MonitorSnapshot next;
+
+        do {
+            current = sCurrent.get();
+            next = (naturalOrientation == current.mNaturalOrientation)
+                    ? current
+                    : new MonitorSnapshot(current.mVersion + 1, current.mDeviceState, current.mProfile, naturalOrientation);
+        } while (next != current && !sCurrent.compareAndSet(current, next));
+
+        onPublished(current, next);
+    }
+
+
+    /**
+     * Read the given Rotation Setting (or both if null) from Settings and publish it
+     */
+    static void readRotationSettings(@NonNull Context context, @Nullable String settingKey) {
+
+        MonitorSnapshot current = sCurrent.get();
+
+        int autoRotate = current.getAutoRotate();
+        int userRotation = current.getUserRotation();
+
+        if (settingKey == null || Settings.System.ACCELEROMETER_ROTATION.equals(settingKey)) {
+            autoRotate = Settings.System.getInt(
+                    context.getContentResolver(),
+                    Settings.System.ACCELEROMETER_ROTATION,
+                    PowerStateTracker.STATE_UNKNOWN
+            );
+        }
+
+        if (settingKey == null || Settings.System.USER_ROTATION.equals(settingKey)) {
+            userRotation = Settings.System.getInt(
+                    context.getContentResolver(),
+                    Settings.System.USER_ROTATION,
+                    PowerStateTracker.STATE_UNKNOWN
+            );
+        }
+
+        publishRotationSettings(autoRotate, userRotation);
+    }
+
+
+    /**
+     * Return this snapshot with the given state swapped in, or this one if it's the same
+     */
+    private MonitorSnapshot withDeviceState(long deviceState) {
+
+        if (DeviceState.equalsIgnoring(mDeviceState, deviceState, DeviceState.FIELD_ROTATION_MODE)) {
+            return this;
+        }
+
+        return new MonitorSnapshot(mVersion + 1, deviceState, mProfile, mNaturalOrientation);
+    }
+
+
+    private static void onPublished(MonitorSnapshot previous, MonitorSnapshot published) {
+
+        if (previous == published || sListeners.isEmpty()) {
+            return;
+        }
+
+        if (sDispatchPending.compareAndSet(false, true)) {
+            sMainHandler.post(sDispatchLatest);
+        }
+    }
+
+
+    /**
+     * Fill in whatever's missing for everyone who asked, then hand them the result
+     */
+    private static final Runnable sPopulate = new Runnable() {
+        @Override
+        public void run() {
+            sPopulatePending.set(false);
+
+            // Whoever asked before this populate started gets its result (anyone after has another one coming)
+            final Object[] callbacks = sPopulateCallbacks.toArray();
+
+            final MonitorSnapshot snapshot = getPopulated(sAppContext, sPopulatePortState.getAndSet(false));
+
+            if (callbacks.length == 0) {
+                return;
+            }
+
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+
+                    for (Object eachCallback : callbacks) {
+                        // Only if it's still waiting, it might have unsubscribed in the meantime
+                        if (sPopulateCallbacks.remove(eachCallback)) {
+                            ((OnSnapshotChangedListener) eachCallback).onSnapshotChanged(snapshot);
+                        }
+                    }
+                }
+            });
+        }
+    };
+
+
+    private static final Runnable sDispatchLatest = new Runnable() {
+        @Override
+        public void run() {
+            sDispatchPending.set(false);
+
+            MonitorSnapshot snapshot = sCurrent.get();
+
+            for (OnSnapshotChangedListener eachListener : sListeners) {
+                eachListener.onSnapshotChanged(snapshot);
+            }
+        }
+    };
+
+    // endregion
+}
@@ -0,0 +1,205 @@
+/*
+ * Created by Brian Lau on 2018-04-11
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.graphics.Point;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.view.Display;
+
+import com.justbnutz.dockorientationrotatorlator.core.RotationEngine;
+import com.justbnutz.dockorientationrotatorlator.core.RotationMapping;
+
+
+/**
+ * Works out the "natural orientation" of the device once and keeps hold of it.
+ *
+ * The natural orientation doesn't change unless the display itself does (e.g. mirroring onto a
+ * different sized screen), so there's no need to go through WindowManager and the Configuration on
+ * every lookup. It's worked out from the real size of the default display (which is always in step
+ * with the display's rotation, unlike the Configuration mid-rotation), saved along with that size,
+ * and only worked out again when a display change comes through with a different size.
+ * - 2018/04/11
+ */
+class NaturalOrientationCache {
+
+    private static final NaturalOrientationCache INSTANCE = new NaturalOrientationCache();
+
+    // Marker for "not worked out yet"
+    private static final int ORIENTATION_UNKNOWN = RotationEngine.ORIENTATION_UNKNOWN;
+
+    private volatile int mNaturalOrientation;
+
+    // Display size the natural orientation was worked out against, packed as (short side << 32 | long side)
+    private volatile long mDisplaySize;
+
+    private Context mContext;
+    private DisplayManager mDisplayManager;
+    private final Point mRealSize;
+
+
+    private NaturalOrientationCache() {
+        mNaturalOrientation = ORIENTATION_UNKNOWN;
+        mRealSize = new Point();
+    }
+
+
+    static NaturalOrientationCache getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Return the natural orientation of the device (Configuration.ORIENTATION_*), working it out
+     * (or loading it from preferences) if this is the first time it's been asked for.
+     */
+    int getNaturalOrientation(@NonNull Context context) {
+
+        int naturalOrientation = mNaturalOrientation;
+
+        if (naturalOrientation == ORIENTATION_UNKNOWN) {
+            naturalOrientation = load(context);
+        }
+
+        return naturalOrientation;
+    }
+
+
+    /**
+     * First lookup, start watching the display and either restore the saved value (if the display
+     * is still the same size) or work it out fresh.
+     */
+    private synchronized int load(@NonNull Context context) {
+
+        if (mNaturalOrientation != ORIENTATION_UNKNOWN) {
+            // Another thread beat us to it
+            return mNaturalOrientation;
+        }
+
+        mContext = context.getApplicationContext();
+        mDisplayManager = (DisplayManager) mContext.getSystemService(Context.DISPLAY_SERVICE);
+
+        if (mDisplayManager == null) {
+            // Can't tell, don't cache this so we try again next time
+            return Configuration.ORIENTATION_UNDEFINED;
+        }
+
+        // Stays registered for the life of the process, display changes are rare
+        mDisplayManager.registerDisplayListener(mDisplayListener, new Handler(Looper.getMainLooper()));
+
+        SharedPreferences sharedPrefs = ApplicationRotatorlator.getSharedPrefs(mContext);
+
+        int savedOrientation = sharedPrefs.getInt(mContext.getString(R.string.prefkey_natural_orientation), ORIENTATION_UNKNOWN);
+        long savedDisplaySize = sharedPrefs.getLong(mContext.getString(R.string.prefkey_natural_orientation_display_size), 0);
+
+        Display defaultDisplay = mDisplayManager.getDisplay(Display.DEFAULT_DISPLAY);
+
+        if (defaultDisplay != null
+                && savedOrientation != ORIENTATION_UNKNOWN
+                && savedDisplaySize == getDisplaySize(defaultDisplay)) {
+
+            mDisplaySize = savedDisplaySize;
+            setNaturalOrientation(savedOrientation);
+            return savedOrientation;
+        }
+
+        return update(defaultDisplay);
+    }
+
+
+    /**
+     * Work out the natural orientation from the given display, save it and pass it on to the engine
+     */
+    private synchronized int update(Display defaultDisplay) {
+
+        if (defaultDisplay == null) {
+            return Configuration.ORIENTATION_UNDEFINED;
+        }
+
+        long displaySize = getDisplaySize(defaultDisplay);
+        int naturalOrientation = RotationMapping.getNaturalOrientationFromSize(
+                defaultDisplay.getRotation(),
+                mRealSize.x,
+                mRealSize.y
+        );
+
+        if (naturalOrientation == Configuration.ORIENTATION_UNDEFINED) {
+            // Square display, the size can't tell us anything so go with what the Configuration says
+            naturalOrientation = RotationMapping.getNaturalOrientation(
+                    defaultDisplay.getRotation(),
+                    mContext.getResources().getConfiguration().orientation
+            );
+        }
+
+        mDisplaySize = displaySize;
+        setNaturalOrientation(naturalOrientation);
+
+        ApplicationRotatorlator.getSharedPrefs(mContext)
+                .edit()
+                .putInt(mContext.getString(R.string.prefkey_natural_orientation), naturalOrientation)
+                .putLong(mContext.getString(R.string.prefkey_natural_orientation_display_size), displaySize)
+                .apply();
+
+        return naturalOrientation;
+    }
+
+
+    private void setNaturalOrientation(int naturalOrientation) {
+        mNaturalOrientation = naturalOrientation;
+
+        // Keep the decision engine and the UI's snapshot in step, so they don't have to ask
+        ApplicationRotatorlator.getRotationEngine().setNaturalOrientation(naturalOrientation);
+        MonitorSnapshot.publishNaturalOrientation(naturalOrientation);
+    }
+
+
+    /**
+     * Read the real size of the given display into mRealSize, and return it packed up independent of
+     * the current rotation
+     */
+    private long getDisplaySize(@NonNull Display display) {
+
+        display.getRealSize(mRealSize);
+
+        long shortSide = Math.min(mRealSize.x, mRealSize.y);
+        long longSide = Math.max(mRealSize.x, mRealSize.y);
+
+        return (shortSide << 32) | longSide;
+    }
+
+
+    private final DisplayManager.DisplayListener mDisplayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {}
+
+        @Override
+        public void onDisplayRemoved(int displayId) {}
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+
+            if (displayId != Display.DEFAULT_DISPLAY) {
+                return;
+            }
+
+            Display defaultDisplay = mDisplayManager.getDisplay(Display.DEFAULT_DISPLAY);
+
+            synchronized (NaturalOrientationCache.this) {
+                // This fires on every rotation as well, only need to redo it if the size has actually changed
+                if (defaultDisplay != null && getDisplaySize(defaultDisplay) != mDisplaySize) {
+                    update(defaultDisplay);
+                }
+            }
+        }
+    };
+}
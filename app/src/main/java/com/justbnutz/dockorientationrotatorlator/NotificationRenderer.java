@@ -0,0 +1,287 @@
+/*
+ * Created by Brian Lau on 2018-04-12
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-15
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.v4.app.NotificationCompat;
+
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+
+/**
+ * Renders the monitoring notification for ServicePortStatusHandler.
+ *
+ * The notification only ever shows one of a handful of variants (one per Power Status / Rotation
+ * Mode pair), so each variant is built once and kept. An update then only goes out to the
+ * NotificationManager if the variant has actually changed, and no more often than once every
+ * MIN_UPDATE_INTERVAL_MS - anything arriving inside that window just replaces the pending update.
+ *
+ * The PendingIntents use fixed request codes, so they're created once and reused.
+ * - 2018/04/12
+ */
+class NotificationRenderer {
+
+    // Fixed PendingIntent request codes
+    private static final int REQUEST_CODE_OPEN_APP = 0;
+    private static final int REQUEST_CODE_STOP_MONITORING = 1;
+
+    // Minimum gap between updates to the NotificationManager
+    private static final long MIN_UPDATE_INTERVAL_MS = 500;
+
+    // Marker for "nothing rendered yet" / "no update pending"
+    private static final int VARIANT_NONE = -1;
+
+    private final Context mContext;
+    private final NotificationManager mNotificationManager;
+    private final int mNotificationId;
+    private final Handler mHandler;
+
+    private final NotificationCompat.Builder mNotificationBuilder;
+
+    // Built notification for each variant, indexed by (Power Status * MODE_COUNT + Rotation Mode)
+    private final Notification[] mVariants;
+
+    // Content text for each Power Status
+    private final String[] mContentTexts;
+
+    // Placeholder shown until the first variant goes out
+    private Notification mInitialNotification;
+
+    private int mRenderedVariant;
+    private int mPendingVariant;
+    private long mLastUpdateAt;
+
+    // How many updates went out vs were skipped as unchanged / folded into a later update
+    private int mUpdatesPosted;
+    private int mUpdatesSkipped;
+    private int mUpdatesThrottled;
+
+
+    NotificationRenderer(@NonNull Context context, NotificationManager notificationManager,
+                         int notificationId, @NonNull String notificationChannelId) {
+
+        mContext = context;
+        mNotificationManager = notificationManager;
+        mNotificationId = notificationId;
+        mHandler = new Handler(Looper.getMainLooper());
+
+        mNotificationBuilder = new NotificationCompat.Builder(context, notificationChannelId)
+                .setContentTitle(context.getString(R.string.notification_channel_name))
+                .setOngoing(true)
+
+                // Set the action when tapping the notification itself
+                .setContentIntent(pendingIntentOpenApp())
+
+                // Set the Cancel button action
+                .addAction(
+                        R.drawable.ic_cancel_black,
+                        context.getString(R.string.btn_stop_monitoring),
+                        pendingIntentStopMonitoring()
+                );
+
+        mVariants = new Notification[PowerStateTracker.POWER_STATUS_COUNT * RotationProfile.MODE_COUNT];
+
+        mContentTexts = new String[PowerStateTracker.POWER_STATUS_COUNT];
+
+        for (int i = 0; i < mContentTexts.length; i++) {
+            mContentTexts[i] = context.getString(R.string.lbl_current_port_status)
+                    + " "
+                    + context.getString(RotationModeResources.getPowerStatusLabel(i));
+        }
+
+        mRenderedVariant = VARIANT_NONE;
+        mPendingVariant = VARIANT_NONE;
+    }
+
+
+    /**
+     * Build the placeholder notification shown before we know the port status (e.g. for startForeground()).
+     * The next call to render() will always go straight through after this.
+     */
+    Notification buildInitialNotification() {
+
+        mHandler.removeCallbacks(mFlushPendingUpdate);
+        mRenderedVariant = VARIANT_NONE;
+        mPendingVariant = VARIANT_NONE;
+        mLastUpdateAt = 0;
+
+        mInitialNotification = mNotificationBuilder
+                .setSmallIcon(R.drawable.ic_adjust_black)
+                .setContentText(mContext.getString(R.string.lbl_status_blank))
+                .build();
+
+        return mInitialNotification;
+    }
+
+
+    /**
+     * Return whatever notification is currently showing (e.g. to hand to startForeground() again
+     * without changing it), or null if buildInitialNotification() hasn't been called yet.
+     */
+    Notification getCurrentNotification() {
+
+        return (mRenderedVariant != VARIANT_NONE)
+                ? mVariants[mRenderedVariant]
+                : mInitialNotification;
+    }
+
+
+    /**
+     * Show the variant for the given Power Status / Rotation Mode, if it's not already showing
+     */
+    void render(int powerStatus, int rotationMode) {
+
+        int variant = (powerStatus * RotationProfile.MODE_COUNT) + rotationMode;
+
+        if (mPendingVariant != VARIANT_NONE) {
+            // Already waiting on the throttle window, just make sure the latest state is the one that goes out
+            mPendingVariant = variant;
+            mUpdatesThrottled++;
+            return;
+        }
+
+        if (variant == mRenderedVariant) {
+            mUpdatesSkipped++;
+            return;
+        }
+
+        long sinceLastUpdate = SystemClock.elapsedRealtime() - mLastUpdateAt;
+
+        if (sinceLastUpdate < MIN_UPDATE_INTERVAL_MS) {
+            mPendingVariant = variant;
+            mHandler.postDelayed(mFlushPendingUpdate, MIN_UPDATE_INTERVAL_MS - sinceLastUpdate);
+            return;
+        }
+
+        postVariant(variant);
+    }
+
+
+    /**
+     * Drop any pending update and take the notification down
+     */
+    void cancel() {
+
+        mHandler.removeCallbacks(mFlushPendingUpdate);
+        mRenderedVariant = VARIANT_NONE;
+        mPendingVariant = VARIANT_NONE;
+
+        if (mNotificationManager != null) {
+            mNotificationManager.cancel(mNotificationId);
+        }
+    }
+
+
+    int getUpdatesPosted() {
+        return mUpdatesPosted;
+    }
+
+
+    int getUpdatesSkipped() {
+        return mUpdatesSkipped;
+    }
+
+
+    int getUpdatesThrottled() {
+        return mUpdatesThrottled;
+    }
+
+
+    private void postVariant(int variant) {
+
+        if (mNotificationManager != null) {
+            mNotificationManager.notify(mNotificationId, getVariant(variant));
+        }
+
+        mRenderedVariant = variant;
+        mLastUpdateAt = SystemClock.elapsedRealtime();
+        mUpdatesPosted++;
+    }
+
+
+    /**
+     * Return the built notification for the given variant, building it the first time it's needed
+     */
+    private Notification getVariant(int variant) {
+
+        Notification notification = mVariants[variant];
+
+        if (notification == null) {
+            int powerStatus = variant / RotationProfile.MODE_COUNT;
+            int rotationMode = variant % RotationProfile.MODE_COUNT;
+
+            // No Change doesn't have an icon of its own, so stick with the monitoring icon
+            int notificationIcon = RotationModeResources.getModeNotificationIcon(rotationMode);
+
+            notification = mNotificationBuilder
+                    .setSmallIcon(notificationIcon != 0 ? notificationIcon : R.drawable.ic_adjust_black)
+                    .setContentText(mContentTexts[powerStatus])
+                    .build();
+
+            mVariants[variant] = notification;
+        }
+
+        return notification;
+    }
+
+
+    private final Runnable mFlushPendingUpdate = new Runnable() {
+        @Override
+        public void run() {
+            int variant = mPendingVariant;
+            mPendingVariant = VARIANT_NONE;
+
+            if (variant != VARIANT_NONE && variant != mRenderedVariant) {
+                postVariant(variant);
+            }
+        }
+    };
+
+
+    // region ================== PENDINGINTENTS ==================
+    // ====== ================== ============== ==================
+
+
+    private PendingIntent pendingIntentStopMonitoring() {
+
+        Intent intentStopMonitoring = new Intent(mContext, ServicePortStatusHandler.class);
+        intentStopMonitoring.setAction(ServicePortStatusHandler.ACTION_KEY_STOP_MONITORING);
+
+        return PendingIntent.getService(
+                mContext,
+                REQUEST_CODE_STOP_MONITORING,
+                intentStopMonitoring,
+                PendingIntent.FLAG_UPDATE_CURRENT
+        );
+    }
+
+
+    private PendingIntent pendingIntentOpenApp() {
+
+        Intent intentOpenApp = new Intent(mContext, ActivitySplashScreen.class);
+        intentOpenApp.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        return PendingIntent.getActivity(
+                mContext,
+                REQUEST_CODE_OPEN_APP,
+                intentOpenApp,
+                PendingIntent.FLAG_UPDATE_CURRENT
+        );
+    }
+
+    // endregion
+}
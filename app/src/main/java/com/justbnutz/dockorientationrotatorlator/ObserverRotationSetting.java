@@ -2,54 +2,161 @@
  * Created by Brian Lau on 2018-03-22
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-03-25
+ * Last modified: 2018-04-16
  */
 
 package com.justbnutz.dockorientationrotatorlator;
 
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.OnLifecycleEvent;
+import android.content.ContentResolver;
 import android.content.Context;
-import android.content.Intent;
 import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Handler;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
-import android.support.v4.content.LocalBroadcastManager;
+
+import com.justbnutz.dockorientationrotatorlator.core.DeviceState;
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
- * Quick ContentObserver to send out a LocalBroadcast when Rotation Settings has been updated
+ * ContentObserver for the Auto-Rotate and User Rotation Settings, running on the pipeline thread.
+ *
+ * Changes are collected for a short window (a transition usually writes both Settings one after the
+ * other), then the changed Settings are read once and shared between all the observers: published to
+ * the MonitorSnapshot, handed to the listeners along with the values from before, and posted to the
+ * MonitorEventBus (if any of the observers that saw it wants that).
+ *
+ * Only ever holds on to the application Context, and can be bound to a LifecycleOwner so it starts
+ * and stops along with it instead of relying on the owner to remember.
  *
  * Reference: https://www.adityathakker.com/android-content-observer-react-on-content-change/
  * - 2018/03/22
  */
-public class ObserverRotationSetting extends ContentObserver {
+public class ObserverRotationSetting extends ContentObserver implements LifecycleObserver {
 
     private static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".ObserverRotationSetting";
 
-    static final String ACTION_KEY_ROTATION_SETTING_UPDATED = TAG + ".ACTION_KEY_ROTATION_SETTING_UPDATED";
+    /**
+     * Listener for Rotation Settings changes, called on the pipeline thread
+     */
+    interface OnRotationSettingsChangedListener {
+
+        /**
+         * The Settings from before and after the change, packed into DeviceStates with only the
+         * Auto-Rotate and User Rotation fields filled in (see DeviceState.getAutoRotate() etc.)
+         */
+        void onRotationSettingsChanged(long previousSettings, long currentSettings);
+    }
+
+    // How long to wait for any more changes before reading the Settings
+    private static final long COALESCE_WINDOW_MS = 50;
+
+    private static final int PENDING_AUTO_ROTATE = 1;
+    private static final int PENDING_USER_ROTATION = 1 << 1;
+    private static final int PENDING_ALL = PENDING_AUTO_ROTATE | PENDING_USER_ROTATION;
+
+    // How many observers are currently registered, cached rotation Settings are only good while this is > 0
+    private static final AtomicInteger sActiveObservers = new AtomicInteger();
+
+    private static final CopyOnWriteArrayList<OnRotationSettingsChangedListener> sListeners = new CopyOnWriteArrayList<>();
+
+    // The application Context to read the Settings through
+    private static volatile Context sAppContext;
+
+    // Shared by all the observers and only touched on the pipeline thread: the Settings as last read,
+    // which of them have changed since, and whether the next read should go out on the event bus
+    private static long sLastSettings = DeviceState.NONE;
+    private static int sPendingSettings;
+    private static boolean sPendingBroadcast;
+    private static boolean sReadScheduled;
+
+    private final Handler mHandler;
 
     private Context mContext;
+    private boolean mObserving;
 
+    // Whether to post an event on changes, or only keep the snapshot and Actuator's cache up to date
+    private final boolean mBroadcastUpdates;
 
-    ObserverRotationSetting(Handler handler) {
+
+    ObserverRotationSetting() {
+        this(true);
+    }
+
+
+    ObserverRotationSetting(boolean broadcastUpdates) {
+        this(PipelineExecutor.getInstance().getHandler(), broadcastUpdates);
+    }
+
+
+    private ObserverRotationSetting(Handler handler, boolean broadcastUpdates) {
         super(handler);
+        mHandler = handler;
+        mBroadcastUpdates = broadcastUpdates;
+    }
+
+
+    /**
+     * Return whether any Rotation Settings observer is currently registered
+     */
+    static boolean isObserving() {
+        return sActiveObservers.get() > 0;
+    }
+
+
+    static void registerListener(@NonNull OnRotationSettingsChangedListener listener) {
+        sListeners.addIfAbsent(listener);
+    }
+
+
+    static void unregisterListener(@NonNull OnRotationSettingsChangedListener listener) {
+        sListeners.remove(listener);
     }
 
 
+    // region ================== OBSERVER OPS ==================
+    // ====== ================== ============ ==================
+
+
     /**
      * Start listening for Settings updates under the given Context
      */
     void startObserver(@NonNull Context context) {
-        // Keep a reference to the given Context
-        mContext = context;
 
-        // Register the Observer against the Rotation Settings Uri
-        context.getContentResolver().registerContentObserver(
-                Uri.withAppendedPath(Settings.System.CONTENT_URI, Settings.System.ACCELEROMETER_ROTATION),
+        if (mObserving) {
+            return;
+        }
+
+        // Keep a reference to the Application Context (so we're not holding on to an Activity or Service)
+        mContext = context.getApplicationContext();
+        sAppContext = mContext;
+
+        // Register the Observer against both the Auto-Rotate and User Rotation Settings Uris
+        mContext.getContentResolver().registerContentObserver(
+                Settings.System.getUriFor(Settings.System.ACCELEROMETER_ROTATION),
                 true,
                 this
         );
+
+        mContext.getContentResolver().registerContentObserver(
+                Settings.System.getUriFor(Settings.System.USER_ROTATION),
+                true,
+                this
+        );
+
+        mObserving = true;
+        sActiveObservers.incrementAndGet();
+
+        // Start the snapshot off with the current values, from here on each change gets published as it comes in
+        mHandler.post(sPrimeSettings);
     }
 
 
@@ -57,12 +164,54 @@ public class ObserverRotationSetting extends ContentObserver {
      * Stop observing Settings updates.
      */
     void stopObserver() {
-        if (mContext != null) {
-            mContext.getContentResolver().unregisterContentObserver(this);
+
+        if (!mObserving) {
+            return;
         }
+
+        mContext.getContentResolver().unregisterContentObserver(this);
+
+        mObserving = false;
+        sActiveObservers.decrementAndGet();
+
+        // Nobody is watching anymore, so whatever is cached could go stale
+        RotationActuator.getInstance().invalidateCachedSetting(null);
+    }
+
+
+    /**
+     * Start / stop observing along with the given owner, until it's destroyed
+     */
+    void bindTo(@NonNull LifecycleOwner owner, @NonNull Context context) {
+        mContext = context.getApplicationContext();
+        owner.getLifecycle().addObserver(this);
     }
 
 
+    @OnLifecycleEvent(Lifecycle.Event.ON_START)
+    void onOwnerStart() {
+        startObserver(mContext);
+    }
+
+
+    @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
+    void onOwnerStop() {
+        stopObserver();
+    }
+
+
+    @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+    void onOwnerDestroy(LifecycleOwner owner) {
+        owner.getLifecycle().removeObserver(this);
+    }
+
+    // endregion
+
+
+    // region ================== CHANGE OPS ==================
+    // ====== ================== ========== ==================
+
+
     @Override
     public void onChange(boolean selfChange) {
         this.onChange(selfChange, null);
@@ -72,11 +221,139 @@ public class ObserverRotationSetting extends ContentObserver {
     @Override
     public void onChange(boolean selfChange, Uri uri) {
 
-        if (mContext != null) {
-            // Send out a LocalBroadcast that the Display Rotation Setting has been updated
-            LocalBroadcastManager.getInstance(mContext).sendBroadcast(
-                    new Intent(ACTION_KEY_ROTATION_SETTING_UPDATED)
+        String settingKey = (uri != null)
+                ? uri.getLastPathSegment()
+                : null;
+
+        // Let the Actuator know its cached copy of this Setting is out of date (straight away, it
+        // might be waiting on this to confirm a transition)
+        RotationActuator.getInstance().invalidateCachedSetting(settingKey);
+
+        // Then leave the actual read until things have settled
+        if (Settings.System.ACCELEROMETER_ROTATION.equals(settingKey)) {
+            sPendingSettings |= PENDING_AUTO_ROTATE;
+
+        } else if (Settings.System.USER_ROTATION.equals(settingKey)) {
+            sPendingSettings |= PENDING_USER_ROTATION;
+
+        } else {
+            sPendingSettings |= PENDING_ALL;
+        }
+
+        sPendingBroadcast |= mBroadcastUpdates;
+
+        if (!sReadScheduled) {
+            sReadScheduled = true;
+            mHandler.postDelayed(sReadPendingSettings, COALESCE_WINDOW_MS);
+        }
+    }
+
+
+    /**
+     * Read the current values for when an observer starts up, only the listeners hear about it (and
+     * only if it's different from what they last got), it's not a change worth an event
+     */
+    private static final Runnable sPrimeSettings = new Runnable() {
+        @Override
+        public void run() {
+            Context context = sAppContext;
+
+            if (context == null) {
+                return;
+            }
+
+            long previousSettings = sLastSettings;
+
+            sLastSettings = readSettings(context.getContentResolver(), previousSettings, PENDING_ALL);
+            publishSettings(sLastSettings);
+
+            if (sLastSettings != previousSettings) {
+                notifyListeners(previousSettings, sLastSettings);
+            }
+        }
+    };
+
+
+    /**
+     * Read whatever changed during the coalescing window, then let everyone know the old and new values
+     */
+    private static final Runnable sReadPendingSettings = new Runnable() {
+        @Override
+        public void run() {
+            Context context = sAppContext;
+
+            int pendingSettings = sPendingSettings;
+            boolean pendingBroadcast = sPendingBroadcast;
+
+            sPendingSettings = 0;
+            sPendingBroadcast = false;
+            sReadScheduled = false;
+
+            if (context == null) {
+                return;
+            }
+
+            long previousSettings = sLastSettings;
+            long currentSettings = readSettings(context.getContentResolver(), previousSettings, pendingSettings);
+
+            // Changed and then changed back within the window, nothing to tell anyone
+            if (currentSettings == previousSettings) {
+                return;
+            }
+
+            sLastSettings = currentSettings;
+            publishSettings(currentSettings);
+
+            notifyListeners(previousSettings, currentSettings);
+
+            if (pendingBroadcast) {
+                // Let the subscribers know the Display Rotation Setting has been updated, along with the new state
+                MonitorEventBus.post(
+                        MonitorEventBus.EVENT_ROTATION_SETTING_UPDATED,
+                        MonitorSnapshot.getCurrent().getDeviceState()
+                );
+            }
+        }
+    };
+
+
+    /**
+     * Read the given PENDING_* Settings into the given packed Settings
+     */
+    private static long readSettings(ContentResolver contentResolver, long settings, int pendingSettings) {
+
+        if ((pendingSettings & PENDING_AUTO_ROTATE) != 0) {
+            settings = DeviceState.withAutoRotate(
+                    settings,
+                    Settings.System.getInt(contentResolver, Settings.System.ACCELEROMETER_ROTATION, PowerStateTracker.STATE_UNKNOWN)
             );
         }
+
+        if ((pendingSettings & PENDING_USER_ROTATION) != 0) {
+            settings = DeviceState.withUserRotation(
+                    settings,
+                    Settings.System.getInt(contentResolver, Settings.System.USER_ROTATION, PowerStateTracker.STATE_UNKNOWN)
+            );
+        }
+
+        return settings;
+    }
+
+
+    private static void notifyListeners(long previousSettings, long currentSettings) {
+
+        for (OnRotationSettingsChangedListener eachListener : sListeners) {
+            eachListener.onRotationSettingsChanged(previousSettings, currentSettings);
+        }
     }
+
+
+    private static void publishSettings(long settings) {
+        MonitorSnapshot.publishRotationSettings(
+                DeviceState.getAutoRotate(settings),
+                DeviceState.getUserRotation(settings)
+        );
+    }
+
+    // endregion
 }
@@ -0,0 +1,65 @@
+/*
+ * Created by Brian Lau on 2018-04-15
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-15
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+
+/**
+ * Single background thread that all the port event handling and rotation checks run on, so none of
+ * the sticky Intent reads, SharedPreferences reads, permission checks etc. land on the main thread.
+ *
+ * Being the one thread also means events are handled strictly in the order they came in, and the
+ * receiver's coalescing state only ever gets touched from here.
+ * - 2018/04/15
+ */
+class PipelineExecutor implements Executor {
+
+    private static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".PipelineExecutor";
+
+    private static PipelineExecutor sInstance;
+
+    private final Handler mHandler;
+
+
+    private PipelineExecutor() {
+        HandlerThread handlerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+
+        mHandler = new Handler(handlerThread.getLooper());
+    }
+
+
+    static synchronized PipelineExecutor getInstance() {
+
+        if (sInstance == null) {
+            sInstance = new PipelineExecutor();
+        }
+
+        return sInstance;
+    }
+
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        mHandler.post(command);
+    }
+
+
+    /**
+     * Handler on the pipeline thread, for anything that needs to be delayed / cancelled
+     */
+    Handler getHandler() {
+        return mHandler;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Created by Brian Lau on 2018-04-08
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+
+
+/**
+ * Feeds the Battery / Dock state of the device into the decision engine's PowerStateTracker, so the
+ * Power Status can be resolved without going back to the sticky broadcasts on every event.
+ *
+ * The state is fed from the Intents that are actually delivered to ReceiverPortStatus:
+ * - ACTION_DOCK_EVENT carries EXTRA_DOCK_STATE, so the dock state is known straight away
+ * - ACTION_POWER_DISCONNECTED means nothing is plugged in
+ * - ACTION_POWER_CONNECTED doesn't say *what* got plugged in, so the plug type is marked as unknown
+ *
+ * Only when a piece of state is unknown do we fall back to a single sticky read for it. Those reads
+ * are IPC, so they're made outside the lock and only applied if the state is still unknown by then
+ * (so a newer delivered event always wins over an older sticky value).
+ * - 2018/04/08
+ */
+class PowerSnapshot {
+
+    private static final PowerSnapshot INSTANCE = new PowerSnapshot();
+
+    // The engine's plug / dock state, shared with ReceiverPortStatus
+    private final PowerStateTracker mPowerState;
+
+    // Events are decoded on the pipeline thread while the UI can still feed in / reset the state, so
+    // updates (and publishing them) go through this. Only ever held for a few field writes, never
+    // across any IPC, so the main thread can't get stuck behind the pipeline.
+    private final Object mLock;
+
+
+    private PowerSnapshot() {
+        mLock = new Object();
+        mPowerState = ApplicationRotatorlator.getRotationEngine().getPowerState();
+    }
+
+
+    static PowerSnapshot getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Forget everything we know, the next call to getPowerStatus() will go back to the sticky Intents.
+     * Should be called whenever we stop receiving port events (otherwise the snapshot can go stale).
+     */
+    void invalidate() {
+
+        synchronized (mLock) {
+            mPowerState.reset();
+            publish();
+        }
+    }
+
+
+    /**
+     * Decode the extras out of a delivered port / battery Intent and update the snapshot accordingly.
+     */
+    void decodeIntent(@NonNull Intent intent) {
+
+        String intentAction = intent.getAction();
+
+        if (TextUtils.isEmpty(intentAction)) {
+            return;
+        }
+
+        synchronized (mLock) {
+            switch (intentAction) {
+                case Intent.ACTION_DOCK_EVENT:
+                    mPowerState.onDockState(intent.getIntExtra(Intent.EXTRA_DOCK_STATE, PowerStateTracker.STATE_UNKNOWN));
+                    break;
+
+                case Intent.ACTION_BATTERY_CHANGED:
+                    mPowerState.onPlugState(intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, PowerStateTracker.STATE_UNKNOWN));
+                    break;
+
+                case Intent.ACTION_POWER_DISCONNECTED:
+                    mPowerState.onPowerDisconnected();
+                    break;
+
+                case Intent.ACTION_POWER_CONNECTED:
+                    mPowerState.onPowerConnected();
+                    break;
+
+                default:
+                    break;
+            }
+
+            publish();
+        }
+    }
+
+
+    /**
+     * Return what type of Port / Power status we're currently at, only reading the sticky Intents
+     * for whichever part of the state is not already known.
+     *
+     * References:
+     * - https://developer.android.com/training/monitoring-device-state/docking-monitoring.html
+     * - https://developer.android.com/training/monitoring-device-state/battery-monitoring.html
+     */
+    @ReceiverPortStatus.PowerStatus
+    int getPowerStatus(@NonNull Context context) {
+
+        if (mPowerState.needsPlugState()) {
+            readStickyPlugState(context);
+        }
+
+        if (mPowerState.needsDockState()) {
+            readStickyDockState(context);
+        }
+
+        synchronized (mLock) {
+            return mPowerState.getPowerStatus();
+        }
+    }
+
+
+    /**
+     * Read whichever of the plug and dock states we don't know yet from the sticky Intents, even if
+     * the Power Status doesn't need it (e.g. for showing the dock state while plugged in)
+     */
+    void readUnknownState(@NonNull Context context) {
+
+        if (mPowerState.getPlugState() == PowerStateTracker.STATE_UNKNOWN) {
+            readStickyPlugState(context);
+        }
+
+        if (mPowerState.getDockState() == PowerStateTracker.STATE_UNKNOWN) {
+            readStickyDockState(context);
+        }
+    }
+
+
+    /**
+     * Read the plug state from the sticky ACTION_BATTERY_CHANGED Intent. If there isn't one, assume
+     * nothing is plugged in (so we don't keep asking).
+     */
+    void readStickyPlugState(@NonNull Context context) {
+
+        Intent batteryIntent = getStateIntent(context, Intent.ACTION_BATTERY_CHANGED);
+
+        int plugState = (batteryIntent != null)
+                ? batteryIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, PowerStateTracker.PLUGGED_NONE)
+                : PowerStateTracker.PLUGGED_NONE;
+
+        synchronized (mLock) {
+            if (mPowerState.getPlugState() == PowerStateTracker.STATE_UNKNOWN) {
+                mPowerState.onPlugState(plugState);
+                publish();
+            }
+        }
+    }
+
+
+    /**
+     * Read the dock state from the sticky ACTION_DOCK_EVENT Intent. If there isn't one, assume
+     * we're not docked.
+     */
+    void readStickyDockState(@NonNull Context context) {
+
+        Intent dockIntent = getStateIntent(context, Intent.ACTION_DOCK_EVENT);
+
+        int dockState = (dockIntent != null)
+                ? dockIntent.getIntExtra(Intent.EXTRA_DOCK_STATE, PowerStateTracker.DOCK_STATE_UNDOCKED)
+                : PowerStateTracker.DOCK_STATE_UNDOCKED;
+
+        synchronized (mLock) {
+            if (mPowerState.getDockState() == PowerStateTracker.STATE_UNKNOWN) {
+                mPowerState.onDockState(dockState);
+                publish();
+            }
+        }
+    }
+
+
+    /**
+     * Hand the current state over to the MonitorSnapshot (called with the lock held), the Power Status
+     * only counts once there's nothing left it needs looking up
+     */
+    private void publish() {
+        MonitorSnapshot.publishPowerState(
+                mPowerState.getPlugState(),
+                mPowerState.getDockState(),
+                (mPowerState.needsPlugState() || mPowerState.needsDockState())
+                        ? ReceiverPortStatus.POWER_STATUS_NONE
+                        : mPowerState.getPowerStatus()
+        );
+    }
+
+
+    /**
+     * Retrieve the "sticky" Intent of either Battery State or Dock State.
+     */
+    private Intent getStateIntent(@NonNull Context context, @NonNull String intentAction) {
+        // "Sticky" broadcast Intents can be retrieved immediately by passing a null BroadcastReceiver
+        return context.registerReceiver(null, new IntentFilter(intentAction));
+    }
+}
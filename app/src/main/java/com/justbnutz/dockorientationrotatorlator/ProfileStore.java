@@ -0,0 +1,430 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+
+/**
+ * Small fixed-layout binary store for the Rotation Profile (the monitor switch plus a Rotation Mode for
+ * each Power Status), instead of keeping it in the SharedPreferences XML.
+ *
+ * A process that's been cold-started for a port broadcast only has to map and check a few bytes
+ * before it can decide anything, rather than parse the whole preferences file. Changing a mode only
+ * rewrites those few bytes, to a temp file that then gets renamed over the old one (so a crash
+ * mid-write leaves the previous profile intact), with the last good copy kept aside as a backup in
+ * case the store itself ever stops checking out. The layout is:
+ *
+ *   [magic int] [version byte] [flags byte] [Rotation Mode byte per Power Status] [CRC32 int]
+ *
+ * The very first time (no store file of any kind yet), whatever was in SharedPreferences gets
+ * migrated across and those preferences removed. After that a bad store is recovered from the temp
+ * file or the backup, and only if none of them check out does it go back to the defaults (logged,
+ * and leaving the bad file where it is until the profile is next changed).
+ *
+ * Changes are applied to memory (and the compiled RotationProfileTable) straight away, the disk
+ * write happens on the pipeline thread, and listeners are told about it on the main thread.
+ * - 2018/04/16
+ */
+class ProfileStore {
+
+    private static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".ProfileStore";
+
+    private static final String FILE_NAME = "rotation_profile.bin";
+    private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+    private static final String BACKUP_FILE_NAME = FILE_NAME + ".bak";
+
+    private static final int MAGIC = 0x444f5250;
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int FLAG_MONITOR_ENABLED = 1;
+
+    // Everything up to the checksum, then the checksum
+    private static final int PAYLOAD_SIZE = 4 + 1 + 1 + PowerStateTracker.POWER_STATUS_COUNT;
+    private static final int FILE_SIZE = PAYLOAD_SIZE + 4;
+
+    // Passed to the listeners when it was the monitor switch that changed, rather than a Rotation Mode
+    static final int CHANGED_MONITOR_ENABLED = -1;
+
+    /**
+     * Listener for profile changes, always called on the main thread
+     */
+    interface OnProfileChangedListener {
+
+        /**
+         * The Rotation Mode for the given Power Status (ordinal) changed, or CHANGED_MONITOR_ENABLED
+         */
+        void onProfileChanged(int changedPowerStatus);
+    }
+
+    private static ProfileStore sInstance;
+
+    private final File mFile;
+    private final File mTempFile;
+    private final File mBackupFile;
+
+    // Whether the store file is known to check out, only then does it get kept as the backup on the
+    // next write (only touched in the constructor and on the pipeline thread)
+    private boolean mFileValid;
+
+    // Current values, guarded by this
+    private boolean mMonitorEnabled;
+    private final int[] mRotationModes;
+
+    private final CopyOnWriteArrayList<OnProfileChangedListener> mListeners;
+    private final Handler mMainHandler;
+
+    // Whether a write is already queued up on the pipeline thread (it'll pick up the latest values)
+    private boolean mWritePending;
+
+
+    private ProfileStore(@NonNull Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+        mTempFile = new File(context.getFilesDir(), TEMP_FILE_NAME);
+        mBackupFile = new File(context.getFilesDir(), BACKUP_FILE_NAME);
+
+        mRotationModes = new int[PowerStateTracker.POWER_STATUS_COUNT];
+        mListeners = new CopyOnWriteArrayList<>();
+        mMainHandler = new Handler(Looper.getMainLooper());
+
+        load(context);
+    }
+
+
+    static synchronized ProfileStore getInstance(@NonNull Context context) {
+
+        if (sInstance == null) {
+            sInstance = new ProfileStore(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+
+    // region ================== PROFILE OPS ==================
+    // ====== ================== =========== ==================
+
+
+    synchronized boolean isMonitorEnabled() {
+        return mMonitorEnabled;
+    }
+
+
+    synchronized int getRotationMode(int powerStatus) {
+        return mRotationModes[powerStatus];
+    }
+
+
+    /**
+     * Return a compiled copy of the current values
+     */
+    synchronized RotationProfile buildProfile() {
+        return new RotationProfile(mRotationModes, mMonitorEnabled);
+    }
+
+
+    void setMonitorEnabled(boolean monitorEnabled) {
+
+        synchronized (this) {
+            if (mMonitorEnabled == monitorEnabled) {
+                return;
+            }
+
+            mMonitorEnabled = monitorEnabled;
+        }
+
+        onChanged(CHANGED_MONITOR_ENABLED);
+    }
+
+
+    void setRotationMode(int powerStatus, int rotationMode) {
+
+        rotationMode = RotationProfile.sanitiseMode(rotationMode);
+
+        synchronized (this) {
+            if (mRotationModes[powerStatus] == rotationMode) {
+                return;
+            }
+
+            mRotationModes[powerStatus] = rotationMode;
+        }
+
+        onChanged(powerStatus);
+    }
+
+
+    void registerListener(@NonNull OnProfileChangedListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+
+    void unregisterListener(@NonNull OnProfileChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+
+    private void onChanged(final int changedPowerStatus) {
+
+        // The compiled table always goes first, so the listeners read the new values from it
+        RotationProfileTable.compile(this);
+
+        scheduleWrite();
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notifyListeners(changedPowerStatus);
+
+        } else {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    notifyListeners(changedPowerStatus);
+                }
+            });
+        }
+    }
+
+
+    private void notifyListeners(int changedPowerStatus) {
+
+        for (OnProfileChangedListener eachListener : mListeners) {
+            eachListener.onProfileChanged(changedPowerStatus);
+        }
+    }
+
+    // endregion
+
+
+    // region ================== FILE OPS ==================
+    // ====== ================== ======== ==================
+
+
+    /**
+     * Load the profile from the store file, or the newest copy that still checks out if it doesn't.
+     * Only migrates from SharedPreferences if there's never been a store file at all.
+     */
+    private void load(@NonNull Context context) {
+
+        if (read(mFile)) {
+            mFileValid = true;
+            return;
+        }
+
+        if (!mFile.exists() && !mTempFile.exists() && !mBackupFile.exists()) {
+            migrateFromSharedPrefs(context);
+            return;
+        }
+
+        // A temp file that checks out was fully written, it just never got swapped in
+        if (read(mTempFile) || read(mBackupFile)) {
+            Log.w(TAG, "Profile store unreadable, restored the last good copy");
+
+            // Put it back as the store file (leaving the backup alone, the bad file isn't worth keeping)
+            write();
+            return;
+        }
+
+        Log.e(TAG, "Profile store and its backups are all unreadable, resetting the profile to the defaults");
+    }
+
+
+    /**
+     * Load the values from the given store file, returning false if it's missing or doesn't check out
+     */
+    private boolean read(@NonNull File file) {
+
+        if (!file.isFile() || file.length() != FILE_SIZE) {
+            return false;
+        }
+
+        try {
+            MappedByteBuffer mappedFile;
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+            try {
+                mappedFile = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, FILE_SIZE);
+
+            } finally {
+                randomAccessFile.close();
+            }
+
+            byte[] payload = new byte[PAYLOAD_SIZE];
+            mappedFile.get(payload);
+
+            if (mappedFile.getInt() != getChecksum(payload)) {
+                Log.w(TAG, "Profile store checksum mismatch in " + file.getName() + ", ignoring it");
+                return false;
+            }
+
+            ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+
+            if (payloadBuffer.getInt() != MAGIC || payloadBuffer.get() != FORMAT_VERSION) {
+                return false;
+            }
+
+            int flags = payloadBuffer.get();
+
+            synchronized (this) {
+                mMonitorEnabled = (flags & FLAG_MONITOR_ENABLED) != 0;
+
+                for (int i = 0; i < mRotationModes.length; i++) {
+                    mRotationModes[i] = RotationProfile.sanitiseMode(payloadBuffer.get());
+                }
+            }
+
+            return true;
+
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read profile store " + file.getName(), e);
+            return false;
+        }
+    }
+
+
+    /**
+     * One-off copy of the profile out of SharedPreferences (or the defaults if it was never set),
+     * used when there's never been a store file
+     */
+    private void migrateFromSharedPrefs(@NonNull Context context) {
+
+        SharedPreferences sharedPrefs = ApplicationRotatorlator.getSharedPrefs(context);
+        String[] prefKeyRotationModes = RotationProfileTable.getRotationModePrefKeys(context);
+        String prefKeyMonitorEnabled = context.getString(R.string.prefkey_enable_dock_monitor);
+
+        synchronized (this) {
+            mMonitorEnabled = sharedPrefs.getBoolean(prefKeyMonitorEnabled, false);
+
+            for (int i = 0; i < mRotationModes.length; i++) {
+                mRotationModes[i] = RotationProfile.sanitiseMode(sharedPrefs.getInt(prefKeyRotationModes[i], 0));
+            }
+        }
+
+        // Has to be on disk before the preferences can go
+        if (write()) {
+            SharedPreferences.Editor prefsEditor = sharedPrefs.edit().remove(prefKeyMonitorEnabled);
+
+            for (String eachKey : prefKeyRotationModes) {
+                prefsEditor.remove(eachKey);
+            }
+
+            prefsEditor.apply();
+        }
+    }
+
+
+    private void scheduleWrite() {
+
+        synchronized (this) {
+            if (mWritePending) {
+                return;
+            }
+
+            mWritePending = true;
+        }
+
+        PipelineExecutor.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ProfileStore.this) {
+                    mWritePending = false;
+                }
+
+                write();
+            }
+        });
+    }
+
+
+    /**
+     * Write the current values out to the temp file, then swap it in place of the store file (which
+     * becomes the backup, as long as it was a good one)
+     */
+    private boolean write() {
+
+        byte[] fileBytes = encode();
+
+        try {
+            FileOutputStream outputStream = new FileOutputStream(mTempFile);
+
+            try {
+                outputStream.write(fileBytes);
+
+                // Make sure it's actually on the flash before it replaces the old one
+                outputStream.getFD().sync();
+
+            } finally {
+                outputStream.close();
+            }
+
+            if (mFileValid && !mFile.renameTo(mBackupFile)) {
+                Log.w(TAG, "Unable to keep " + mFile + " as the backup");
+            }
+
+            if (!mTempFile.renameTo(mFile)) {
+                throw new IOException("Unable to rename " + mTempFile + " to " + mFile);
+            }
+
+            mFileValid = true;
+            return true;
+
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write profile store", e);
+            return false;
+        }
+    }
+
+
+    private synchronized byte[] encode() {
+
+        ByteBuffer fileBuffer = ByteBuffer.allocate(FILE_SIZE);
+
+        fileBuffer.putInt(MAGIC);
+        fileBuffer.put(FORMAT_VERSION);
+        fileBuffer.put((byte) (mMonitorEnabled ? FLAG_MONITOR_ENABLED : 0));
+
+        for (int eachMode : mRotationModes) {
+            fileBuffer.put((byte) eachMode);
+        }
+
+        byte[] fileBytes = fileBuffer.array();
+        fileBuffer.putInt(getChecksum(fileBytes));
+
+        return fileBytes;
+    }
+
+
+    /**
+     * CRC32 of the first PAYLOAD_SIZE bytes of the given array
+     */
+    private static int getChecksum(byte[] bytes) {
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, PAYLOAD_SIZE);
+
+        return (int) crc32.getValue();
+    }
+
+    // endregion
+}
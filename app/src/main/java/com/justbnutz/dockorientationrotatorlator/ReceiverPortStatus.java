@@ -2,33 +2,31 @@
  * Created by Brian Lau on 2018-03-20
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-03-28
+ * Last modified: 2018-04-16
  */
 
 package com.justbnutz.dockorientationrotatorlator;
 
 import android.Manifest;
-import android.annotation.SuppressLint;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.content.res.Configuration;
-import android.os.BatteryManager;
 import android.os.Build;
-import android.preference.PreferenceManager;
+import android.os.Handler;
 import android.provider.Settings;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.TextUtils;
-import android.view.Surface;
-import android.view.WindowManager;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import com.justbnutz.dockorientationrotatorlator.core.DeviceState;
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+import com.justbnutz.dockorientationrotatorlator.core.RotationEngine;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 
 
 /**
@@ -47,400 +45,386 @@ public class ReceiverPortStatus extends BroadcastReceiver {
 
     private static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".ReceiverPortStatus";
 
-    static final String ACTION_KEY_POWER_STATUS_UPDATED = TAG + ".ACTION_KEY_POWER_STATUS_UPDATED";
-    static final String INTENT_EXTRA_POWER_STATUS = TAG + ".INTENT_EXTRA_POWER_STATUS";
-
-    // Consider changing these to @IntDef in future: https://android.jlelse.eu/android-performance-avoid-using-enum-on-android-326be0794dc3
-    enum RotationMode {
-        NO_CHANGE,
-        PORTRAIT,
-        PORTRAIT_INVERTED,
-        LANDSCAPE,
-        LANDSCAPE_INVERTED,
-        AUTO_ROTATE
-    }
-
-    enum PowerStatus {
-        DISCONNECTED,
-        PLUGGED_IN,
-        WIRELESSLY_CHARGING
+    // Rotation Modes and Power Statuses are plain ints (the same values the core engine uses), rather
+    // than enums: https://android.jlelse.eu/android-performance-avoid-using-enum-on-android-326be0794dc3
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({
+            ROTATION_MODE_NO_CHANGE,
+            ROTATION_MODE_PORTRAIT,
+            ROTATION_MODE_PORTRAIT_INVERTED,
+            ROTATION_MODE_LANDSCAPE,
+            ROTATION_MODE_LANDSCAPE_INVERTED,
+            ROTATION_MODE_AUTO_ROTATE
+    })
+    @interface RotationMode {}
+
+    static final int ROTATION_MODE_NO_CHANGE = RotationProfile.MODE_NO_CHANGE;
+    static final int ROTATION_MODE_PORTRAIT = RotationProfile.MODE_PORTRAIT;
+    static final int ROTATION_MODE_PORTRAIT_INVERTED = RotationProfile.MODE_PORTRAIT_INVERTED;
+    static final int ROTATION_MODE_LANDSCAPE = RotationProfile.MODE_LANDSCAPE;
+    static final int ROTATION_MODE_LANDSCAPE_INVERTED = RotationProfile.MODE_LANDSCAPE_INVERTED;
+    static final int ROTATION_MODE_AUTO_ROTATE = RotationProfile.MODE_AUTO_ROTATE;
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({
+            POWER_STATUS_DISCONNECTED,
+            POWER_STATUS_PLUGGED_IN,
+            POWER_STATUS_WIRELESSLY_CHARGING
+    })
+    @interface PowerStatus {}
+
+    static final int POWER_STATUS_DISCONNECTED = PowerStateTracker.POWER_STATUS_DISCONNECTED;
+    static final int POWER_STATUS_PLUGGED_IN = PowerStateTracker.POWER_STATUS_PLUGGED_IN;
+    static final int POWER_STATUS_WIRELESSLY_CHARGING = PowerStateTracker.POWER_STATUS_WIRELESSLY_CHARGING;
+
+    // Marker for "not one of the Power Statuses"
+    static final int POWER_STATUS_NONE = PowerStateTracker.POWER_STATUS_UNKNOWN;
+
+    // The last Device State that went out in EVENT_POWER_STATUS_UPDATED (only touched on the pipeline thread)
+    private static long sLastBroadcastState = DeviceState.NONE;
+
+    // The process-wide decision engine (held by ApplicationRotatorlator)
+    private static final RotationEngine sRotationEngine = ApplicationRotatorlator.getRotationEngine();
+
+
+    // How long to hold off acting on an event in case more arrive right behind it (0 = act straight away)
+    private final long mCoalesceWindowMs;
+
+    private Context mCoalesceContext;
+    private boolean mCoalescePending;
+
+    // When the first event of the pending coalesced check arrived (LatencyTracker timestamp)
+    private long mCoalesceReceivedAt;
+
+    // Event counters, for seeing how much work the coalescing window is saving
+    private volatile int mEventsReceived;
+    private volatile int mEventsAbsorbed;
+
+
+    // Empty constructor for the manifest-declared receiver, where each event is handled straight away
+    public ReceiverPortStatus() {
+        this(0);
     }
 
 
-    @Override
-    public void onReceive(Context context, Intent intent) {
-
-        if (context != null && !TextUtils.isEmpty(intent.getAction())) {
-            checkSetDeviceRotation(context);
-        }
+    /**
+     * Set up a receiver that collapses bursts of port events arriving within the given window into a
+     * single decision. (E.g. ACTION_POWER_CONNECTED and ACTION_DOCK_EVENT when seating the device in a dock)
+     */
+    ReceiverPortStatus(long coalesceWindowMs) {
+        mCoalesceWindowMs = coalesceWindowMs;
     }
 
 
     /**
-     * Run the sequence of checking the current power status and setting the device rotation setting
-     * accordingly.
+     * Nothing in here runs on the main thread, the event gets handed straight over to the pipeline
+     * thread. goAsync() keeps the broadcast (and so the process) alive until it's been dealt with.
      */
-    void checkSetDeviceRotation(@NonNull Context context) {
-
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+    @Override
+    public void onReceive(Context context, final Intent intent) {
 
-        // Only do actions if the monitor is enabled and we have an Intent Action to work with
-        if (sharedPrefs.getBoolean(context.getString(R.string.prefkey_enable_dock_monitor), false)) {
+        if (context != null && !TextUtils.isEmpty(intent.getAction())) {
 
-            // Fetch the new Power Status
-            PowerStatus currentPowerStatus = getCurrentPowerStatus(context);
+            final long receivedAt = LatencyTracker.now();
+            final Context appContext = context.getApplicationContext();
 
-            // Get the Rotation Mode for this Power State
-            RotationMode rotationMode = getRotationMode(context, currentPowerStatus);
+            // Will be null if onReceive() wasn't called by the system as part of a broadcast
+            final PendingResult pendingResult = goAsync();
 
-            // Only need to take action if we have a valid Rotation to set
-            if (rotationMode != RotationMode.NO_CHANGE) {
+            PipelineExecutor.getInstance().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handlePortEvent(appContext, intent, receivedAt);
 
-                // Set the derived Rotation Mode
-                setDisplayRotationMode(
-                        context,
-                        rotationMode
-                );
-            }
-
-            // Send the new Power Status out via LocalBroadcast as well
-            Intent intentPortStatusUpdated = new Intent(ACTION_KEY_POWER_STATUS_UPDATED);
-            intentPortStatusUpdated.putExtra(
-                    INTENT_EXTRA_POWER_STATUS,
-                    currentPowerStatus
-            );
-
-            LocalBroadcastManager.getInstance(context).sendBroadcast(
-                    intentPortStatusUpdated
-            );
+                    } finally {
+                        if (pendingResult != null) {
+                            pendingResult.finish();
+                        }
+                    }
+                }
+            });
         }
     }
 
 
-    // region ================== ROTATION MODE OPS ==================
-    // ====== ================== ================= ==================
-
-
     /**
-     * Take a given PowerStatus and return what type of RotationMode has been set for that state
+     * Handle a delivered port event, on the pipeline thread
      */
-    RotationMode getRotationMode(@NonNull Context context, PowerStatus powerStatus) {
+    private void handlePortEvent(@NonNull Context context, @NonNull Intent intent, long receivedAt) {
 
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
-        int indexRotationMode = 0;
+        mEventsReceived++;
 
-        switch (powerStatus) {
-            case DISCONNECTED:
-                indexRotationMode = sharedPrefs.getInt(context.getString(R.string.prefkey_set_autorotate_unplugged), 0);
-                break;
-
-            case PLUGGED_IN:
-                indexRotationMode = sharedPrefs.getInt(context.getString(R.string.prefkey_set_autorotate_plugged), 0);
-                break;
-
-            case WIRELESSLY_CHARGING:
-                indexRotationMode = sharedPrefs.getInt(context.getString(R.string.prefkey_set_autorotate_wireless), 0);
-                break;
-
-            default:
-                break;
-        }
+        // Update the Power Snapshot with whatever the delivered Intent is carrying, even if the
+        // decision gets held back the snapshot still needs to see every event
+        PowerSnapshot.getInstance().decodeIntent(intent);
+        EventJournal.getInstance(context).recordBroadcast(intent);
 
-        // Make sure the index is valid
-        if (indexRotationMode >= 0 && indexRotationMode < RotationMode.values().length) {
-            return RotationMode.values()[indexRotationMode];
+        if (mCoalesceWindowMs > 0) {
+            coalesceDeviceRotationCheck(context, receivedAt);
 
         } else {
-            return RotationMode.NO_CHANGE;
-
+            checkSetDeviceRotation(context, receivedAt);
         }
     }
 
 
     /**
-     * Verifies we have permission to alter the system settings and if so, set the device rotation
-     * setting accordingly.
+     * Hold off on the rotation check until the coalescing window has passed, any other events that
+     * arrive in the meantime get absorbed into the same check. (Only called on the pipeline thread)
      */
-    private void setDisplayRotationMode(@NonNull final Context context, final RotationMode rotationMode) {
+    private void coalesceDeviceRotationCheck(@NonNull Context context, long receivedAt) {
 
-        boolean rotatorlatorIsGo;
+        mCoalesceContext = context;
 
-        // Double-check permissions
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            rotatorlatorIsGo = Settings.System.canWrite(context);
-
-        } else {
-            rotatorlatorIsGo = (ContextCompat.checkSelfPermission(context, Manifest.permission.WRITE_SETTINGS) == PackageManager.PERMISSION_GRANTED);
+        if (mCoalescePending) {
+            // Already have a check lined up, this event will be covered by it
+            mEventsAbsorbed++;
+            return;
         }
 
-        if (rotatorlatorIsGo) {
-
-            boolean isAutoRotate;
+        mCoalescePending = true;
+        mCoalesceReceivedAt = receivedAt;
+        PipelineExecutor.getInstance().getHandler().postDelayed(mCoalescedCheck, mCoalesceWindowMs);
+    }
 
-            // Permissions confirmed, set the device rotation accordingly
-            switch (rotationMode) {
 
-                case PORTRAIT:
-                case PORTRAIT_INVERTED:
-                case LANDSCAPE:
-                case LANDSCAPE_INVERTED:
-                    // Fixed Rotation set - so disable Auto-Rotate
-                    isAutoRotate = false;
-                    break;
+    private final Runnable mCoalescedCheck = new Runnable() {
+        @Override
+        public void run() {
+            mCoalescePending = false;
 
-                case AUTO_ROTATE:
-                default:
-                    // Only need to enable Auto-Rotate; User Rotation not needed
-                    isAutoRotate = true;
-                break;
+            if (mCoalesceContext != null) {
+                // Measure from the first event, the window is part of how long the device takes to turn
+                checkSetDeviceRotation(mCoalesceContext, mCoalesceReceivedAt);
             }
+        }
+    };
 
-            // Apply the Auto-Rotate setting
-            Settings.System.putInt(
-                    context.getContentResolver(),
-                    Settings.System.ACCELEROMETER_ROTATION,
-                    isAutoRotate
-                            ? 1
-                            : 0
-            );
 
-            // If we're disabling Auto-Rotate, then also need to set the User Rotation value
-            if (!isAutoRotate) {
+    /**
+     * Drop any rotation check that is still waiting on the coalescing window (e.g. when unregistering)
+     */
+    void cancelPendingEvents() {
 
-                // Wait a little bit as it looks like some systems don't handle successive multiple changes in rotation too well
-                Timer quickTimer = new Timer();
-                TimerTask timerTask = new TimerTask() {
+        final Handler pipelineHandler = PipelineExecutor.getInstance().getHandler();
 
-                    @Override
-                    public void run() {
-                        setUserRotatation(context, rotationMode);
-                    }
-                };
+        pipelineHandler.removeCallbacks(mCoalescedCheck);
 
-                // Reference: https://www.codementor.io/tips/0743378261/non-freezing-sleep-in-android-app
-                quickTimer.schedule(timerTask, 150);
+        // The coalescing state belongs to the pipeline thread, so reset it over there (after
+        // anything that's already been handed over, which could line up another check)
+        pipelineHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                pipelineHandler.removeCallbacks(mCoalescedCheck);
+                mCoalescePending = false;
+                mCoalesceContext = null;
             }
-        }
+        });
+    }
+
+
+    int getEventsReceived() {
+        return mEventsReceived;
+    }
+
+
+    int getEventsAbsorbed() {
+        return mEventsAbsorbed;
     }
 
 
     /**
-     * If a fixed-orientation is chosen, then need to disable Auto-Rotate and then set the User Rotation
-     * value accordingly - this will be relative to the "natural orientation" of the device, which needs
-     * to be figured out separately.
-     *
-     * Reference: https://stackoverflow.com/a/9888357
+     * Queue up a rotation check on the pipeline thread, for when it's not coming from a port event
+     * (e.g. the monitor being switched on, or the Rotation Modes being changed)
      */
-    private void setUserRotatation(@NonNull Context context, RotationMode userRotationMode) {
-
-        // Fetch the "natural orientation" of the device (portrait vs landscape)
-        int naturalOrientation = getNaturalOrientation(context);
-
-        // Make sure we have an baseline orientation to reference against
-        if (naturalOrientation != Configuration.ORIENTATION_UNDEFINED) {
-
-            // Init the value that will be inserted
-            int userRotation = -1;
-
-            // Set the User Rotation value relative to the natural orientation of the device
-            switch (userRotationMode) {
-                case PORTRAIT:
-                    userRotation = (naturalOrientation == Configuration.ORIENTATION_PORTRAIT)
-                            ? Surface.ROTATION_0
-                            : Surface.ROTATION_90;
-                    break;
-
-                case PORTRAIT_INVERTED:
-                    userRotation = (naturalOrientation == Configuration.ORIENTATION_PORTRAIT)
-                            ? Surface.ROTATION_180
-                            : Surface.ROTATION_270;
-                    break;
-
-                case LANDSCAPE:
-                    userRotation = (naturalOrientation == Configuration.ORIENTATION_LANDSCAPE)
-                            ? Surface.ROTATION_0
-                            : Surface.ROTATION_90;
-                    break;
-
-                case LANDSCAPE_INVERTED:
-                    userRotation = (naturalOrientation == Configuration.ORIENTATION_LANDSCAPE)
-                            ? Surface.ROTATION_180
-                            : Surface.ROTATION_270;
-                    break;
-
-                default:
-                    break;
-            }
+    void requestDeviceRotationCheck(@NonNull Context context) {
 
-            // Make sure we have a proper value to set and apply it
-            if (userRotation >= 0) {
-                Settings.System.putInt(
-                        context.getContentResolver(),
-                        Settings.System.USER_ROTATION,
-                        userRotation
-                );
+        final Context appContext = context.getApplicationContext();
+
+        PipelineExecutor.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                checkSetDeviceRotation(appContext, LatencyTracker.TIME_NONE);
             }
-        }
+        });
     }
 
 
     /**
-     * The User Rotation value is relative to the "natural orientation" of the device. So "Surface.ROTATION_90"
-     * will be different to a tablet that is naturally landscape vs a phone that is naturally portrait.
-     *
-     * Because of this, we need to determine the natural orientation of the current device to properly label
-     * our settings.
+     * Run the sequence of checking the current power status and setting the device rotation setting
+     * accordingly, on the pipeline thread. The received time (LatencyTracker.now()) is that of the
+     * broadcast behind this check, so the latency of each stage can be tracked.
      *
-     * Reference: https://stackoverflow.com/a/9888357
+     * The decision itself is made by the RotationEngine, we just keep stepping it and filling in
+     * whatever state it asks for until it comes back with something to act on.
      */
-    int getNaturalOrientation(@NonNull Context context) {
+    private void checkSetDeviceRotation(@NonNull Context context, long receivedAt) {
 
-        // Retrieve the system objects for determining device layout measurements
-        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
-        Configuration configuration = context.getResources().getConfiguration();
+        boolean traced = TraceSections.begin(TraceSections.SECTION_CHECK_SET_DEVICE_ROTATION);
 
-        if (windowManager != null && configuration != null) {
+        try {
+            runDeviceRotationCheck(context, receivedAt);
 
-            // Get the current rotation and orientation values
-            int currentRotation = windowManager.getDefaultDisplay().getRotation();
-            int currentOrientation = configuration.orientation;
+        } finally {
+            TraceSections.end(traced);
+        }
+    }
 
-            // Natural orientation can be determined by comparing the two values against each other
-            if (
-                    (((currentRotation == Surface.ROTATION_0) || (currentRotation == Surface.ROTATION_180))
-                    && currentOrientation == Configuration.ORIENTATION_PORTRAIT)
-                    ||
-                    (((currentRotation == Surface.ROTATION_90) || (currentRotation == Surface.ROTATION_270))
-                    && currentOrientation == Configuration.ORIENTATION_LANDSCAPE)
-                    ) {
 
-                return Configuration.ORIENTATION_PORTRAIT;
+    private void runDeviceRotationCheck(@NonNull Context context, long receivedAt) {
 
-            } else {
-                return Configuration.ORIENTATION_LANDSCAPE;
+        // Make sure the engine has the current profile
+        RotationProfileTable.getInstance(context);
 
-            }
+        PowerSnapshot powerSnapshot = PowerSnapshot.getInstance();
 
-        } else {
-            // If the reference objects could not be retrieved, return an undefined result
-            return Configuration.ORIENTATION_UNDEFINED;
-        }
-    }
+        int decision;
+        int rotationMode;
+        int targetAutoRotate;
+        int targetUserRotation;
+        int currentPowerStatus;
+        long deviceState;
 
-    // endregion
+        while (true) {
 
+            // Only hold the engine while it's actually deciding, any lookups it needs happen outside it
+            synchronized (sRotationEngine) {
 
-    // region ================== PORT STATUS OPS ==================
-    // ====== ================== =============== ==================
+                decision = sRotationEngine.decide();
 
+                rotationMode = sRotationEngine.getRotationMode();
+                targetAutoRotate = sRotationEngine.getTargetAutoRotate();
+                targetUserRotation = sRotationEngine.getTargetUserRotation();
+                currentPowerStatus = sRotationEngine.getPowerStatus();
+                deviceState = sRotationEngine.getDeviceState();
+            }
 
-    /**
-     * Check the current _DOCK / _BATTERY state Intents and return what type of Port / Power status
-     * we're currently at.
-     *
-     * References:
-     * - https://developer.android.com/training/monitoring-device-state/docking-monitoring.html
-     * - https://developer.android.com/training/monitoring-device-state/battery-monitoring.html
-     */
-    PowerStatus getCurrentPowerStatus(@NonNull Context context) {
+            if (decision == RotationEngine.DECISION_NEEDS_PLUG_STATE) {
+                powerSnapshot.readStickyPlugState(context);
 
-        if (isWirelesslyCharging(context)) {
-            return PowerStatus.WIRELESSLY_CHARGING;
+            } else if (decision == RotationEngine.DECISION_NEEDS_DOCK_STATE) {
+                powerSnapshot.readStickyDockState(context);
 
-        } else if (isPluggedIn(context) || isDocked(context)) {
-            return PowerStatus.PLUGGED_IN;
+            } else if (decision == RotationEngine.DECISION_NEEDS_ORIENTATION) {
+                // Only asked for until the cache has been loaded, after that it keeps the engine up to date
+                sRotationEngine.setNaturalOrientation(getNaturalOrientation(context));
 
-        } else {
-            return PowerStatus.DISCONNECTED;
+            } else {
+                break;
+            }
         }
 
-    }
+        long decidedAt = LatencyTracker.now();
+        LatencyTracker.getInstance().recordSince(LatencyTracker.STAGE_RECEIVE_TO_DECISION, receivedAt);
 
+        EventJournal.getInstance(context).recordDecision(
+                decision,
+                currentPowerStatus,
+                rotationMode,
+                targetAutoRotate,
+                targetUserRotation
+        );
 
-    /**
-     * Retrieve the current Dock state via sticky broadcasts and return whether we are currently docked
-     * or not.
-     */
-    private boolean isDocked(@NonNull Context context) {
+        // Only do actions if the monitor is enabled
+        if (decision != RotationEngine.DECISION_MONITOR_DISABLED) {
 
-        Intent dockIntent = getStateIntent(context, false);
+            // Only need to take action if we have a valid Rotation to set
+            if (decision == RotationEngine.DECISION_ROTATE) {
 
-        if (dockIntent != null) {
-            // Read the EXTRA_DOCK_STATE value out of the dock status
-            int dockState = dockIntent.getIntExtra(Intent.EXTRA_DOCK_STATE, -1);
+                // Set the derived Rotation targets
+                setDisplayRotationMode(
+                        context,
+                        targetAutoRotate,
+                        targetUserRotation,
+                        receivedAt,
+                        decidedAt
+                );
+            }
 
-            return (dockState != Intent.EXTRA_DOCK_STATE_UNDOCKED);
-        }
+            // Post the new Device State to the event bus as well, unless it's exactly what went out last time
+            if (deviceState != sLastBroadcastState) {
 
-        return false;
+                sLastBroadcastState = deviceState;
+
+                MonitorEventBus.post(
+                        MonitorEventBus.EVENT_POWER_STATUS_UPDATED,
+                        deviceState
+                );
+            }
+        }
     }
 
 
+    // region ================== ROTATION MODE OPS ==================
+    // ====== ================== ================= ==================
+
+
     /**
-     * Retrieve the current state of the USB port via sticky broadcasts and return whether we are actually
-     * plugged in or not.
+     * Verifies we have permission to alter the system settings and if so, set the device rotation
+     * setting accordingly.
      */
-    private boolean isPluggedIn(@NonNull Context context) {
+    private void setDisplayRotationMode(@NonNull Context context, int targetAutoRotate, int targetUserRotation,
+                                        long receivedAt, long decidedAt) {
 
-        Intent batteryIntent = getStateIntent(context, true);
+        boolean rotatorlatorIsGo;
 
-        if (batteryIntent != null) {
-            // Read the EXTRA_PLUGGED value out of the battery status and return the overall plugged-in status
-            int chargePlugState = batteryIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
+        // Double-check permissions
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            rotatorlatorIsGo = Settings.System.canWrite(context);
 
-            return (chargePlugState == BatteryManager.BATTERY_PLUGGED_AC)
-                    || (chargePlugState == BatteryManager.BATTERY_PLUGGED_USB);
+        } else {
+            rotatorlatorIsGo = (ContextCompat.checkSelfPermission(context, Manifest.permission.WRITE_SETTINGS) == PackageManager.PERMISSION_GRANTED);
         }
 
-        return false;
+        if (rotatorlatorIsGo) {
+            // Permissions confirmed, hand the writes over to the Actuator
+            RotationActuator.getInstance().requestRotation(
+                    context,
+                    targetAutoRotate,
+                    targetUserRotation,
+                    receivedAt,
+                    decidedAt
+            );
+        }
     }
 
 
     /**
-     * Check if the device is currently wirelessly charging. Same logic as isCurrentlyPluggedIn()
-     * Only applicable for Jelly Bean and above API 17
+     * The User Rotation value is relative to the "natural orientation" of the device. So "Surface.ROTATION_90"
+     * will be different to a tablet that is naturally landscape vs a phone that is naturally portrait.
+     *
+     * Because of this, we need to determine the natural orientation of the current device to properly label
+     * our settings. It only changes along with the display, so it's worked out once and cached.
+     *
+     * Reference: https://stackoverflow.com/a/9888357
      */
-    @SuppressLint("InlinedApi")
-    private boolean isWirelesslyCharging(@NonNull Context context) {
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+    int getNaturalOrientation(@NonNull Context context) {
+        return NaturalOrientationCache.getInstance().getNaturalOrientation(context);
+    }
 
-            Intent batteryIntent = getStateIntent(context, true);
+    // endregion
 
-            if (batteryIntent != null) {
-                // Read the EXTRA_PLUGGED value out of the battery status and return the overall plugged-in status
-                int chargePlugState = batteryIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
 
-                return (chargePlugState == BatteryManager.BATTERY_PLUGGED_WIRELESS);
-            }
-        }
-
-        return false;
-    }
+    // region ================== PORT STATUS OPS ==================
+    // ====== ================== =============== ==================
 
 
     /**
-     * Retrieve the "sticky" Intent of either Battery State or Dock State, used for checking current
-     * power status of the device.
-     *
-     * References:
-     * - https://developer.android.com/training/monitoring-device-state/docking-monitoring.html
-     * - https://developer.android.com/training/monitoring-device-state/battery-monitoring.html
+     * Return what type of Port / Power status we're currently at. The state is tracked in PowerSnapshot
+     * from the delivered Intents, so this will only touch the sticky Intents if the state is unknown.
      */
-    private Intent getStateIntent(@NonNull Context context, boolean checkingBatteryState) {
+    @PowerStatus
+    int getCurrentPowerStatus(@NonNull Context context) {
 
-        IntentFilter intentFilter = new IntentFilter();
+        boolean traced = TraceSections.begin(TraceSections.SECTION_GET_CURRENT_POWER_STATUS);
 
-        // Set the filter according to which state we're checking
-        if (checkingBatteryState) {
-            intentFilter.addAction(Intent.ACTION_BATTERY_CHANGED);
+        try {
+            return PowerSnapshot.getInstance().getPowerStatus(context);
 
-        } else {
-            intentFilter.addAction(Intent.ACTION_DOCK_EVENT);
+        } finally {
+            TraceSections.end(traced);
         }
-
-        // "Sticky" broadcast Intents can be retrieved immediately by passing a null BroadcastReceiver
-        return context.registerReceiver(null, intentFilter);
     }
 
     // endregion
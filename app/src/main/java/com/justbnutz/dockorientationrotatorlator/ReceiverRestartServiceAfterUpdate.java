@@ -2,7 +2,7 @@
  * Created by Brian Lau on 2018-04-02
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-04-02
+ * Last modified: 2018-04-16
  */
 
 package com.justbnutz.dockorientationrotatorlator;
@@ -11,9 +11,7 @@ package com.justbnutz.dockorientationrotatorlator;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
-import android.preference.PreferenceManager;
 import android.text.TextUtils;
 
 
@@ -29,12 +27,10 @@ public class ReceiverRestartServiceAfterUpdate extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
 
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
-
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
                 && !TextUtils.isEmpty(intent.getAction())
                 && intent.getAction().equals(Intent.ACTION_MY_PACKAGE_REPLACED)
-                && sharedPrefs.getBoolean(context.getString(R.string.prefkey_enable_dock_monitor), false)) {
+                && ProfileStore.getInstance(context).isMonitorEnabled()) {
 
             ServicePortStatusHandler.startRotatorlatorService(context);
         }
@@ -0,0 +1,702 @@
+/*
+ * Created by Brian Lau on 2018-04-09
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.support.annotation.NonNull;
+import android.view.Display;
+
+import com.justbnutz.dockorientationrotatorlator.core.DeviceState;
+import com.justbnutz.dockorientationrotatorlator.core.RotationMapping;
+import com.justbnutz.dockorientationrotatorlator.core.WritePlan;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Single long-lived worker that owns all the Settings.System rotation writes.
+ *
+ * Every rotation request is stamped with a generation number, and any writes still pending from an
+ * older request are dropped once a newer one comes in. So if the connector is flapping, only the
+ * last decision ends up being applied (and we only ever have the one thread doing it).
+ *
+ * Once the writes are done we keep an eye on the display and the rotation Settings until the device
+ * actually ends up where we asked. Some ROMs (or other apps) quietly drop or override the first
+ * write, so if things haven't settled after a while the writes are retried with a bounded backoff.
+ *
+ * The current Settings come from ObserverRotationSetting: every value it reads is handed over and
+ * kept as the cache, which is what both the planning and the confirmation go off. Settings are only
+ * read here directly when nobody is observing, or a write still hasn't been seen once it's timed out.
+ * - 2018/04/09
+ */
+class RotationActuator implements ObserverRotationSetting.OnRotationSettingsChangedListener {
+
+    private static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".RotationActuator";
+
+    private static RotationActuator sInstance;
+
+    private final Handler mHandler;
+
+    // Bumped on every new request, pending writes from an older generation are stale
+    private final AtomicInteger mGeneration;
+
+    // Token for the queued writes, so a new request can drop them without touching the confirmation callbacks
+    private static final Object WRITE_TOKEN = new Object();
+
+    // Marker for a Settings value we don't currently have cached
+    private static final int SETTING_UNKNOWN = Integer.MIN_VALUE;
+
+    // Last-known rotation Settings values, only trusted while ObserverRotationSetting is watching for changes.
+    // Updated from both the observer (pipeline thread) and our own writes, so along with the unobserved
+    // write times below they only change under mCacheLock (never held across any IPC)
+    private final Object mCacheLock;
+    private volatile int mCachedAutoRotate;
+    private volatile int mCachedUserRotation;
+
+    // How many Settings writes we've made vs skipped because the device was already in the target state
+    private final AtomicInteger mSettingsWrites;
+    private final AtomicInteger mSkippedWrites;
+
+    // Works out the write order for each transition, and the plan it fills in for confirmation retries
+    // (both only used on the Actuator thread)
+    private RotationTransitionPlanner mPlanner;
+    private final WritePlan mRetryPlan;
+
+    private final AtomicInteger mTransitions;
+    private volatile long mLastTransitionMs;
+
+    // When each Setting (indexed by WritePlan.SETTING_*) was last written and not yet seen by the
+    // observer, LatencyTracker.TIME_NONE if nothing's outstanding
+    private final AtomicLongArray mUnobservedWriteAt;
+
+    // Confirmation retry timings
+    private static final long CONFIRMATION_BACKOFF_MS = 250;
+    private static final int CONFIRMATION_MAX_RETRIES = 3;
+
+    // How much to bump the inter-write delay by (up to the max) when a multi-write transition needed a retry
+    private static final long INTER_WRITE_DELAY_STEP_MS = 50;
+    private static final long INTER_WRITE_DELAY_MAX_MS = 300;
+
+    // The transition currently waiting on confirmation (only touched on the Actuator thread)
+    private Context mConfirmContext;
+    private int mConfirmGeneration;
+    private int mExpectedAutoRotate;
+    private int mExpectedUserRotation;
+    private boolean mConfirmMultiWrite;
+    private long mConfirmStartedAt;
+    private long mConfirmReceivedAt;
+    private int mConfirmAttempt;
+
+    private DisplayManager mDisplayManager;
+
+    // Confirmation stats
+    private final AtomicInteger mConfirmedTransitions;
+    private final AtomicInteger mUnconfirmedTransitions;
+    private final AtomicInteger mConfirmationRetries;
+    private volatile long mLastConfirmationMs;
+
+
+    private RotationActuator() {
+        HandlerThread handlerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+
+        mHandler = new Handler(handlerThread.getLooper());
+        mGeneration = new AtomicInteger();
+
+        mCacheLock = new Object();
+        mCachedAutoRotate = SETTING_UNKNOWN;
+        mCachedUserRotation = SETTING_UNKNOWN;
+
+        mSettingsWrites = new AtomicInteger();
+        mSkippedWrites = new AtomicInteger();
+        mTransitions = new AtomicInteger();
+
+        mUnobservedWriteAt = new AtomicLongArray(2);
+        mUnobservedWriteAt.set(WritePlan.SETTING_USER_ROTATION, LatencyTracker.TIME_NONE);
+        mUnobservedWriteAt.set(WritePlan.SETTING_ACCELEROMETER_ROTATION, LatencyTracker.TIME_NONE);
+
+        mRetryPlan = new WritePlan();
+
+        mConfirmGeneration = -1;
+        mConfirmedTransitions = new AtomicInteger();
+        mUnconfirmedTransitions = new AtomicInteger();
+        mConfirmationRetries = new AtomicInteger();
+        mLastConfirmationMs = -1;
+
+        ObserverRotationSetting.registerListener(this);
+    }
+
+
+    static synchronized RotationActuator getInstance() {
+
+        if (sInstance == null) {
+            sInstance = new RotationActuator();
+        }
+
+        return sInstance;
+    }
+
+
+    /**
+     * Queue up the Settings writes to reach the given Auto-Rotate / User Rotation values, superseding
+     * anything that's still pending. A target User Rotation of RotationMapping.ROTATION_NONE leaves it alone.
+     *
+     * The targets are worked out by the decision engine at decision time, so the writes don't depend
+     * on whatever the configuration happens to be by the time they run.
+     *
+     * The received / decided timestamps (LatencyTracker.now()) are carried along for the latency stats.
+     */
+    void requestRotation(@NonNull Context context, int targetAutoRotate, int targetUserRotation,
+                         long receivedAt, long decidedAt) {
+
+        final int generation = mGeneration.incrementAndGet();
+
+        // Any writes still in the queue belong to an older decision (its confirmation gets closed
+        // out once this one starts running)
+        mHandler.removeCallbacksAndMessages(WRITE_TOKEN);
+
+        postWrite(
+                new RotationWrite(
+                        context.getApplicationContext(),
+                        generation,
+                        targetAutoRotate,
+                        targetUserRotation,
+                        receivedAt,
+                        decidedAt
+                ),
+                0
+        );
+    }
+
+
+    /**
+     * Forget the cached value of the given rotation Setting (or both if null), called from
+     * ObserverRotationSetting whenever the system tells us one of them has changed. The new value
+     * follows along in onRotationSettingsChanged() once the observer has read it.
+     */
+    void invalidateCachedSetting(String settingKey) {
+
+        synchronized (mCacheLock) {
+            if (settingKey == null || Settings.System.ACCELEROMETER_ROTATION.equals(settingKey)) {
+                mCachedAutoRotate = SETTING_UNKNOWN;
+                recordWriteObserved(WritePlan.SETTING_ACCELEROMETER_ROTATION, settingKey != null);
+            }
+
+            if (settingKey == null || Settings.System.USER_ROTATION.equals(settingKey)) {
+                mCachedUserRotation = SETTING_UNKNOWN;
+                recordWriteObserved(WritePlan.SETTING_USER_ROTATION, settingKey != null);
+            }
+        }
+    }
+
+
+    /**
+     * The Settings as the observer just read them (on the pipeline thread), these become the cache.
+     * A Setting we've written since then is left alone, the observer hasn't caught up with it yet.
+     */
+    @Override
+    public void onRotationSettingsChanged(long previousSettings, long currentSettings) {
+
+        int autoRotate = DeviceState.isKnown(currentSettings, DeviceState.FIELD_AUTO_ROTATE)
+                ? DeviceState.getAutoRotate(currentSettings)
+                : SETTING_UNKNOWN;
+
+        int userRotation = DeviceState.isKnown(currentSettings, DeviceState.FIELD_USER_ROTATION)
+                ? DeviceState.getUserRotation(currentSettings)
+                : SETTING_UNKNOWN;
+
+        synchronized (mCacheLock) {
+            if (mUnobservedWriteAt.get(WritePlan.SETTING_ACCELEROMETER_ROTATION) == LatencyTracker.TIME_NONE) {
+                mCachedAutoRotate = autoRotate;
+            }
+
+            if (mUnobservedWriteAt.get(WritePlan.SETTING_USER_ROTATION) == LatencyTracker.TIME_NONE) {
+                mCachedUserRotation = userRotation;
+            }
+        }
+
+        // If we're waiting on a transition, this might be it landing (or something overriding it)
+        mHandler.post(mConfirmationCallback);
+    }
+
+
+    int getSettingsWriteCount() {
+        return mSettingsWrites.get();
+    }
+
+
+    int getSkippedWriteCount() {
+        return mSkippedWrites.get();
+    }
+
+
+    int getTransitionCount() {
+        return mTransitions.get();
+    }
+
+
+    /**
+     * Return how long (ms) the last transition took, from the request coming in to its final write
+     */
+    long getLastTransitionMs() {
+        return mLastTransitionMs;
+    }
+
+
+    int getConfirmedTransitionCount() {
+        return mConfirmedTransitions.get();
+    }
+
+
+    int getUnconfirmedTransitionCount() {
+        return mUnconfirmedTransitions.get();
+    }
+
+
+    int getConfirmationRetryCount() {
+        return mConfirmationRetries.get();
+    }
+
+
+    /**
+     * Return how long (ms) the last confirmed transition took from the request to the device
+     * actually settling into it, or -1 if nothing has been confirmed yet.
+     */
+    long getLastConfirmationMs() {
+        return mLastConfirmationMs;
+    }
+
+
+    /**
+     * Return the current value of the given rotation Setting (WritePlan.SETTING_*) for planning
+     * writes. That's the cached value if the observer is keeping it up to date, it's only read fresh
+     * if nobody's observing or the observer is still on its way with the new value.
+     */
+    private int getCurrentSetting(@NonNull Context context, int setting) {
+
+        int currentValue = ObserverRotationSetting.isObserving()
+                ? getCachedSetting(setting)
+                : SETTING_UNKNOWN;
+
+        if (currentValue == SETTING_UNKNOWN) {
+            currentValue = readSetting(context, setting);
+
+            // Good until the observer hands over something newer (unless it already has)
+            synchronized (mCacheLock) {
+                if (getCachedSetting(setting) == SETTING_UNKNOWN
+                        && mUnobservedWriteAt.get(setting) == LatencyTracker.TIME_NONE) {
+
+                    setCachedSetting(setting, currentValue);
+                }
+            }
+        }
+
+        return currentValue;
+    }
+
+
+    /**
+     * Return the value of the given rotation Setting (WritePlan.SETTING_*) as the observer last saw
+     * it, or SETTING_UNKNOWN if it hasn't seen our last write to it yet (or isn't observing at all).
+     * Our own writes only count once the observer has read them back.
+     */
+    private int getObservedSetting(int setting) {
+
+        synchronized (mCacheLock) {
+            return (ObserverRotationSetting.isObserving()
+                    && mUnobservedWriteAt.get(setting) == LatencyTracker.TIME_NONE)
+                    ? getCachedSetting(setting)
+                    : SETTING_UNKNOWN;
+        }
+    }
+
+
+    private int getCachedSetting(int setting) {
+        return (setting == WritePlan.SETTING_ACCELEROMETER_ROTATION)
+                ? mCachedAutoRotate
+                : mCachedUserRotation;
+    }
+
+
+    /**
+     * Read the given rotation Setting (WritePlan.SETTING_*) straight from Settings.System
+     */
+    private int readSetting(@NonNull Context context, int setting) {
+        return Settings.System.getInt(context.getContentResolver(), RotationTransitionPlanner.getSettingKey(setting), SETTING_UNKNOWN);
+    }
+
+
+    /**
+     * If we're waiting on the observer to see a write to the given Setting, that's it arrived.
+     * Without an actual key we can't tell which write it was, so just clear it out.
+     */
+    private void recordWriteObserved(int setting, boolean recordLatency) {
+
+        long writtenAt = mUnobservedWriteAt.getAndSet(setting, LatencyTracker.TIME_NONE);
+
+        if (writtenAt != LatencyTracker.TIME_NONE) {
+            TraceSections.endAsync(TraceSections.ASYNC_SETTING_OBSERVED, setting);
+        }
+
+        if (recordLatency) {
+            LatencyTracker.getInstance().recordSince(LatencyTracker.STAGE_WRITE_TO_OBSERVED, writtenAt);
+        }
+    }
+
+
+    private void postWrite(@NonNull RotationWrite rotationWrite, long delayMs) {
+        mHandler.postAtTime(rotationWrite, WRITE_TOKEN, SystemClock.uptimeMillis() + delayMs);
+    }
+
+
+    private void setCachedSetting(int setting, int settingValue) {
+
+        if (setting == WritePlan.SETTING_ACCELEROMETER_ROTATION) {
+            mCachedAutoRotate = settingValue;
+
+        } else {
+            mCachedUserRotation = settingValue;
+        }
+    }
+
+
+    // region ================== CONFIRMATION OPS ==================
+    // ====== ================== ================ ==================
+
+
+    /**
+     * Start waiting for the device to settle into the given state, called on the Actuator thread once
+     * the writes for a transition have gone out.
+     */
+    private void startConfirmation(@NonNull Context context, int generation, int expectedAutoRotate,
+                                   int expectedUserRotation, boolean multiWrite, long requestedAt,
+                                   long receivedAt) {
+
+        if (mDisplayManager == null) {
+            // Listen for display changes on the Actuator thread, stays registered for the life of the process
+            mDisplayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+
+            if (mDisplayManager != null) {
+                mDisplayManager.registerDisplayListener(mDisplayListener, mHandler);
+            }
+        }
+
+        // Anything still waiting has been superseded by this one
+        clearConfirmation();
+
+        TraceSections.beginAsync(TraceSections.ASYNC_ROTATION_CONFIRMED, generation);
+
+        mConfirmContext = context;
+        mConfirmGeneration = generation;
+        mExpectedAutoRotate = expectedAutoRotate;
+        mExpectedUserRotation = expectedUserRotation;
+        mConfirmMultiWrite = multiWrite;
+        mConfirmStartedAt = requestedAt;
+        mConfirmReceivedAt = receivedAt;
+        mConfirmAttempt = 0;
+
+        mHandler.postDelayed(mConfirmationTimeout, CONFIRMATION_BACKOFF_MS);
+    }
+
+
+    /**
+     * Check whether the pending transition has landed yet. If this is a timeout check and it hasn't,
+     * retry the writes that didn't stick (up to a limit) and wait a bit longer next time.
+     */
+    private void checkConfirmation(boolean timedOut) {
+
+        if (mConfirmGeneration < 0) {
+            // Nothing waiting
+            return;
+        }
+
+        // Superseded by a newer request (which will do its own confirmation), this is the last check it gets
+        boolean superseded = (mConfirmGeneration != mGeneration.get());
+
+        // Go by what the observer has actually seen, not what we wrote
+        int currentAutoRotate = getObservedSetting(WritePlan.SETTING_ACCELEROMETER_ROTATION);
+        int currentUserRotation = getObservedSetting(WritePlan.SETTING_USER_ROTATION);
+
+        if (timedOut) {
+            // Still nothing seen by now (or nobody watching), so check for ourselves before retrying anything
+            if (currentAutoRotate == SETTING_UNKNOWN) {
+                currentAutoRotate = readSetting(mConfirmContext, WritePlan.SETTING_ACCELEROMETER_ROTATION);
+            }
+
+            if (currentUserRotation == SETTING_UNKNOWN) {
+                currentUserRotation = readSetting(mConfirmContext, WritePlan.SETTING_USER_ROTATION);
+            }
+        }
+
+        boolean settingsApplied = (currentAutoRotate == mExpectedAutoRotate)
+                && (mExpectedUserRotation == RotationMapping.ROTATION_NONE || currentUserRotation == mExpectedUserRotation);
+
+        // With a fixed rotation we can also check the display has actually turned
+        boolean displayApplied = (mExpectedUserRotation == RotationMapping.ROTATION_NONE)
+                || (mExpectedAutoRotate != 0)
+                || (getDisplayRotation() == mExpectedUserRotation);
+
+        if (settingsApplied && displayApplied) {
+            mLastConfirmationMs = SystemClock.elapsedRealtime() - mConfirmStartedAt;
+            mConfirmedTransitions.incrementAndGet();
+            LatencyTracker.getInstance().recordSince(LatencyTracker.STAGE_RECEIVE_TO_CONFIRMED, mConfirmReceivedAt);
+
+            clearConfirmation();
+            mHandler.removeCallbacks(mConfirmationTimeout);
+            return;
+        }
+
+        if (superseded) {
+            // Didn't land before the next one came along, so it counts as not having landed at all
+            mUnconfirmedTransitions.incrementAndGet();
+
+            clearConfirmation();
+            mHandler.removeCallbacks(mConfirmationTimeout);
+            return;
+        }
+
+        if (!timedOut) {
+            // Not there yet, wait for the next callback or the timeout
+            return;
+        }
+
+        if (mConfirmAttempt >= CONFIRMATION_MAX_RETRIES) {
+            // Give up on this one
+            mUnconfirmedTransitions.incrementAndGet();
+            clearConfirmation();
+            return;
+        }
+
+        if (!settingsApplied) {
+            // Something dropped or overrode our writes, put them back in the planned order
+            mPlanner.plan(
+                    currentAutoRotate,
+                    currentUserRotation,
+                    mExpectedAutoRotate,
+                    mExpectedUserRotation,
+                    mRetryPlan
+            );
+
+            for (int i = 0; i < mRetryPlan.getStepCount(); i++) {
+                writeSetting(mConfirmContext, mRetryPlan.getSetting(i), mRetryPlan.getValue(i));
+            }
+
+            mConfirmationRetries.incrementAndGet();
+
+            // If the writes went out back-to-back, this device probably needs more of a gap between them
+            if (mConfirmMultiWrite) {
+                mPlanner.setInterWriteDelayMs(
+                        Math.min(mPlanner.getInterWriteDelayMs() + INTER_WRITE_DELAY_STEP_MS, INTER_WRITE_DELAY_MAX_MS)
+                );
+            }
+        }
+
+        mConfirmAttempt++;
+        mHandler.postDelayed(mConfirmationTimeout, CONFIRMATION_BACKOFF_MS << mConfirmAttempt);
+    }
+
+
+    /**
+     * Stop waiting on the current transition (if any)
+     */
+    private void clearConfirmation() {
+
+        if (mConfirmGeneration >= 0) {
+            TraceSections.endAsync(TraceSections.ASYNC_ROTATION_CONFIRMED, mConfirmGeneration);
+            mConfirmGeneration = -1;
+        }
+    }
+
+
+    /**
+     * Return the current rotation of the default display, or -1 if it can't be retrieved
+     */
+    private int getDisplayRotation() {
+
+        if (mDisplayManager != null) {
+            Display defaultDisplay = mDisplayManager.getDisplay(Display.DEFAULT_DISPLAY);
+
+            if (defaultDisplay != null) {
+                return defaultDisplay.getRotation();
+            }
+        }
+
+        return -1;
+    }
+
+
+    private final Runnable mConfirmationCallback = new Runnable() {
+        @Override
+        public void run() {
+            checkConfirmation(false);
+        }
+    };
+
+
+    private final Runnable mConfirmationTimeout = new Runnable() {
+        @Override
+        public void run() {
+            checkConfirmation(true);
+        }
+    };
+
+
+    private final DisplayManager.DisplayListener mDisplayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {}
+
+        @Override
+        public void onDisplayRemoved(int displayId) {}
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == Display.DEFAULT_DISPLAY) {
+                checkConfirmation(false);
+            }
+        }
+    };
+
+    // endregion
+
+
+    /**
+     * Write one planned step out to Settings.System, keeping the cache in line with it
+     */
+    private void writeSetting(@NonNull Context context, int setting, int settingValue) {
+
+        // Mark it as unobserved before it goes out, so any value the observer read before this write
+        // can't land on top of it in the cache
+        synchronized (mCacheLock) {
+            setCachedSetting(setting, settingValue);
+
+            if (mUnobservedWriteAt.getAndSet(setting, LatencyTracker.now()) == LatencyTracker.TIME_NONE) {
+                TraceSections.beginAsync(TraceSections.ASYNC_SETTING_OBSERVED, setting);
+            }
+        }
+
+        boolean traced = TraceSections.begin(TraceSections.SECTION_SETTINGS_WRITE);
+
+        try {
+            Settings.System.putInt(context.getContentResolver(), RotationTransitionPlanner.getSettingKey(setting), settingValue);
+
+        } finally {
+            TraceSections.end(traced);
+        }
+
+        mSettingsWrites.incrementAndGet();
+
+        EventJournal.getInstance(context).recordSettingsWrite(setting, settingValue);
+    }
+
+
+    /**
+     * The queued Settings writes for one rotation decision
+     */
+    private class RotationWrite implements Runnable {
+
+        private final Context mContext;
+        private final int mGenerationStamp;
+        private final int mTargetAutoRotate;
+        private final int mTargetUserRotation;
+        private final long mRequestedAt;
+
+        // LatencyTracker timestamps for the broadcast / decision behind this request
+        private final long mReceivedAt;
+        private final long mDecidedAt;
+
+        // Planned writes for this request, and how far through them we are
+        private final WritePlan mPlan;
+        private int mNextStep;
+
+
+        RotationWrite(Context context, int generation, int targetAutoRotate, int targetUserRotation,
+                      long receivedAt, long decidedAt) {
+            mContext = context;
+            mGenerationStamp = generation;
+            mTargetAutoRotate = targetAutoRotate;
+            mTargetUserRotation = targetUserRotation;
+            mRequestedAt = SystemClock.elapsedRealtime();
+            mReceivedAt = receivedAt;
+            mDecidedAt = decidedAt;
+
+            mPlan = new WritePlan();
+            mNextStep = -1;
+        }
+
+
+        @Override
+        public void run() {
+
+            // Drop the write if a newer decision has come in since this was queued
+            if (mGenerationStamp != mGeneration.get()) {
+                return;
+            }
+
+            if (mNextStep < 0) {
+                // Close out whatever the previous transition was still waiting on, one way or the other
+                checkConfirmation(false);
+
+                // First run, work out which writes are actually needed to get to the target state
+                if (mPlanner == null) {
+                    mPlanner = new RotationTransitionPlanner(mContext);
+                }
+
+                mPlanner.plan(
+                        getCurrentSetting(mContext, WritePlan.SETTING_ACCELEROMETER_ROTATION),
+                        getCurrentSetting(mContext, WritePlan.SETTING_USER_ROTATION),
+                        mTargetAutoRotate,
+                        mTargetUserRotation,
+                        mPlan
+                );
+
+                // Count the writes we didn't need to make (at most one per Setting)
+                mSkippedWrites.addAndGet(
+                        (mTargetUserRotation != RotationMapping.ROTATION_NONE ? 2 : 1) - mPlan.getStepCount()
+                );
+                mTransitions.incrementAndGet();
+                mNextStep = 0;
+            }
+
+            // Run through the planned writes, only pausing between them if this device needs it
+            while (mNextStep < mPlan.getStepCount()) {
+
+                writeSetting(mContext, mPlan.getSetting(mNextStep), mPlan.getValue(mNextStep));
+                LatencyTracker.getInstance().recordSince(LatencyTracker.STAGE_DECISION_TO_WRITE, mDecidedAt);
+
+                mNextStep++;
+
+                if (mNextStep < mPlan.getStepCount() && mPlan.getInterWriteDelayMs() > 0) {
+                    postWrite(this, mPlan.getInterWriteDelayMs());
+                    return;
+                }
+            }
+
+            mLastTransitionMs = SystemClock.elapsedRealtime() - mRequestedAt;
+
+            // Now wait and see if it actually sticks
+            if (mPlan.getStepCount() > 0) {
+                startConfirmation(
+                        mContext,
+                        mGenerationStamp,
+                        mTargetAutoRotate,
+                        mTargetUserRotation,
+                        mPlan.getStepCount() > 1,
+                        mRequestedAt,
+                        mReceivedAt
+                );
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Created by Brian Lau on 2018-04-11
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-11
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.support.annotation.DrawableRes;
+import android.support.annotation.StringRes;
+
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+
+/**
+ * Lookup tables for the labels and icons of each Rotation Mode / Power Status, indexed by the core
+ * RotationProfile.MODE_* and PowerStateTracker.POWER_STATUS_* values (which line up with the enum
+ * ordinals). Saves working them out with a switch statement every time a label gets refreshed.
+ * - 2018/04/11
+ */
+final class RotationModeResources {
+
+    // Rotation Mode label text
+    private static final int[] MODE_LABELS = new int[RotationProfile.MODE_COUNT];
+
+    // AnimatedVectorDrawable shown on the config toggle when switching *to* each Rotation Mode
+    private static final int[] MODE_TOGGLE_ICONS = new int[RotationProfile.MODE_COUNT];
+
+    // Grey status icon for the current orientation labels (0 = no icon)
+    private static final int[] MODE_STATUS_ICONS = new int[RotationProfile.MODE_COUNT];
+
+    // Black notification small icon (0 = leave the icon as it is)
+    private static final int[] MODE_NOTIFICATION_ICONS = new int[RotationProfile.MODE_COUNT];
+
+    // Power Status label text and grey status icon
+    private static final int[] POWER_STATUS_LABELS = new int[PowerStateTracker.POWER_STATUS_COUNT];
+
+    private static final int[] POWER_STATUS_ICONS = new int[PowerStateTracker.POWER_STATUS_COUNT];
+
+    static {
+        MODE_LABELS[RotationProfile.MODE_NO_CHANGE] = R.string.lbl_status_no_change;
+        MODE_LABELS[RotationProfile.MODE_PORTRAIT] = R.string.lbl_status_portrait;
+        MODE_LABELS[RotationProfile.MODE_PORTRAIT_INVERTED] = R.string.lbl_status_portrait_inverted;
+        MODE_LABELS[RotationProfile.MODE_LANDSCAPE] = R.string.lbl_status_landscape;
+        MODE_LABELS[RotationProfile.MODE_LANDSCAPE_INVERTED] = R.string.lbl_status_landscape_inverted;
+        MODE_LABELS[RotationProfile.MODE_AUTO_ROTATE] = R.string.lbl_status_auto_rotate;
+
+        MODE_TOGGLE_ICONS[RotationProfile.MODE_NO_CHANGE] = R.drawable.avd_rotate_to_no_change;
+        MODE_TOGGLE_ICONS[RotationProfile.MODE_PORTRAIT] = R.drawable.avd_no_change_to_portrait;
+        MODE_TOGGLE_ICONS[RotationProfile.MODE_PORTRAIT_INVERTED] = R.drawable.avd_portrait_to_portrait_inverted;
+        MODE_TOGGLE_ICONS[RotationProfile.MODE_LANDSCAPE] = R.drawable.avd_portrait_to_landscape;
+        MODE_TOGGLE_ICONS[RotationProfile.MODE_LANDSCAPE_INVERTED] = R.drawable.avd_landscape_to_landscape_inverted;
+        MODE_TOGGLE_ICONS[RotationProfile.MODE_AUTO_ROTATE] = R.drawable.avd_landscape_to_rotate;
+
+        MODE_STATUS_ICONS[RotationProfile.MODE_PORTRAIT] = R.drawable.ic_stay_primary_portrait_grey_400;
+        MODE_STATUS_ICONS[RotationProfile.MODE_PORTRAIT_INVERTED] = R.drawable.ic_stay_primary_portrait_grey_400;
+        MODE_STATUS_ICONS[RotationProfile.MODE_LANDSCAPE] = R.drawable.ic_stay_primary_landscape_grey_400;
+        MODE_STATUS_ICONS[RotationProfile.MODE_LANDSCAPE_INVERTED] = R.drawable.ic_stay_primary_landscape_grey_400;
+        MODE_STATUS_ICONS[RotationProfile.MODE_AUTO_ROTATE] = R.drawable.ic_screen_rotation_grey_400;
+
+        MODE_NOTIFICATION_ICONS[RotationProfile.MODE_PORTRAIT] = R.drawable.ic_stay_primary_portrait_black;
+        MODE_NOTIFICATION_ICONS[RotationProfile.MODE_PORTRAIT_INVERTED] = R.drawable.ic_stay_primary_portrait_black;
+        MODE_NOTIFICATION_ICONS[RotationProfile.MODE_LANDSCAPE] = R.drawable.ic_stay_primary_landscape_black;
+        MODE_NOTIFICATION_ICONS[RotationProfile.MODE_LANDSCAPE_INVERTED] = R.drawable.ic_stay_primary_landscape_black;
+        MODE_NOTIFICATION_ICONS[RotationProfile.MODE_AUTO_ROTATE] = R.drawable.ic_screen_rotation_black;
+
+        POWER_STATUS_LABELS[PowerStateTracker.POWER_STATUS_DISCONNECTED] = R.string.lbl_status_unplugged;
+        POWER_STATUS_LABELS[PowerStateTracker.POWER_STATUS_PLUGGED_IN] = R.string.lbl_status_plugged;
+        POWER_STATUS_LABELS[PowerStateTracker.POWER_STATUS_WIRELESSLY_CHARGING] = R.string.lbl_status_wireless;
+
+        POWER_STATUS_ICONS[PowerStateTracker.POWER_STATUS_DISCONNECTED] = R.drawable.ic_dock_grey_400;
+        POWER_STATUS_ICONS[PowerStateTracker.POWER_STATUS_PLUGGED_IN] = R.drawable.ic_power_grey_400;
+        POWER_STATUS_ICONS[PowerStateTracker.POWER_STATUS_WIRELESSLY_CHARGING] = R.drawable.ic_tap_and_play_grey_400;
+    }
+
+
+    private RotationModeResources() {}
+
+
+    @StringRes
+    static int getModeLabel(int rotationMode) {
+        return MODE_LABELS[rotationMode];
+    }
+
+
+    @DrawableRes
+    static int getModeToggleIcon(int rotationMode) {
+        return MODE_TOGGLE_ICONS[rotationMode];
+    }
+
+
+    @DrawableRes
+    static int getModeStatusIcon(int rotationMode) {
+        return MODE_STATUS_ICONS[rotationMode];
+    }
+
+
+    @DrawableRes
+    static int getModeNotificationIcon(int rotationMode) {
+        return MODE_NOTIFICATION_ICONS[rotationMode];
+    }
+
+
+    @StringRes
+    static int getPowerStatusLabel(int powerStatus) {
+        return POWER_STATUS_LABELS[powerStatus];
+    }
+
+
+    @DrawableRes
+    static int getPowerStatusIcon(int powerStatus) {
+        return POWER_STATUS_ICONS[powerStatus];
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Created by Brian Lau on 2018-04-08
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Immutable, compiled copy of the Rotation Profile preferences (which RotationMode to use for each
+ * PowerStatus, and whether the monitor is enabled at all).
+ *
+ * Each table wraps a core RotationProfile compiled from the ProfileStore, which is also handed to
+ * the decision engine, so working out a RotationMode is just an array load rather than a lookup on
+ * every event. The ProfileStore swaps in a freshly compiled table on every change (before telling
+ * anyone else about it).
+ * - 2018/04/08
+ */
+class RotationProfileTable {
+
+    private static final AtomicReference<RotationProfileTable> sCurrentTable = new AtomicReference<>();
+
+    // Rotation Mode preference keys (still used to identify the Toggle Panels), resolved from resources once
+    private static String[] sPrefKeyRotationModes;
+
+    // RotationMode ordinals, indexed by PowerStatus ordinal (and the monitor switch)
+    private final RotationProfile mProfile;
+
+
+    private RotationProfileTable(@NonNull RotationProfile profile) {
+        mProfile = profile;
+    }
+
+
+    // region ================== STATIC METHODS ==================
+    // ====== ================== ============== ==================
+
+
+    /**
+     * Return the current compiled table, compiling it from the ProfileStore if this is the first
+     * time it's been asked for.
+     */
+    static RotationProfileTable getInstance(@NonNull Context context) {
+
+        RotationProfileTable currentTable = sCurrentTable.get();
+
+        if (currentTable == null) {
+            currentTable = compile(ProfileStore.getInstance(context));
+        }
+
+        return currentTable;
+    }
+
+
+    /**
+     * Build a new table from the store's current values, swap it in and hand the new profile over
+     * to the decision engine (and the MonitorSnapshot). ProfileStore calls this on every change, before notifying its listeners.
+     */
+    static synchronized RotationProfileTable compile(@NonNull ProfileStore profileStore) {
+
+        RotationProfileTable compiledTable = new RotationProfileTable(profileStore.buildProfile());
+
+        sCurrentTable.set(compiledTable);
+        ApplicationRotatorlator.getRotationEngine().setProfile(compiledTable.getProfile());
+        MonitorSnapshot.publishProfile(compiledTable.getProfile());
+
+        return compiledTable;
+    }
+
+
+    /**
+     * Return a copy of the Rotation Mode preference keys, indexed by PowerStatus. Only for callers
+     * that need the whole set, single lookups should go through getPrefKey() / getPowerStatus().
+     */
+    static String[] getRotationModePrefKeys(@NonNull Context context) {
+        return getSharedPrefKeys(context).clone();
+    }
+
+
+    /**
+     * Return the cached Rotation Mode preference keys themselves (so never hand this out)
+     */
+    private static synchronized String[] getSharedPrefKeys(@NonNull Context context) {
+
+        if (sPrefKeyRotationModes == null) {
+            String[] prefKeyRotationModes = new String[PowerStateTracker.POWER_STATUS_COUNT];
+            prefKeyRotationModes[ReceiverPortStatus.POWER_STATUS_DISCONNECTED] = context.getString(R.string.prefkey_set_autorotate_unplugged);
+            prefKeyRotationModes[ReceiverPortStatus.POWER_STATUS_PLUGGED_IN] = context.getString(R.string.prefkey_set_autorotate_plugged);
+            prefKeyRotationModes[ReceiverPortStatus.POWER_STATUS_WIRELESSLY_CHARGING] = context.getString(R.string.prefkey_set_autorotate_wireless);
+            sPrefKeyRotationModes = prefKeyRotationModes;
+        }
+
+        return sPrefKeyRotationModes;
+    }
+
+
+    /**
+     * Return the PowerStatus that a given Rotation Mode preference key is stored against, or
+     * POWER_STATUS_NONE if it's not one of the profile keys.
+     */
+    static int getPowerStatus(@NonNull Context context, String prefKey) {
+
+        String[] prefKeyRotationModes = getSharedPrefKeys(context);
+
+        for (int i = 0; i < prefKeyRotationModes.length; i++) {
+            if (prefKeyRotationModes[i].equals(prefKey)) {
+                return i;
+            }
+        }
+
+        return ReceiverPortStatus.POWER_STATUS_NONE;
+    }
+
+
+    /**
+     * Return the Rotation Mode preference key for the given PowerStatus
+     */
+    static String getPrefKey(@NonNull Context context, @ReceiverPortStatus.PowerStatus int powerStatus) {
+        return getSharedPrefKeys(context)[powerStatus];
+    }
+
+
+    /**
+     * Return how many RotationModes there are to cycle through
+     */
+    static int getRotationModeCount() {
+        return RotationProfile.MODE_COUNT;
+    }
+
+    // endregion
+
+
+    // region ================== TABLE LOOKUPS ==================
+    // ====== ================== ============= ==================
+
+
+    boolean isMonitorEnabled() {
+        return mProfile.isMonitorEnabled();
+    }
+
+
+    /**
+     * Return the core profile this table was compiled into
+     */
+    RotationProfile getProfile() {
+        return mProfile;
+    }
+
+
+    /**
+     * Take a given PowerStatus and return what RotationMode has been set for that state
+     */
+    @ReceiverPortStatus.RotationMode
+    int getRotationMode(@ReceiverPortStatus.PowerStatus int powerStatus) {
+        return mProfile.getRotationMode(powerStatus);
+    }
+
+    // endregion
+}
@@ -0,0 +1,91 @@
+/*
+ * Created by Brian Lau on 2018-04-09
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-15
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.provider.Settings;
+import android.support.annotation.NonNull;
+
+import com.justbnutz.dockorientationrotatorlator.core.RotationEngine;
+import com.justbnutz.dockorientationrotatorlator.core.WritePlan;
+
+
+/**
+ * Android side of the core TransitionPlanner: holds the per-device inter-write delay and maps the
+ * planned WritePlan.SETTING_* steps onto the actual Settings.System keys.
+ *
+ * The ordering rules themselves (USER_ROTATION first, then the Auto-Rotate lock) live in the core
+ * module, see TransitionPlanner.
+ *
+ * Most devices are fine with the writes going back-to-back, but some need a bit of breathing room
+ * between them. That delay is stored per device rather than hard-coded.
+ * - 2018/04/09
+ */
+class RotationTransitionPlanner {
+
+    private final SharedPreferences mSharedPrefs;
+    private final String mPrefKeyInterWriteDelay;
+
+    // Delay to leave between consecutive writes of the same transition
+    private volatile long mInterWriteDelayMs;
+
+
+    RotationTransitionPlanner(@NonNull Context context) {
+        mSharedPrefs = ApplicationRotatorlator.getSharedPrefs(context);
+        mPrefKeyInterWriteDelay = context.getString(R.string.prefkey_transition_write_delay_ms);
+
+        mInterWriteDelayMs = mSharedPrefs.getLong(mPrefKeyInterWriteDelay, 0);
+    }
+
+
+    long getInterWriteDelayMs() {
+        return mInterWriteDelayMs;
+    }
+
+
+    /**
+     * Update and save the delay to leave between writes on this device
+     */
+    void setInterWriteDelayMs(long interWriteDelayMs) {
+
+        if (interWriteDelayMs != mInterWriteDelayMs) {
+            mInterWriteDelayMs = interWriteDelayMs;
+            mSharedPrefs.edit().putLong(mPrefKeyInterWriteDelay, interWriteDelayMs).apply();
+        }
+    }
+
+
+    /**
+     * Fill in the given WritePlan with the writes needed to go from the current Auto-Rotate / User Rotation
+     * values to the target ones. A target User Rotation of ROTATION_NONE means it doesn't matter (Auto-Rotate).
+     */
+    void plan(int currentAutoRotate, int currentUserRotation,
+              int targetAutoRotate, int targetUserRotation,
+              @NonNull WritePlan plan) {
+
+        RotationEngine.planWrites(
+                currentAutoRotate,
+                currentUserRotation,
+                targetAutoRotate,
+                targetUserRotation,
+                mInterWriteDelayMs,
+                plan
+        );
+    }
+
+
+    /**
+     * Return the Settings.System key for one of the WritePlan.SETTING_* values
+     */
+    static String getSettingKey(int setting) {
+        return (setting == WritePlan.SETTING_ACCELEROMETER_ROTATION)
+                ? Settings.System.ACCELEROMETER_ROTATION
+                : Settings.System.USER_ROTATION;
+    }
+}
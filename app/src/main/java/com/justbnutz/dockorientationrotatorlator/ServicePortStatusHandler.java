@@ -2,7 +2,7 @@
  * Created by Brian Lau on 2018-03-23
  * Copyright (c) 2018. All rights reserved.
  *
- * Last modified: 2018-03-25
+ * Last modified: 2018-04-16
  */
 
 package com.justbnutz.dockorientationrotatorlator;
@@ -10,45 +10,63 @@ package com.justbnutz.dockorientationrotatorlator;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.os.Build;
 import android.os.IBinder;
-import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.TextUtils;
 
+import com.justbnutz.dockorientationrotatorlator.core.DeviceState;
+
 
 /**
  * Service for hosting the ReceiverPortStatus BroadcastReceiver.
  *
  * Needs to be placed in a Service as doing IntentFilter Receivers in the Manifest is no longer
- * supported from Oreo onwards
- *
+ * supported from Oreo onwards. Starting is idempotent: the first start arms everything (receivers,
+ * observer, notification channel and notification), any start after that while still armed only
+ * reconciles whatever has changed (e.g. the coalescing window) and re-asserts the foreground
+ * notification.
  * - 2018/03/23
  */
 public class ServicePortStatusHandler extends Service {
 
     private static final String TAG = ActivityRotatorlator.PACKAGE_NAME + ".ServicePortStatusHandler";
 
-    private static final String ACTION_KEY_STOP_MONITORING = TAG + ".ACTION_KEY_STOP_MONITORING";
+    static final String ACTION_KEY_STOP_MONITORING = TAG + ".ACTION_KEY_STOP_MONITORING";
+
+    // When the start was requested (LatencyTracker.now()), for the start -> armed timings
+    private static final String INTENT_EXTRA_REQUESTED_AT = TAG + ".INTENT_EXTRA_REQUESTED_AT";
+
+    private static final String NOTIFICATION_CHANNEL_ID = TAG + ".RotatorlatorNotification";
+
+    // Whether a Service instance is currently armed and monitoring
+    private static volatile boolean sArmed;
 
 
     // Preferences
     private SharedPreferences mSharedPrefs;
 
+    // ContentObserver for keeping the Actuator's cached rotation Settings fresh while we're monitoring
+    private ObserverRotationSetting mRotationSettingsObserver;
+
     // Notification Tools
     private NotificationManager mNotificationManager;
-    private NotificationCompat.Builder mNotificationBuilder;
+    private NotificationRenderer mNotificationRenderer;
     private final int mNotificationId;
 
+    // Whether this instance has armed everything, and the coalescing window it was armed with
+    private boolean mArmed;
+    private int mCoalesceWindowMs;
+
+    // When this instance was created (LatencyTracker.now()), to time START_STICKY restarts that don't carry a request time
+    private long mCreatedAt;
+
 
     public ServicePortStatusHandler() {
         mNotificationId = 10;
@@ -59,9 +77,18 @@ public class ServicePortStatusHandler extends Service {
     // ====== ================== ============== ==================
 
 
+    /**
+     * Return whether the Service is up and monitoring, in which case there's no need to start it again
+     */
+    static boolean isArmed() {
+        return sArmed;
+    }
+
+
     public static void startRotatorlatorService(Context context) {
 
         Intent serviceIntent = new Intent(context, ServicePortStatusHandler.class);
+        serviceIntent.putExtra(INTENT_EXTRA_REQUESTED_AT, LatencyTracker.now());
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             context.startForegroundService(serviceIntent);
@@ -98,7 +125,9 @@ public class ServicePortStatusHandler extends Service {
     public void onCreate() {
         super.onCreate();
 
-        mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        mCreatedAt = LatencyTracker.now();
+        mSharedPrefs = ApplicationRotatorlator.getSharedPrefs(this);
+        mRotationSettingsObserver = new ObserverRotationSetting(false);
     }
 
 
@@ -112,17 +141,25 @@ public class ServicePortStatusHandler extends Service {
 
             // If there is an Action Key then the only one we need to be concerned about is the Stop Action
             stopSelf();
+            return START_STICKY;
         }
 
+        // Time from the start request if we have one, otherwise from when this instance was created
+        long requestedAt = (intent != null)
+                ? intent.getLongExtra(INTENT_EXTRA_REQUESTED_AT, mCreatedAt)
+                : mCreatedAt;
+
         // If we get here then proceed as normal -  Only do actions if the Monitor is enabled
-        if (mSharedPrefs.getBoolean(getString(R.string.prefkey_enable_dock_monitor), false)) {
+        if (ProfileStore.getInstance(this).isMonitorEnabled()) {
 
-            // Start the internal and external Broadcast listeners
-            initLocalBroadcastReceivers();
-            initDeviceBroadcastReceivers();
+            if (!mArmed) {
+                arm();
+                LatencyTracker.getInstance().recordSince(LatencyTracker.STAGE_SERVICE_START_TO_ARMED, requestedAt);
 
-            // Start the Service Notification
-            setupNotification();
+            } else {
+                reconcile();
+                LatencyTracker.getInstance().recordSince(LatencyTracker.STAGE_SERVICE_START_ALREADY_ARMED, requestedAt);
+            }
 
         } else {
             stopSelf();
@@ -134,14 +171,63 @@ public class ServicePortStatusHandler extends Service {
     }
 
 
+    /**
+     * First start for this instance, get everything up and running
+     */
+    private void arm() {
+
+        // Start the internal and external Broadcast listeners
+        initEventSubscriptions();
+        initDeviceBroadcastReceivers();
+
+        // Start watching the rotation Settings
+        mRotationSettingsObserver.startObserver(this);
+
+        // Start the Service Notification
+        setupNotification();
+
+        mArmed = true;
+        sArmed = true;
+    }
+
+
+    /**
+     * Already armed, so only redo whatever has actually changed since. The receivers and observer are
+     * still registered, and the renderer is still showing the current state.
+     */
+    private void reconcile() {
+
+        if (getCoalesceWindowMs() != mCoalesceWindowMs) {
+            initDeviceBroadcastReceivers();
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // Each startForegroundService() still needs its startForeground(), hand back what's already showing
+            Notification currentNotification = mNotificationRenderer.getCurrentNotification();
+
+            if (currentNotification != null) {
+                startForeground(
+                        mNotificationId,
+                        currentNotification
+                );
+            }
+        }
+    }
+
+
     @Override
     public void onDestroy() {
 
-        // Reset the preference
-        mSharedPrefs.edit().putBoolean(getString(R.string.prefkey_enable_dock_monitor), false).apply();
+        mArmed = false;
+        sArmed = false;
+
+        // Reset the monitor switch
+        ProfileStore.getInstance(this).setMonitorEnabled(false);
 
         // Clean up resources
         clearBroadcastReceivers(true, true);
+        mRotationSettingsObserver.stopObserver();
+        MonitorSnapshot.unsubscribe(mPopulatedListener);
         clearNotification();
 
         super.onDestroy();
@@ -157,50 +243,28 @@ public class ServicePortStatusHandler extends Service {
     // Receiver for port status update Intents (System Intents)
     private ReceiverPortStatus mReceiverPortStatus;
 
-    // Receiver for LocalBroadcast Intents
-    private BroadcastReceiver mLocalReceiver = new BroadcastReceiver() {
+    // Subscriber for the Power Status events off the MonitorEventBus, the packed Device State comes along with them
+    private final MonitorEventBus.Subscriber mEventSubscriber = new MonitorEventBus.Subscriber() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-
-            if (context != null) {
-
-                String intentAction = intent.getAction();
-
-                if (!TextUtils.isEmpty(intentAction)) {
-
-                    switch (intentAction) {
-                        case ReceiverPortStatus.ACTION_KEY_POWER_STATUS_UPDATED:
-                            // Update the current Plugged In status
-                            updateNotification();
-                            break;
-
-                        default:
-                            break;
-                    }
-                }
-            }
+        public void onMonitorEvent(int eventType, long deviceState) {
+            // Update the current Plugged In status
+            updateNotification(deviceState);
         }
     };
 
 
     /**
-     * Register to receive incoming LocalBroadcast Intents from the app
+     * Subscribe to the Power Status events from the app, delivered on the main thread
      */
-    private void initLocalBroadcastReceivers() {
-        // Make sure any previously registered receivers are cleared first (just in case)
+    private void initEventSubscriptions() {
+        // Make sure any previous subscription is cleared first (just in case)
         clearBroadcastReceivers(true, false);
 
-        // Set up the IntentFilter for listening to LocalBroadcast events
-        IntentFilter intentFilter = new IntentFilter();
-        intentFilter.addAction(ReceiverPortStatus.ACTION_KEY_POWER_STATUS_UPDATED);
-
-        // Register the receiver
-        LocalBroadcastManager
-                .getInstance(this)
-                .registerReceiver(
-                        mLocalReceiver,
-                        intentFilter
-                );
+        MonitorEventBus.subscribe(
+                mEventSubscriber,
+                MonitorEventBus.EVENT_POWER_STATUS_UPDATED,
+                MonitorEventBus.DISPATCH_MAIN
+        );
     }
 
 
@@ -217,8 +281,12 @@ public class ServicePortStatusHandler extends Service {
         intentFilter.addAction(Intent.ACTION_POWER_CONNECTED);
         intentFilter.addAction(Intent.ACTION_POWER_DISCONNECTED);
 
-        // Init the Port Status BroadcastReceiver
-        mReceiverPortStatus = new ReceiverPortStatus();
+        // Init the Port Status BroadcastReceiver, collapsing bursts of port events into one decision
+        mCoalesceWindowMs = getCoalesceWindowMs();
+        mReceiverPortStatus = new ReceiverPortStatus(mCoalesceWindowMs);
+
+        // Start from a clean Power Snapshot, it'll be kept up to date from here by the incoming port events
+        PowerSnapshot.getInstance().invalidate();
 
         // Register the receiver
         registerReceiver(
@@ -229,24 +297,37 @@ public class ServicePortStatusHandler extends Service {
 
 
     /**
-     * Unregister all MessageReceivers
+     * Unregister all MessageReceivers (and the event bus subscription)
      */
     private void clearBroadcastReceivers(boolean clearLocal, boolean clearGlobal) {
 
         if (clearLocal) {
-            LocalBroadcastManager
-                    .getInstance(this)
-                    .unregisterReceiver(mLocalReceiver);
-
+            MonitorEventBus.unsubscribe(mEventSubscriber);
         }
 
         if (clearGlobal && mReceiverPortStatus != null) {
+            mReceiverPortStatus.cancelPendingEvents();
+
             unregisterReceiver(
                     mReceiverPortStatus
             );
+
+            mReceiverPortStatus = null;
+
+            // No longer receiving port events, so the Power Snapshot can't be trusted anymore
+            PowerSnapshot.getInstance().invalidate();
         }
     }
 
+
+    private int getCoalesceWindowMs() {
+
+        return mSharedPrefs.getInt(
+                getString(R.string.prefkey_event_coalesce_window_ms),
+                getResources().getInteger(R.integer.default_event_coalesce_window_ms)
+        );
+    }
+
     // endregion
 
 
@@ -255,18 +336,17 @@ public class ServicePortStatusHandler extends Service {
 
 
     /**
-     * Preps the elements needed for the Service notification
+     * Preps the elements needed for the Service notification, only needed the once when arming
      * Reference: https://developer.android.com/guide/topics/ui/notifiers/notifications.html
      */
     private void setupNotification() {
 
-        String notificationChannelId = TAG + ".RotatorlatorNotification";
         mNotificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
 
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
             // If Oreo or higher, create the notification channel
             NotificationChannel notificationChannel = new NotificationChannel(
-                    notificationChannelId,
+                    NOTIFICATION_CHANNEL_ID,
                     getString(R.string.notification_channel_name),
                     NotificationManager.IMPORTANCE_MIN
             );
@@ -277,25 +357,18 @@ public class ServicePortStatusHandler extends Service {
             }
         }
 
-        // Create the initial notification
-        mNotificationBuilder = new NotificationCompat.Builder(this, notificationChannelId)
-                .setContentTitle(getString(R.string.notification_channel_name))
-                .setSmallIcon(R.drawable.ic_adjust_black)
-                .setContentText(getString(R.string.lbl_status_blank))
-                .setOngoing(true)
-
-                // Set the action when tapping the notification itself
-                .setContentIntent(pendingIntentOpenApp())
-
-                // Set the Cancel button action
-                .addAction(
-                        R.drawable.ic_cancel_black,
-                        getString(R.string.btn_stop_monitoring),
-                        pendingIntentStopMonitoring()
-                );
+        // Set up the renderer, which keeps hold of the built notifications and PendingIntents from here on
+        if (mNotificationRenderer == null) {
+            mNotificationRenderer = new NotificationRenderer(
+                    this,
+                    mNotificationManager,
+                    mNotificationId,
+                    NOTIFICATION_CHANNEL_ID
+            );
+        }
 
         // Build the notification
-        Notification newNotification = mNotificationBuilder.build();
+        Notification newNotification = mNotificationRenderer.buildInitialNotification();
 
         // Start the Notification
         showNotification(newNotification);
@@ -309,82 +382,65 @@ public class ServicePortStatusHandler extends Service {
         }
 
         // Update the initial values
-        updateNotification();
+        updateNotification(DeviceState.NONE);
+    }
+
+
+    /**
+     * Update the monitoring notification with the latest port status. If the Device State isn't
+     * given (DeviceState.NONE) then it's taken from the MonitorSnapshot.
+     *
+     * The renderer takes care of skipping updates that wouldn't change anything, and of spacing
+     * the rest out.
+     */
+    private void updateNotification(long deviceState) {
+
+        boolean traced = TraceSections.begin(TraceSections.SECTION_UPDATE_NOTIFICATION);
+
+        try {
+            renderNotification(deviceState);
+
+        } finally {
+            TraceSections.end(traced);
+        }
     }
 
 
     /**
-     * Update the monitoring notification with the latest port status
+     * The populated snapshot for an initial render, only wanted if we're still monitoring by then
      */
-    private void updateNotification() {
-
-        if (mNotificationBuilder != null && mReceiverPortStatus != null) {
-
-            // Fetch the current Power Status
-            ReceiverPortStatus.PowerStatus powerStatus = mReceiverPortStatus.getCurrentPowerStatus(this);
-
-            // Set the new Content Text
-            switch (powerStatus) {
-                case DISCONNECTED:
-                    mNotificationBuilder.setContentText(
-                            String.format(
-                                    "%s %s",
-                                    getString(R.string.lbl_current_port_status),
-                                    getString(R.string.lbl_status_unplugged)
-                            )
-                    );
-                    break;
-
-                case PLUGGED_IN:
-                    mNotificationBuilder.setContentText(
-                            String.format(
-                                    "%s %s",
-                                    getString(R.string.lbl_current_port_status),
-                                    getString(R.string.lbl_status_plugged)
-                            )
-                    );
-                    break;
-
-                case WIRELESSLY_CHARGING:
-                    mNotificationBuilder.setContentText(
-                            String.format(
-                                    "%s %s",
-                                    getString(R.string.lbl_current_port_status),
-                                    getString(R.string.lbl_status_wireless)
-                            )
-                    );
-                    break;
-
-                default:
-                    break;
+    private final MonitorSnapshot.OnSnapshotChangedListener mPopulatedListener = new MonitorSnapshot.OnSnapshotChangedListener() {
+        @Override
+        public void onSnapshotChanged(@NonNull MonitorSnapshot snapshot) {
+
+            if (mArmed) {
+                renderNotification(snapshot.getDeviceState());
             }
+        }
+    };
 
-            // Fetch the preferred Rotation Mode for this Power Status
-            ReceiverPortStatus.RotationMode rotationMode = mReceiverPortStatus.getRotationMode(this, powerStatus);
 
-            // Set the new icon
-            switch (rotationMode) {
-                case PORTRAIT:
-                case PORTRAIT_INVERTED:
-                    mNotificationBuilder.setSmallIcon(R.drawable.ic_stay_primary_portrait_black);
-                    break;
+    private void renderNotification(long deviceState) {
 
-                case LANDSCAPE:
-                case LANDSCAPE_INVERTED:
-                    mNotificationBuilder.setSmallIcon(R.drawable.ic_stay_primary_landscape_black);
-                    break;
+        if (mNotificationRenderer != null && mReceiverPortStatus != null) {
 
-                case AUTO_ROTATE:
-                    mNotificationBuilder.setSmallIcon(R.drawable.ic_screen_rotation_black);
-                    break;
+            if (deviceState == DeviceState.NONE) {
+                // Use the published Power Status (and its preferred Rotation Mode), anything it doesn't
+                // know yet is looked up on the pipeline thread and comes back to render again
+                deviceState = MonitorSnapshot.requestPopulated(this, true, mPopulatedListener).getDeviceState();
+            }
 
-                case NO_CHANGE:
-                default:
-                    break;
+            if (!DeviceState.isKnown(deviceState, DeviceState.FIELD_POWER_STATUS)) {
+                // Nothing real to show yet, keep whatever's up (the blank initial one) rather than
+                // guessing, the populated snapshot will be along shortly
+                return;
             }
 
-            // Build and update the resultant notification
-            showNotification(mNotificationBuilder.build());
+            // Render the notification matching the Power Status and Rotation Mode
+            mNotificationRenderer.render(
+                    DeviceState.getPowerStatus(deviceState),
+                    DeviceState.getRotationMode(deviceState)
+            );
         }
     }
 
@@ -408,6 +464,12 @@ public class ServicePortStatusHandler extends Service {
      */
     private void clearNotification() {
 
+        if (mNotificationRenderer != null) {
+            // Also drops any update that's still waiting to go out
+            mNotificationRenderer.cancel();
+            return;
+        }
+
         NotificationManager notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
         if (notificationManager != null) {
             notificationManager.cancel(mNotificationId);
@@ -416,38 +478,4 @@ public class ServicePortStatusHandler extends Service {
 
     // endregion
 
-
-    // region ================== PENDINGINTENTS ==================
-    // ====== ================== ============== ==================
-
-
-    private PendingIntent pendingIntentStopMonitoring() {
-
-        Intent intentStopMonitoring = new Intent(this, ServicePortStatusHandler.class);
-        intentStopMonitoring.setAction(ACTION_KEY_STOP_MONITORING);
-
-        return PendingIntent.getService(
-                this,
-                (int) System.currentTimeMillis(),
-                intentStopMonitoring,
-                0
-        );
-    }
-
-
-    private PendingIntent pendingIntentOpenApp() {
-
-        Intent intentOpenApp = new Intent(this, ActivitySplashScreen.class);
-        intentOpenApp.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-
-        return PendingIntent.getActivity(
-                this,
-                (int) System.currentTimeMillis(),
-                intentOpenApp,
-                0
-        );
-    }
-
-    // endregion
-
 }
@@ -0,0 +1,59 @@
+/*
+ * Created by Brian Lau on 2018-04-15
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Gets the things most components need straight away loaded in the background: the SharedPreferences
+ * file, the Rotation Profile (ProfileStore, then compiled) and the natural orientation. Kicked off from
+ * ApplicationRotatorlator.onCreate(), so by the time the Configurator (or a receiver) asks for them
+ * they should already be in memory.
+ * - 2018/04/15
+ */
+class StartupPreloader {
+
+    private static final AtomicBoolean sPreloadStarted = new AtomicBoolean();
+    private static volatile boolean sPreloadDone;
+
+
+    /**
+     * Kick off the preload on the pipeline thread, only does anything the first time it's called
+     */
+    static void preload(@NonNull Context context) {
+
+        if (!sPreloadStarted.compareAndSet(false, true)) {
+            // Already loaded (or on its way, in which case it'll mark itself when it's done)
+            if (sPreloadDone) {
+                StartupTimings.mark(StartupTimings.MARK_PRELOAD_DONE);
+            }
+            return;
+        }
+
+        final Context appContext = context.getApplicationContext();
+
+        PipelineExecutor.getInstance().execute(new Runnable() {
+            @Override
+            public void run() {
+                // Reads the preferences file off disk, anyone else asking for it on the main thread just gets the loaded copy
+                ApplicationRotatorlator.getSharedPrefs(appContext);
+
+                // Maps the profile store (migrating it out of the preferences the first time) and compiles it
+                RotationProfileTable.getInstance(appContext);
+                NaturalOrientationCache.getInstance().getNaturalOrientation(appContext);
+
+                sPreloadDone = true;
+                StartupTimings.mark(StartupTimings.MARK_PRELOAD_DONE);
+            }
+        });
+    }
+}
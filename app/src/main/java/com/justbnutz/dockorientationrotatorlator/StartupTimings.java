@@ -0,0 +1,183 @@
+/*
+ * Created by Brian Lau on 2018-04-15
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.os.SystemClock;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Timestamps for each step of a cold start, from the process coming up to the Configurator being
+ * drawn, so each phase of a real launch can be compared against its budget in the Test Panel report.
+ *
+ * The launch is started from ApplicationRotatorlator.onCreate(), since that's where the preload gets
+ * kicked off too. Each mark only takes the first time it's hit per launch, so things like the
+ * Activity being recreated on rotation (or the splash coming back round) don't move it. Marks can be
+ * hit from any thread.
+ * - 2018/04/15
+ */
+class StartupTimings {
+
+    // Marks, in the order they should be hit
+    static final int MARK_LAUNCH = 0;
+    static final int MARK_PRELOAD_DONE = 1;
+    static final int MARK_MAIN_CREATED = 2;
+    static final int MARK_PANELS_BUILT = 3;
+    static final int MARK_FIRST_FRAME = 4;
+
+    private static final int MARK_COUNT = 5;
+
+    // Phases, each one is the time between two of the marks
+    static final int PHASE_PRELOAD = 0;
+    static final int PHASE_SPLASH_TO_MAIN = 1;
+    static final int PHASE_MAIN_TO_PANELS = 2;
+    static final int PHASE_PANELS_TO_FIRST_FRAME = 3;
+    static final int PHASE_TOTAL = 4;
+
+    static final int PHASE_COUNT = 5;
+
+    private static final int[] PHASE_START_MARKS = {
+            MARK_LAUNCH,
+            MARK_LAUNCH,
+            MARK_MAIN_CREATED,
+            MARK_PANELS_BUILT,
+            MARK_LAUNCH
+    };
+
+    private static final int[] PHASE_END_MARKS = {
+            MARK_PRELOAD_DONE,
+            MARK_MAIN_CREATED,
+            MARK_PANELS_BUILT,
+            MARK_FIRST_FRAME,
+            MARK_FIRST_FRAME
+    };
+
+    // How long (ms) each phase should take at most
+    static final long[] PHASE_BUDGETS_MS = {
+            150,
+            100,
+            150,
+            100,
+            400
+    };
+
+    private static final String[] PHASE_LABELS = {
+            "Preload",
+            "Splash -> Main",
+            "Main -> Panels",
+            "Panels -> First frame",
+            "Total"
+    };
+
+    // Marker for a mark that hasn't been hit yet
+    private static final long MARK_NONE = 0;
+
+    private static final AtomicLongArray sMarks = new AtomicLongArray(MARK_COUNT);
+
+
+    /**
+     * Start timing a new launch, forgetting about any previous one. Should only be called once per
+     * process, before anything else gets a chance to hit a mark.
+     */
+    static void startLaunch() {
+        reset();
+        mark(MARK_LAUNCH);
+    }
+
+
+    /**
+     * Forget all the marks
+     */
+    static void reset() {
+
+        for (int i = 0; i < MARK_COUNT; i++) {
+            sMarks.set(i, MARK_NONE);
+        }
+    }
+
+
+    /**
+     * Record the given mark as being hit now, unless it's already been hit for this launch
+     */
+    static void mark(int mark) {
+        mark(mark, SystemClock.elapsedRealtime());
+    }
+
+
+    /**
+     * Record the given mark as being hit at the given elapsedRealtime() (ms), unless it's already
+     * been hit for this launch
+     */
+    static void mark(int mark, long atMs) {
+        sMarks.compareAndSet(mark, MARK_NONE, atMs);
+    }
+
+
+    /**
+     * Return how long (ms) the given phase took, or -1 if it hasn't finished (or started)
+     */
+    static long getPhaseMs(int phase) {
+
+        long startedAt = sMarks.get(PHASE_START_MARKS[phase]);
+        long endedAt = sMarks.get(PHASE_END_MARKS[phase]);
+
+        return (startedAt != MARK_NONE && endedAt != MARK_NONE)
+                ? endedAt - startedAt
+                : -1;
+    }
+
+
+    /**
+     * Return whether the given phase finished inside its budget (false if it hasn't finished)
+     */
+    static boolean isWithinBudget(int phase) {
+
+        long phaseMs = getPhaseMs(phase);
+
+        return phaseMs >= 0 && phaseMs <= PHASE_BUDGETS_MS[phase];
+    }
+
+
+    /**
+     * Write out each phase and its budget, one line per phase
+     */
+    static String buildReport() {
+
+        StringBuilder report = new StringBuilder();
+
+        for (int i = 0; i < PHASE_COUNT; i++) {
+
+            if (i > 0) {
+                report.append('\n');
+            }
+
+            long phaseMs = getPhaseMs(i);
+
+            report.append(PHASE_LABELS[i]).append(": ");
+
+            if (phaseMs < 0) {
+                report.append('-');
+
+            } else {
+                report.append(
+                        String.format(
+                                Locale.US,
+                                "%d ms (budget %d ms%s)",
+                                phaseMs,
+                                PHASE_BUDGETS_MS[i],
+                                isWithinBudget(i) ? "" : ", OVER"
+                        )
+                );
+            }
+        }
+
+        return report.toString();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.app.Application;
+import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.justbnutz.dockorientationrotatorlator.core.RotationMapping;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Works out what the Configurator's current status labels should say, off the main thread.
+ *
+ * While the labels are being observed, every new MonitorSnapshot (and any explicit refresh) gets
+ * turned into a StatusLabels render model on the pipeline thread, which only goes out to the
+ * Fragment if it's actually different from the last one. So all the main thread does is set the
+ * text / icons that changed. Being a ViewModel, the last model survives configuration changes.
+ * - 2018/04/16
+ */
+public class StatusLabelsViewModel extends AndroidViewModel {
+
+    private final StatusLabelsLiveData mStatusLabels;
+
+
+    public StatusLabelsViewModel(@NonNull Application application) {
+        super(application);
+        mStatusLabels = new StatusLabelsLiveData(application);
+    }
+
+
+    LiveData<StatusLabels> getStatusLabels() {
+        return mStatusLabels;
+    }
+
+
+    /**
+     * Work the labels out again, e.g. in case something changed that nobody published
+     */
+    void refresh() {
+        mStatusLabels.requestUpdate();
+    }
+
+
+    /**
+     * Render model for the status labels, just the resources to show (0 for no icon)
+     */
+    static final class StatusLabels {
+
+        final boolean mMonitorEnabled;
+
+        final int mPowerText;
+        final int mPowerIcon;
+
+        final int mOrientationText;
+        final int mOrientationIcon;
+
+
+        StatusLabels(boolean monitorEnabled, int powerText, int powerIcon, int orientationText, int orientationIcon) {
+            mMonitorEnabled = monitorEnabled;
+            mPowerText = powerText;
+            mPowerIcon = powerIcon;
+            mOrientationText = orientationText;
+            mOrientationIcon = orientationIcon;
+        }
+
+
+        boolean hasSamePowerLabel(@Nullable StatusLabels other) {
+            return other != null
+                    && mPowerText == other.mPowerText
+                    && mPowerIcon == other.mPowerIcon;
+        }
+
+
+        boolean hasSameOrientationLabel(@Nullable StatusLabels other) {
+            return other != null
+                    && mOrientationText == other.mOrientationText
+                    && mOrientationIcon == other.mOrientationIcon;
+        }
+
+
+        boolean isSameAs(@Nullable StatusLabels other) {
+            return other != null
+                    && mMonitorEnabled == other.mMonitorEnabled
+                    && hasSamePowerLabel(other)
+                    && hasSameOrientationLabel(other);
+        }
+    }
+
+
+    /**
+     * Only listens for new snapshots while it's got an active observer
+     */
+    private static class StatusLabelsLiveData extends LiveData<StatusLabels> implements MonitorSnapshot.OnSnapshotChangedListener {
+
+        private final Application mApplication;
+
+        // Whether an update is already waiting on the pipeline thread (it'll pick up the latest snapshot)
+        private final AtomicBoolean mUpdatePending;
+
+        // The last model sent out (only touched on the pipeline thread)
+        private StatusLabels mLastLabels;
+
+
+        StatusLabelsLiveData(@NonNull Application application) {
+            mApplication = application;
+            mUpdatePending = new AtomicBoolean();
+        }
+
+
+        @Override
+        protected void onActive() {
+            MonitorSnapshot.subscribe(this);
+            requestUpdate();
+        }
+
+
+        @Override
+        protected void onInactive() {
+            MonitorSnapshot.unsubscribe(this);
+        }
+
+
+        @Override
+        public void onSnapshotChanged(@NonNull MonitorSnapshot snapshot) {
+            requestUpdate();
+        }
+
+
+        void requestUpdate() {
+
+            if (mUpdatePending.compareAndSet(false, true)) {
+                PipelineExecutor.getInstance().execute(mUpdateLabels);
+            }
+        }
+
+
+        private final Runnable mUpdateLabels = new Runnable() {
+            @Override
+            public void run() {
+                mUpdatePending.set(false);
+
+                boolean traced = TraceSections.begin(TraceSections.SECTION_UPDATE_STATUS_LABELS);
+
+                try {
+                    StatusLabels labels = buildStatusLabels();
+
+                    // Only bother the main thread if there's actually something different to show
+                    if (!labels.isSameAs(mLastLabels)) {
+                        mLastLabels = labels;
+                        postValue(labels);
+                    }
+
+                } finally {
+                    TraceSections.end(traced);
+                }
+            }
+        };
+
+
+        private StatusLabels buildStatusLabels() {
+
+            boolean monitoringPowerStatus = ProfileStore.getInstance(mApplication).isMonitorEnabled();
+
+            // Everything else comes from the published snapshot, only looking anything up if it's missing
+            MonitorSnapshot snapshot = MonitorSnapshot.getPopulated(mApplication, monitoringPowerStatus);
+
+            int powerText = R.string.lbl_status_blank;
+            int powerIcon = 0;
+
+            int orientationText = R.string.lbl_status_blank;
+            int orientationIcon = 0;
+
+            if (monitoringPowerStatus) {
+
+                // Fetch the current Power Status (left blank until it's actually known)
+                if (snapshot.hasPowerStatus()) {
+                    int powerStatus = snapshot.getPowerStatus();
+
+                    powerText = RotationModeResources.getPowerStatusLabel(powerStatus);
+                    powerIcon = RotationModeResources.getPowerStatusIcon(powerStatus);
+                }
+
+                // Set the current Rotation-Lock setting
+                if (snapshot.getAutoRotate() == 1) {
+                    orientationText = RotationModeResources.getModeLabel(RotationProfile.MODE_AUTO_ROTATE);
+                    orientationIcon = RotationModeResources.getModeStatusIcon(RotationProfile.MODE_AUTO_ROTATE);
+
+                } else {
+                    // If Auto-Rotate is disabled, then will need to work out the current User Rotation setting relative to the natural orientation
+                    int rotationMode = RotationMapping.getRotationMode(
+                            snapshot.getUserRotation(),
+                            snapshot.getNaturalOrientation()
+                    );
+
+                    // Only set the label if we have a baseline orientation to check against
+                    if (rotationMode != RotationProfile.MODE_NO_CHANGE) {
+                        orientationText = RotationModeResources.getModeLabel(rotationMode);
+                        orientationIcon = RotationModeResources.getModeStatusIcon(rotationMode);
+                    }
+                }
+            }
+
+            return new StatusLabels(monitoringPowerStatus, powerText, powerIcon, orientationText, orientationIcon);
+        }
+    }
+}
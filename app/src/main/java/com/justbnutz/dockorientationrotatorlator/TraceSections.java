@@ -0,0 +1,97 @@
+/*
+ * Created by Brian Lau on 2018-04-14
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import android.os.Trace;
+
+import com.justbnutz.dockorientationrotatorlator.core.TraceRecorder;
+
+
+/**
+ * Optional trace sections around the receiver -> decision -> write -> observer pipeline, so the app's
+ * work can be lined up against the system's rotation work in a captured trace (systrace / Perfetto).
+ *
+ * Off by default (toggled from the Test Panel menu), in which case each call is a single branch.
+ * Everything that goes to android.os.Trace is also mirrored into a TraceRecorder, which also holds
+ * the on / off switch.
+ *
+ * Usage, so the section stays balanced even if tracing gets toggled halfway through:
+ *
+ *   boolean traced = TraceSections.begin(TraceSections.SECTION_...);
+ *   try { ... } finally { TraceSections.end(traced); }
+ *
+ * Async sections (ones that end on another thread) only go to the recorder, as the public Trace API
+ * we compile against doesn't have them.
+ * - 2018/04/14
+ */
+class TraceSections {
+
+    // Section names (trace section names are limited to 127 chars)
+    static final String SECTION_CHECK_SET_DEVICE_ROTATION = "Rotatorlator.checkSetDeviceRotation";
+    static final String SECTION_GET_CURRENT_POWER_STATUS = "Rotatorlator.getCurrentPowerStatus";
+    static final String SECTION_SETTINGS_WRITE = "Rotatorlator.settingsWrite";
+    static final String SECTION_UPDATE_NOTIFICATION = "Rotatorlator.updateNotification";
+    static final String SECTION_UPDATE_STATUS_LABELS = "Rotatorlator.updateCurrentStatusLabels";
+
+    // Async: a Settings write until the observer sees it (cookie is the WritePlan.SETTING_*), and a
+    // rotation request until its transition is confirmed (cookie is the Actuator generation)
+    static final String ASYNC_SETTING_OBSERVED = "Rotatorlator.settingObserved";
+    static final String ASYNC_ROTATION_CONFIRMED = "Rotatorlator.rotationConfirmed";
+
+    private static final int RECORDER_CAPACITY = 1024;
+
+    private static final TraceRecorder sRecorder = new TraceRecorder(RECORDER_CAPACITY, false);
+
+
+    static boolean isEnabled() {
+        return sRecorder.isEnabled();
+    }
+
+
+    static void setEnabled(boolean enabled) {
+        sRecorder.setEnabled(enabled);
+    }
+
+
+    static TraceRecorder getRecorder() {
+        return sRecorder;
+    }
+
+
+    /**
+     * Begin a section on the current thread, returns whether it was actually begun (pass that to end())
+     */
+    static boolean begin(String sectionName) {
+
+        if (!sRecorder.begin(sectionName)) {
+            return false;
+        }
+
+        Trace.beginSection(sectionName);
+        return true;
+    }
+
+
+    static void end(boolean traced) {
+
+        if (traced) {
+            Trace.endSection();
+            sRecorder.end();
+        }
+    }
+
+
+    static void beginAsync(String sectionName, int cookie) {
+        sRecorder.beginAsync(sectionName, cookie);
+    }
+
+
+    static void endAsync(String sectionName, int cookie) {
+        sRecorder.endAsync(sectionName, cookie);
+    }
+}
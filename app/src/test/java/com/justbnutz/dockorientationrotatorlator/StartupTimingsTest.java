@@ -0,0 +1,95 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Phase maths for the StartupTimings (which marks each phase spans, the budget comparison and the
+ * first mark winning). The marks are all given made-up times, so this doesn't measure an actual
+ * launch and won't catch a slow one, that's what the Test Panel's report is for.
+ * - 2018/04/16
+ */
+public class StartupTimingsTest {
+
+    private static final long LAUNCH_AT = 1000;
+
+
+    @Before
+    public void setUp() {
+        StartupTimings.reset();
+        StartupTimings.mark(StartupTimings.MARK_LAUNCH, LAUNCH_AT);
+    }
+
+
+    @Test
+    public void unfinishedPhase_hasNoTime() {
+        assertEquals(-1, StartupTimings.getPhaseMs(StartupTimings.PHASE_PRELOAD));
+        assertEquals(-1, StartupTimings.getPhaseMs(StartupTimings.PHASE_TOTAL));
+
+        assertFalse(StartupTimings.isWithinBudget(StartupTimings.PHASE_PRELOAD));
+    }
+
+
+    @Test
+    public void phases_areMeasuredBetweenTheirMarks() {
+        StartupTimings.mark(StartupTimings.MARK_PRELOAD_DONE, LAUNCH_AT + 40);
+        StartupTimings.mark(StartupTimings.MARK_MAIN_CREATED, LAUNCH_AT + 60);
+        StartupTimings.mark(StartupTimings.MARK_PANELS_BUILT, LAUNCH_AT + 150);
+        StartupTimings.mark(StartupTimings.MARK_FIRST_FRAME, LAUNCH_AT + 200);
+
+        assertEquals(40, StartupTimings.getPhaseMs(StartupTimings.PHASE_PRELOAD));
+        assertEquals(60, StartupTimings.getPhaseMs(StartupTimings.PHASE_SPLASH_TO_MAIN));
+        assertEquals(90, StartupTimings.getPhaseMs(StartupTimings.PHASE_MAIN_TO_PANELS));
+        assertEquals(50, StartupTimings.getPhaseMs(StartupTimings.PHASE_PANELS_TO_FIRST_FRAME));
+        assertEquals(200, StartupTimings.getPhaseMs(StartupTimings.PHASE_TOTAL));
+    }
+
+
+    @Test
+    public void phaseOnItsBudget_isWithin() {
+        long budget = StartupTimings.PHASE_BUDGETS_MS[StartupTimings.PHASE_PRELOAD];
+
+        StartupTimings.mark(StartupTimings.MARK_PRELOAD_DONE, LAUNCH_AT + budget);
+
+        assertTrue(StartupTimings.isWithinBudget(StartupTimings.PHASE_PRELOAD));
+    }
+
+
+    @Test
+    public void phaseOverItsBudget_isNotWithin() {
+        long budget = StartupTimings.PHASE_BUDGETS_MS[StartupTimings.PHASE_PRELOAD];
+
+        StartupTimings.mark(StartupTimings.MARK_PRELOAD_DONE, LAUNCH_AT + budget + 1);
+
+        assertFalse(StartupTimings.isWithinBudget(StartupTimings.PHASE_PRELOAD));
+    }
+
+
+    @Test
+    public void repeatedMark_keepsTheFirstTime() {
+        StartupTimings.mark(StartupTimings.MARK_PRELOAD_DONE, LAUNCH_AT + 30);
+
+        // e.g. the splash asking for the preload again once it's already done
+        StartupTimings.mark(StartupTimings.MARK_PRELOAD_DONE, LAUNCH_AT + 500);
+
+        assertEquals(30, StartupTimings.getPhaseMs(StartupTimings.PHASE_PRELOAD));
+    }
+
+
+    @Test
+    public void budgets_coverEveryPhase() {
+        assertEquals(StartupTimings.PHASE_COUNT, StartupTimings.PHASE_BUDGETS_MS.length);
+    }
+}
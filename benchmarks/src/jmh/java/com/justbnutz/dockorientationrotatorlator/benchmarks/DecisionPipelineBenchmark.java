@@ -0,0 +1,141 @@
+/*
+ * Created by Brian Lau on 2018-04-11
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.benchmarks;
+
+import com.justbnutz.dockorientationrotatorlator.core.RotationEngine;
+import com.justbnutz.dockorientationrotatorlator.core.RotationMapping;
+import com.justbnutz.dockorientationrotatorlator.core.WritePlan;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * End-to-end decisions for a synthetic stream of port events: feed the event in, step the engine
+ * until it has a decision (answering its lookups from the stream) and plan the resulting writes.
+ *
+ * Reported as decisions per second.
+ * - 2018/04/11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DecisionPipelineBenchmark {
+
+    private RotationEngine mEngine;
+    private WritePlan mPlan;
+
+    private int[] mEventTypes;
+    private int[] mPlugStates;
+    private int[] mDockStates;
+    private int mIndex;
+
+    // Stand-in for the current rotation Settings values, updated as each plan is "applied"
+    private int mCurrentAutoRotate;
+    private int mCurrentUserRotation;
+
+
+    @Setup
+    public void setUp() {
+        mEngine = new RotationEngine();
+        mEngine.setProfile(SyntheticEvents.profile());
+
+        // The natural orientation is cached, so like ReceiverPortStatus the engine has it from the start
+        // (it only ever asks for it before the cache has loaded)
+        mEngine.setNaturalOrientation(RotationMapping.ORIENTATION_PORTRAIT);
+
+        mPlan = new WritePlan();
+
+        mEventTypes = SyntheticEvents.eventTypes();
+        mPlugStates = SyntheticEvents.plugStates();
+        mDockStates = SyntheticEvents.dockStates();
+
+        mCurrentAutoRotate = 1;
+        mCurrentUserRotation = RotationMapping.ROTATION_0;
+    }
+
+
+    @Benchmark
+    public int decide() {
+        int i = mIndex;
+        mIndex = (i + 1) & SyntheticEvents.MASK;
+
+        // Same decoding as PowerSnapshot in the app
+        switch (mEventTypes[i]) {
+            case SyntheticEvents.EVENT_DOCK:
+                mEngine.getPowerState().onDockState(mDockStates[i]);
+                break;
+
+            case SyntheticEvents.EVENT_BATTERY_CHANGED:
+                mEngine.getPowerState().onPlugState(mPlugStates[i]);
+                break;
+
+            case SyntheticEvents.EVENT_POWER_CONNECTED:
+                mEngine.getPowerState().onPowerConnected();
+                break;
+
+            default:
+                mEngine.getPowerState().onPowerDisconnected();
+                break;
+        }
+
+        int decision = mEngine.decide();
+
+        while (decision == RotationEngine.DECISION_NEEDS_PLUG_STATE
+                || decision == RotationEngine.DECISION_NEEDS_DOCK_STATE
+                || decision == RotationEngine.DECISION_NEEDS_ORIENTATION) {
+
+            switch (decision) {
+                case RotationEngine.DECISION_NEEDS_PLUG_STATE:
+                    mEngine.getPowerState().onPlugState(mPlugStates[i]);
+                    break;
+
+                case RotationEngine.DECISION_NEEDS_DOCK_STATE:
+                    mEngine.getPowerState().onDockState(mDockStates[i]);
+                    break;
+
+                default:
+                    mEngine.setNaturalOrientation(RotationMapping.ORIENTATION_PORTRAIT);
+                    break;
+            }
+
+            decision = mEngine.decide();
+        }
+
+        if (decision == RotationEngine.DECISION_ROTATE) {
+            RotationEngine.planWrites(
+                    mCurrentAutoRotate,
+                    mCurrentUserRotation,
+                    mEngine.getTargetAutoRotate(),
+                    mEngine.getTargetUserRotation(),
+                    0,
+                    mPlan
+            );
+
+            for (int step = 0; step < mPlan.getStepCount(); step++) {
+                if (mPlan.getSetting(step) == WritePlan.SETTING_ACCELEROMETER_ROTATION) {
+                    mCurrentAutoRotate = mPlan.getValue(step);
+
+                } else {
+                    mCurrentUserRotation = mPlan.getValue(step);
+                }
+            }
+
+            return mPlan.getStepCount();
+        }
+
+        return decision;
+    }
+}
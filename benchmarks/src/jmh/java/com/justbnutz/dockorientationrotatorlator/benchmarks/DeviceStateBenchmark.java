@@ -0,0 +1,82 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.benchmarks;
+
+import com.justbnutz.dockorientationrotatorlator.core.DeviceState;
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Packing the decision state into a DeviceState long, and diffing it against the previous one.
+ * - 2018/04/16
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeviceStateBenchmark {
+
+    private int[] mPlugStates;
+    private int[] mDockStates;
+    private int mIndex;
+
+    private long mPreviousState;
+
+
+    @Setup
+    public void setUp() {
+        mPlugStates = SyntheticEvents.plugStates();
+        mDockStates = SyntheticEvents.dockStates();
+        mPreviousState = DeviceState.NONE;
+    }
+
+
+    @Benchmark
+    public long pack() {
+        int i = nextIndex();
+
+        return DeviceState.pack(
+                PowerStateTracker.resolvePowerStatus(mPlugStates[i], mDockStates[i]),
+                mPlugStates[i],
+                mDockStates[i],
+                i & 1,
+                i & 3,
+                i % 6
+        );
+    }
+
+
+    /**
+     * Pack, then check whether the Power Status or Rotation Mode moved since the last one
+     */
+    @Benchmark
+    public boolean packAndDiff() {
+        long currentState = pack();
+        long diff = DeviceState.diff(mPreviousState, currentState);
+
+        mPreviousState = currentState;
+
+        return DeviceState.hasChanged(diff, DeviceState.FIELD_POWER_STATUS | DeviceState.FIELD_ROTATION_MODE);
+    }
+
+
+    private int nextIndex() {
+        int i = mIndex;
+        mIndex = (i + 1) & SyntheticEvents.MASK;
+        return i;
+    }
+}
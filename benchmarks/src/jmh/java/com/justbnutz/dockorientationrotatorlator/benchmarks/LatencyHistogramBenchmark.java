@@ -0,0 +1,66 @@
+/*
+ * Created by Brian Lau on 2018-04-14
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-14
+ */
+
+package com.justbnutz.dockorientationrotatorlator.benchmarks;
+
+import com.justbnutz.dockorientationrotatorlator.core.LatencyHistogram;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Recording a latency into the histogram, this happens on every stage of every transition so it
+ * should stay in the tens of nanoseconds (and not allocate, check the gc profiler output).
+ * - 2018/04/14
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LatencyHistogramBenchmark {
+
+    private LatencyHistogram mHistogram;
+    private long[] mLatencies;
+    private int mIndex;
+
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SyntheticEvents.SEED);
+
+        mHistogram = new LatencyHistogram();
+        mLatencies = new long[SyntheticEvents.SIZE];
+
+        // Spread across microseconds to seconds
+        for (int i = 0; i < SyntheticEvents.SIZE; i++) {
+            mLatencies[i] = (long) Math.pow(10, random.nextDouble() * 6);
+        }
+    }
+
+
+    @Benchmark
+    public void record() {
+        int i = mIndex;
+        mIndex = (i + 1) & SyntheticEvents.MASK;
+
+        mHistogram.record(mLatencies[i]);
+    }
+
+
+    @Benchmark
+    public long getPercentile() {
+        return mHistogram.getPercentile(99);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Created by Brian Lau on 2018-04-11
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-11
+ */
+
+package com.justbnutz.dockorientationrotatorlator.benchmarks;
+
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Decoding the dock / battery extras off an event into a Power Status.
+ * - 2018/04/11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PowerStatusDecodeBenchmark {
+
+    private PowerStateTracker mTracker;
+
+    private int[] mPlugStates;
+    private int[] mDockStates;
+    private int mIndex;
+
+
+    @Setup
+    public void setUp() {
+        mTracker = new PowerStateTracker();
+        mPlugStates = SyntheticEvents.plugStates();
+        mDockStates = SyntheticEvents.dockStates();
+    }
+
+
+    /**
+     * Just the static mapping of EXTRA_PLUGGED / EXTRA_DOCK_STATE values to a Power Status
+     */
+    @Benchmark
+    public int resolvePowerStatus() {
+        int i = nextIndex();
+        return PowerStateTracker.resolvePowerStatus(mPlugStates[i], mDockStates[i]);
+    }
+
+
+    /**
+     * Feeding a dock and battery event into the tracker, then reading the Power Status back out
+     */
+    @Benchmark
+    public int decodeIntoTracker() {
+        int i = nextIndex();
+
+        mTracker.onDockState(mDockStates[i]);
+        mTracker.onPlugState(mPlugStates[i]);
+
+        return mTracker.getPowerStatus();
+    }
+
+
+    private int nextIndex() {
+        int i = mIndex;
+        mIndex = (i + 1) & SyntheticEvents.MASK;
+        return i;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Created by Brian Lau on 2018-04-11
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-11
+ */
+
+package com.justbnutz.dockorientationrotatorlator.benchmarks;
+
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Resolving a Rotation Mode out of a compiled Rotation Profile.
+ * - 2018/04/11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RotationModeBenchmark {
+
+    private RotationProfile mProfile;
+
+    private int[] mPowerStatuses;
+    private int mIndex;
+
+
+    @Setup
+    public void setUp() {
+        mProfile = SyntheticEvents.profile();
+        mPowerStatuses = new int[SyntheticEvents.SIZE];
+
+        int[] plugStates = SyntheticEvents.plugStates();
+        int[] dockStates = SyntheticEvents.dockStates();
+
+        for (int i = 0; i < mPowerStatuses.length; i++) {
+            mPowerStatuses[i] = PowerStateTracker.resolvePowerStatus(plugStates[i], dockStates[i]);
+        }
+    }
+
+
+    @Benchmark
+    public int getRotationMode() {
+        int i = mIndex;
+        mIndex = (i + 1) & SyntheticEvents.MASK;
+
+        return mProfile.getRotationMode(mPowerStatuses[i]);
+    }
+}
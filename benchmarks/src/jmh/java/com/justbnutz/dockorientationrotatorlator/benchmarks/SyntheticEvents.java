@@ -0,0 +1,97 @@
+/*
+ * Created by Brian Lau on 2018-04-11
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-11
+ */
+
+package com.justbnutz.dockorientationrotatorlator.benchmarks;
+
+import com.justbnutz.dockorientationrotatorlator.core.PowerStateTracker;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+import java.util.Random;
+
+
+/**
+ * Fixed-seed synthetic port event stream shared by the benchmarks, so every run sees the same mix.
+ * - 2018/04/11
+ */
+final class SyntheticEvents {
+
+    static final long SEED = 0x526f7461L;
+
+    // Power of two, so the benchmarks can wrap around the stream with a mask
+    static final int SIZE = 1024;
+    static final int MASK = SIZE - 1;
+
+    static final int EVENT_DOCK = 0;
+    static final int EVENT_BATTERY_CHANGED = 1;
+    static final int EVENT_POWER_CONNECTED = 2;
+    static final int EVENT_POWER_DISCONNECTED = 3;
+
+    private static final int[] PLUG_STATES = {
+            PowerStateTracker.PLUGGED_NONE,
+            PowerStateTracker.PLUGGED_AC,
+            PowerStateTracker.PLUGGED_USB,
+            PowerStateTracker.PLUGGED_WIRELESS
+    };
+
+    // EXTRA_DOCK_STATE values: undocked, desk, car, le desk, he desk
+    private static final int[] DOCK_STATES = {0, 1, 2, 3, 4};
+
+
+    private SyntheticEvents() {}
+
+
+    static int[] eventTypes() {
+        Random random = new Random(SEED);
+        int[] eventTypes = new int[SIZE];
+
+        for (int i = 0; i < SIZE; i++) {
+            eventTypes[i] = random.nextInt(4);
+        }
+
+        return eventTypes;
+    }
+
+
+    static int[] plugStates() {
+        Random random = new Random(SEED + 1);
+        int[] plugStates = new int[SIZE];
+
+        for (int i = 0; i < SIZE; i++) {
+            plugStates[i] = PLUG_STATES[random.nextInt(PLUG_STATES.length)];
+        }
+
+        return plugStates;
+    }
+
+
+    static int[] dockStates() {
+        Random random = new Random(SEED + 2);
+        int[] dockStates = new int[SIZE];
+
+        for (int i = 0; i < SIZE; i++) {
+            // Mostly undocked, like the real world
+            dockStates[i] = (random.nextInt(4) == 0)
+                    ? DOCK_STATES[1 + random.nextInt(DOCK_STATES.length - 1)]
+                    : DOCK_STATES[0];
+        }
+
+        return dockStates;
+    }
+
+
+    /**
+     * A profile with a different Rotation Mode for each Power Status, so every path gets exercised
+     */
+    static RotationProfile profile() {
+        int[] rotationModes = new int[PowerStateTracker.POWER_STATUS_COUNT];
+        rotationModes[PowerStateTracker.POWER_STATUS_DISCONNECTED] = RotationProfile.MODE_AUTO_ROTATE;
+        rotationModes[PowerStateTracker.POWER_STATUS_PLUGGED_IN] = RotationProfile.MODE_LANDSCAPE;
+        rotationModes[PowerStateTracker.POWER_STATUS_WIRELESSLY_CHARGING] = RotationProfile.MODE_PORTRAIT_INVERTED;
+
+        return new RotationProfile(rotationModes, true);
+    }
+}
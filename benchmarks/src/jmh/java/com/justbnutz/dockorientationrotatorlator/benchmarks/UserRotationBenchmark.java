@@ -0,0 +1,62 @@
+/*
+ * Created by Brian Lau on 2018-04-11
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-11
+ */
+
+package com.justbnutz.dockorientationrotatorlator.benchmarks;
+
+import com.justbnutz.dockorientationrotatorlator.core.RotationMapping;
+import com.justbnutz.dockorientationrotatorlator.core.RotationProfile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Mapping a Rotation Mode plus natural orientation to a USER_ROTATION value.
+ * - 2018/04/11
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserRotationBenchmark {
+
+    private int[] mRotationModes;
+    private int[] mNaturalOrientations;
+    private int mIndex;
+
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SyntheticEvents.SEED);
+
+        mRotationModes = new int[SyntheticEvents.SIZE];
+        mNaturalOrientations = new int[SyntheticEvents.SIZE];
+
+        for (int i = 0; i < SyntheticEvents.SIZE; i++) {
+            mRotationModes[i] = random.nextInt(RotationProfile.MODE_COUNT);
+            mNaturalOrientations[i] = random.nextBoolean()
+                    ? RotationMapping.ORIENTATION_PORTRAIT
+                    : RotationMapping.ORIENTATION_LANDSCAPE;
+        }
+    }
+
+
+    @Benchmark
+    public int getUserRotation() {
+        int i = mIndex;
+        mIndex = (i + 1) & SyntheticEvents.MASK;
+
+        return RotationMapping.getUserRotation(mRotationModes[i], mNaturalOrientations[i]);
+    }
+}
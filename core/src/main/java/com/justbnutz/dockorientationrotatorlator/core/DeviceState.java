@@ -0,0 +1,268 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+
+/**
+ * The whole device state the decision is made from (and aiming for), packed into a single long so it
+ * can be compared, cached and handed between components without allocating anything.
+ *
+ * Bit layout, from the bottom:
+ *
+ *   [0-1]   Power Status
+ *   [2-5]   Plug state (BatteryManager.EXTRA_PLUGGED)
+ *   [6-9]   Dock state (Intent.EXTRA_DOCK_STATE)
+ *   [10-11] Auto-Rotate (Settings.System.ACCELEROMETER_ROTATION, 0 / 1)
+ *   [12-14] User Rotation (Surface.ROTATION_*)
+ *   [15-17] Rotation Mode
+ *
+ * A field that's all ones is "unknown" (STATE_UNKNOWN / ROTATION_NONE going in and coming back out).
+ * - 2018/04/16
+ */
+public final class DeviceState {
+
+    // No state at all (every field unknown, and not a valid Power Status either)
+    public static final long NONE = -1L;
+
+    private static final int SHIFT_POWER_STATUS = 0;
+    private static final int SHIFT_PLUG_STATE = 2;
+    private static final int SHIFT_DOCK_STATE = 6;
+    private static final int SHIFT_AUTO_ROTATE = 10;
+    private static final int SHIFT_USER_ROTATION = 12;
+    private static final int SHIFT_ROTATION_MODE = 15;
+
+    private static final int WIDTH_POWER_STATUS = 2;
+    private static final int WIDTH_PLUG_STATE = 4;
+    private static final int WIDTH_DOCK_STATE = 4;
+    private static final int WIDTH_AUTO_ROTATE = 2;
+    private static final int WIDTH_USER_ROTATION = 3;
+    private static final int WIDTH_ROTATION_MODE = 3;
+
+    // Masks for each field in place, for checking the result of diff()
+    public static final long FIELD_POWER_STATUS = fieldMask(SHIFT_POWER_STATUS, WIDTH_POWER_STATUS);
+    public static final long FIELD_PLUG_STATE = fieldMask(SHIFT_PLUG_STATE, WIDTH_PLUG_STATE);
+    public static final long FIELD_DOCK_STATE = fieldMask(SHIFT_DOCK_STATE, WIDTH_DOCK_STATE);
+    public static final long FIELD_AUTO_ROTATE = fieldMask(SHIFT_AUTO_ROTATE, WIDTH_AUTO_ROTATE);
+    public static final long FIELD_USER_ROTATION = fieldMask(SHIFT_USER_ROTATION, WIDTH_USER_ROTATION);
+    public static final long FIELD_ROTATION_MODE = fieldMask(SHIFT_ROTATION_MODE, WIDTH_ROTATION_MODE);
+
+    // Value stored in a field when it's unknown
+    private static final int FIELD_UNKNOWN = -1;
+
+
+    private DeviceState() {}
+
+
+    // region ================== PACKING ==================
+    // ====== ================== ======= ==================
+
+
+    /**
+     * Pack the given values into a state. Plug / dock / Auto-Rotate can be STATE_UNKNOWN and User
+     * Rotation can be ROTATION_NONE.
+     */
+    public static long pack(int powerStatus, int plugState, int dockState,
+                            int autoRotate, int userRotation, int rotationMode) {
+
+        long state = 0L;
+
+        state = withPowerStatus(state, powerStatus);
+        state = withPlugState(state, plugState);
+        state = withDockState(state, dockState);
+        state = withAutoRotate(state, autoRotate);
+        state = withUserRotation(state, userRotation);
+        state = withRotationMode(state, rotationMode);
+
+        return state;
+    }
+
+
+    public static long withPowerStatus(long state, int powerStatus) {
+        return put(state, SHIFT_POWER_STATUS, WIDTH_POWER_STATUS, powerStatus);
+    }
+
+
+    public static long withPlugState(long state, int plugState) {
+        return put(state, SHIFT_PLUG_STATE, WIDTH_PLUG_STATE, plugState);
+    }
+
+
+    public static long withDockState(long state, int dockState) {
+        return put(state, SHIFT_DOCK_STATE, WIDTH_DOCK_STATE, dockState);
+    }
+
+
+    public static long withAutoRotate(long state, int autoRotate) {
+        return put(state, SHIFT_AUTO_ROTATE, WIDTH_AUTO_ROTATE, autoRotate);
+    }
+
+
+    public static long withUserRotation(long state, int userRotation) {
+        return put(state, SHIFT_USER_ROTATION, WIDTH_USER_ROTATION, userRotation);
+    }
+
+
+    public static long withRotationMode(long state, int rotationMode) {
+        return put(state, SHIFT_ROTATION_MODE, WIDTH_ROTATION_MODE, rotationMode);
+    }
+
+    // endregion
+
+
+    // region ================== ACCESSORS ==================
+    // ====== ================== ========= ==================
+
+
+    /**
+     * Return whether the given field (a single FIELD_* mask) holds a known value
+     */
+    public static boolean isKnown(long state, long fieldMask) {
+        return (state & fieldMask) != fieldMask;
+    }
+
+
+    /**
+     * Return the Power Status, or POWER_STATUS_UNKNOWN if the state doesn't have a valid one (an
+     * unknown Power Status is never passed off as a real one)
+     */
+    public static int getPowerStatus(long state) {
+
+        int powerStatus = get(state, SHIFT_POWER_STATUS, WIDTH_POWER_STATUS);
+
+        return (powerStatus >= 0 && powerStatus < PowerStateTracker.POWER_STATUS_COUNT)
+                ? powerStatus
+                : PowerStateTracker.POWER_STATUS_UNKNOWN;
+    }
+
+
+    public static int getPlugState(long state) {
+        return orUnknown(get(state, SHIFT_PLUG_STATE, WIDTH_PLUG_STATE), PowerStateTracker.STATE_UNKNOWN);
+    }
+
+
+    public static int getDockState(long state) {
+        return orUnknown(get(state, SHIFT_DOCK_STATE, WIDTH_DOCK_STATE), PowerStateTracker.STATE_UNKNOWN);
+    }
+
+
+    public static int getAutoRotate(long state) {
+        return orUnknown(get(state, SHIFT_AUTO_ROTATE, WIDTH_AUTO_ROTATE), PowerStateTracker.STATE_UNKNOWN);
+    }
+
+
+    public static int getUserRotation(long state) {
+        return orUnknown(get(state, SHIFT_USER_ROTATION, WIDTH_USER_ROTATION), RotationMapping.ROTATION_NONE);
+    }
+
+
+    /**
+     * Return the Rotation Mode (sanitised, so MODE_NO_CHANGE if it wasn't known)
+     */
+    public static int getRotationMode(long state) {
+        return RotationProfile.sanitiseMode(get(state, SHIFT_ROTATION_MODE, WIDTH_ROTATION_MODE));
+    }
+
+    // endregion
+
+
+    // region ================== DIFFS ==================
+    // ====== ================== ===== ==================
+
+
+    /**
+     * Return the bits that differ between the two states, check it with hasChanged() and the FIELD_* masks
+     */
+    public static long diff(long previousState, long currentState) {
+        return previousState ^ currentState;
+    }
+
+
+    /**
+     * Return whether any of the given FIELD_* masks (OR'd together) changed in the given diff
+     */
+    public static boolean hasChanged(long diff, long fieldMasks) {
+        return (diff & fieldMasks) != 0;
+    }
+
+
+    /**
+     * Return whether the two states are the same apart from the given FIELD_* masks
+     */
+    public static boolean equalsIgnoring(long previousState, long currentState, long ignoredFieldMasks) {
+        return (diff(previousState, currentState) & ~ignoredFieldMasks) == 0;
+    }
+
+
+    /**
+     * Readable version of the state, for logs and diagnostics
+     */
+    public static String toString(long state) {
+
+        if (state == NONE) {
+            return "none";
+        }
+
+        return "power=" + getPowerStatus(state)
+                + " plug=" + get(state, SHIFT_PLUG_STATE, WIDTH_PLUG_STATE)
+                + " dock=" + get(state, SHIFT_DOCK_STATE, WIDTH_DOCK_STATE)
+                + " autoRotate=" + get(state, SHIFT_AUTO_ROTATE, WIDTH_AUTO_ROTATE)
+                + " userRotation=" + get(state, SHIFT_USER_ROTATION, WIDTH_USER_ROTATION)
+                + " mode=" + getRotationMode(state);
+    }
+
+    // endregion
+
+
+    // region ================== BIT OPS ==================
+    // ====== ================== ======= ==================
+
+
+    private static long fieldMask(int shift, int width) {
+        return ((1L << width) - 1) << shift;
+    }
+
+
+    /**
+     * Store the value in the given field, anything that doesn't fit (including the unknown markers,
+     * which are all negative) is stored as unknown
+     */
+    private static long put(long state, int shift, int width, int value) {
+
+        long valueMask = (1L << width) - 1;
+
+        // All ones is reserved for unknown, so the largest value that fits is one less than that
+        long fieldValue = (value >= 0 && value < valueMask)
+                ? value
+                : valueMask;
+
+        return (state & ~(valueMask << shift)) | (fieldValue << shift);
+    }
+
+
+    /**
+     * Return the value in the given field, or FIELD_UNKNOWN
+     */
+    private static int get(long state, int shift, int width) {
+
+        long valueMask = (1L << width) - 1;
+        int fieldValue = (int) ((state >>> shift) & valueMask);
+
+        return (fieldValue == valueMask)
+                ? FIELD_UNKNOWN
+                : fieldValue;
+    }
+
+
+    private static int orUnknown(int fieldValue, int unknownValue) {
+        return (fieldValue == FIELD_UNKNOWN)
+                ? unknownValue
+                : fieldValue;
+    }
+
+    // endregion
+}
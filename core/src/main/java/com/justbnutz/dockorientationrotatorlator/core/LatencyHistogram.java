@@ -0,0 +1,166 @@
+/*
+ * Created by Brian Lau on 2018-04-14
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-14
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Log-bucketed histogram of latencies (in microseconds).
+ *
+ * Each power of two is split into SUB_BUCKET_COUNT linear sub-buckets, so any value lands in a bucket
+ * no more than 1/SUB_BUCKET_COUNT (12.5%) wider than itself. Values below SUB_BUCKET_COUNT get a bucket
+ * each, and anything past the top bucket is clamped into it.
+ *
+ * Recording is just a bit of shifting plus an atomic increment, so it doesn't allocate and can be
+ * called from any thread. Percentiles are read off a (slightly racy) walk over the counts.
+ * - 2018/04/14
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // Largest power of two we keep apart, 2^35 us is about 9.5 hours which is plenty
+    private static final int MAX_EXPONENT = 35;
+
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray mCounts;
+    private final AtomicLong mTotalCount;
+    private final AtomicLong mMaxValue;
+
+
+    public LatencyHistogram() {
+        mCounts = new AtomicLongArray(BUCKET_COUNT);
+        mTotalCount = new AtomicLong();
+        mMaxValue = new AtomicLong();
+    }
+
+
+    /**
+     * Add a latency (in microseconds) to the histogram, negative values are counted as 0
+     */
+    public void record(long valueUs) {
+
+        if (valueUs < 0) {
+            valueUs = 0;
+        }
+
+        mCounts.incrementAndGet(getBucketIndex(valueUs));
+        mTotalCount.incrementAndGet();
+
+        long currentMax = mMaxValue.get();
+
+        while (valueUs > currentMax && !mMaxValue.compareAndSet(currentMax, valueUs)) {
+            currentMax = mMaxValue.get();
+        }
+    }
+
+
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+
+    public long getMaxValue() {
+        return mMaxValue.get();
+    }
+
+
+    /**
+     * Return the value (in microseconds) at the given percentile (0 - 100), or 0 if nothing has been
+     * recorded. This is the midpoint of whichever bucket the percentile falls in (capped at the max).
+     */
+    public long getPercentile(double percentile) {
+
+        long totalCount = mTotalCount.get();
+
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        // Which recorded value (1-based, in sorted order) we're after
+        long targetRank = Math.max(1, (long) Math.ceil((percentile / 100.0) * totalCount));
+        long runningCount = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            runningCount += mCounts.get(i);
+
+            if (runningCount >= targetRank) {
+                return Math.min(getBucketMidpoint(i), mMaxValue.get());
+            }
+        }
+
+        // Counts were still being added to while we walked them
+        return mMaxValue.get();
+    }
+
+
+    public void reset() {
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+
+        mTotalCount.set(0);
+        mMaxValue.set(0);
+    }
+
+
+    // region ================== BUCKET MATHS ==================
+    // ====== ================== ============ ==================
+
+
+    static int getBucketIndex(long value) {
+
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        // The top SUB_BUCKET_BITS + 1 bits of the value, minus the leading one, pick the sub-bucket
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+
+        return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT) + subBucket;
+    }
+
+
+    static long getBucketLowerBound(int bucketIndex) {
+
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+
+        int exponent = (bucketIndex / SUB_BUCKET_COUNT) + SUB_BUCKET_BITS - 1;
+        int subBucket = bucketIndex % SUB_BUCKET_COUNT;
+
+        return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+
+    static long getBucketMidpoint(int bucketIndex) {
+
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+
+        int exponent = (bucketIndex / SUB_BUCKET_COUNT) + SUB_BUCKET_BITS - 1;
+        long bucketWidth = 1L << (exponent - SUB_BUCKET_BITS);
+
+        return getBucketLowerBound(bucketIndex) + (bucketWidth / 2);
+    }
+
+    // endregion
+}
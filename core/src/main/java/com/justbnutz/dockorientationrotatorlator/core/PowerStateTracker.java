@@ -0,0 +1,160 @@
+/*
+ * Created by Brian Lau on 2018-04-10
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-10
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+
+/**
+ * Keeps track of the last-known plug and dock state of the device and maps them to a Power Status.
+ *
+ * The plug / dock values are the same as the Android ones (BatteryManager.EXTRA_PLUGGED and
+ * Intent.EXTRA_DOCK_STATE), they're just copied here so this doesn't need the Android SDK.
+ * - 2018/04/10
+ */
+public final class PowerStateTracker {
+
+    // Marker for a piece of state we don't currently know the value of
+    public static final int STATE_UNKNOWN = Integer.MIN_VALUE;
+
+    // BatteryManager.BATTERY_PLUGGED_* values
+    public static final int PLUGGED_NONE = 0;
+    public static final int PLUGGED_AC = 1;
+    public static final int PLUGGED_USB = 2;
+    public static final int PLUGGED_WIRELESS = 4;
+
+    // Intent.EXTRA_DOCK_STATE_UNDOCKED
+    public static final int DOCK_STATE_UNDOCKED = 0;
+
+    // Power Statuses (these line up with the PowerStatus ordinals in the app)
+    public static final int POWER_STATUS_DISCONNECTED = 0;
+    public static final int POWER_STATUS_PLUGGED_IN = 1;
+    public static final int POWER_STATUS_WIRELESSLY_CHARGING = 2;
+    public static final int POWER_STATUS_COUNT = 3;
+
+    // Marker for a Power Status that hasn't been worked out (never a valid index)
+    public static final int POWER_STATUS_UNKNOWN = -1;
+
+    private volatile int mPlugState;
+    private volatile int mDockState;
+
+
+    public PowerStateTracker() {
+        reset();
+    }
+
+
+    /**
+     * Forget everything we know about the current state
+     */
+    public void reset() {
+        mPlugState = STATE_UNKNOWN;
+        mDockState = STATE_UNKNOWN;
+    }
+
+
+    // region ================== EVENT INPUTS ==================
+    // ====== ================== ============ ==================
+
+
+    /**
+     * Dock event (or sticky dock state) with the given EXTRA_DOCK_STATE value
+     */
+    public void onDockState(int dockState) {
+        mDockState = dockState;
+    }
+
+
+    /**
+     * Battery state (sticky or ACTION_BATTERY_CHANGED) with the given EXTRA_PLUGGED value
+     */
+    public void onPlugState(int plugState) {
+        mPlugState = plugState;
+    }
+
+
+    /**
+     * Power has been connected, but we don't know what type (AC / USB / Wireless) from this alone
+     */
+    public void onPowerConnected() {
+        mPlugState = STATE_UNKNOWN;
+    }
+
+
+    /**
+     * Power has been disconnected, so nothing is plugged in
+     */
+    public void onPowerDisconnected() {
+        mPlugState = PLUGGED_NONE;
+    }
+
+    // endregion
+
+
+    // region ================== STATE QUERIES ==================
+    // ====== ================== ============= ==================
+
+
+    /**
+     * Return whether the plug state needs to be looked up before the Power Status can be resolved
+     */
+    public boolean needsPlugState() {
+        return mPlugState == STATE_UNKNOWN;
+    }
+
+
+    /**
+     * Return whether the dock state needs to be looked up before the Power Status can be resolved.
+     * (Only matters if nothing is plugged in, since being plugged in wins either way)
+     */
+    public boolean needsDockState() {
+        return mDockState == STATE_UNKNOWN && !isPluggedIn(mPlugState);
+    }
+
+
+    public int getPlugState() {
+        return mPlugState;
+    }
+
+
+    public int getDockState() {
+        return mDockState;
+    }
+
+
+    /**
+     * Return the current Power Status from whatever state we know about, anything still unknown is
+     * treated as unplugged / undocked.
+     */
+    public int getPowerStatus() {
+        return resolvePowerStatus(mPlugState, mDockState);
+    }
+
+
+    /**
+     * Map the given EXTRA_PLUGGED and EXTRA_DOCK_STATE values to a Power Status
+     */
+    public static int resolvePowerStatus(int plugState, int dockState) {
+
+        if (plugState == PLUGGED_WIRELESS) {
+            return POWER_STATUS_WIRELESSLY_CHARGING;
+
+        } else if (isPluggedIn(plugState)
+                || (dockState != STATE_UNKNOWN && dockState != DOCK_STATE_UNDOCKED)) {
+            return POWER_STATUS_PLUGGED_IN;
+
+        } else {
+            return POWER_STATUS_DISCONNECTED;
+        }
+    }
+
+
+    private static boolean isPluggedIn(int plugState) {
+        return (plugState == PLUGGED_AC) || (plugState == PLUGGED_USB) || (plugState == PLUGGED_WIRELESS);
+    }
+
+    // endregion
+}
@@ -0,0 +1,220 @@
+/*
+ * Created by Brian Lau on 2018-04-10
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+
+/**
+ * The dock / rotation decision engine, without any of the Android bits.
+ *
+ * Port events and state lookups go in as inputs (via the PowerStateTracker, the Rotation Profile and
+ * the natural orientation) and each call to decide() steps the engine to its next decision:
+ *
+ *   MONITOR_DISABLED    - Nothing to do, the monitor is switched off
+ *   NEEDS_PLUG_STATE    - Plug state is unknown, look it up and feed it in before deciding again
+ *   NEEDS_DOCK_STATE    - Dock state is unknown (and it matters), same again
+ *   NEEDS_ORIENTATION   - A fixed rotation was picked but the natural orientation is unknown, same again
+ *   NO_CHANGE           - The profile says to leave the rotation alone for this Power Status
+ *   ROTATE              - Target Auto-Rotate / User Rotation values are ready, see planWrites()
+ *
+ * The engine doesn't do any lookups or writes itself, that's left to whoever is hosting it.
+ * - 2018/04/10
+ */
+public final class RotationEngine {
+
+    public static final int DECISION_MONITOR_DISABLED = 0;
+    public static final int DECISION_NEEDS_PLUG_STATE = 1;
+    public static final int DECISION_NEEDS_DOCK_STATE = 2;
+    public static final int DECISION_NEEDS_ORIENTATION = 3;
+    public static final int DECISION_NO_CHANGE = 4;
+    public static final int DECISION_ROTATE = 5;
+
+    // Marker for "natural orientation not supplied yet"
+    public static final int ORIENTATION_UNKNOWN = Integer.MIN_VALUE;
+
+    private final PowerStateTracker mPowerState;
+
+    private volatile RotationProfile mProfile;
+    private volatile int mNaturalOrientation;
+
+    // Outputs of the last decision
+    private int mPowerStatus;
+    private int mRotationMode;
+    private int mTargetAutoRotate;
+    private int mTargetUserRotation;
+
+
+    public RotationEngine() {
+        mPowerState = new PowerStateTracker();
+        mProfile = RotationProfile.DISABLED;
+        mNaturalOrientation = ORIENTATION_UNKNOWN;
+
+        mPowerStatus = PowerStateTracker.POWER_STATUS_DISCONNECTED;
+        mRotationMode = RotationProfile.MODE_NO_CHANGE;
+        mTargetAutoRotate = PowerStateTracker.STATE_UNKNOWN;
+        mTargetUserRotation = RotationMapping.ROTATION_NONE;
+    }
+
+
+    // region ================== INPUTS ==================
+    // ====== ================== ====== ==================
+
+
+    /**
+     * Return the plug / dock state tracker, port events should be fed in through here
+     */
+    public PowerStateTracker getPowerState() {
+        return mPowerState;
+    }
+
+
+    public void setProfile(RotationProfile profile) {
+        mProfile = profile;
+    }
+
+
+    public RotationProfile getProfile() {
+        return mProfile;
+    }
+
+
+    /**
+     * Set the natural orientation of the device (one of the RotationMapping.ORIENTATION_* values),
+     * or ORIENTATION_UNKNOWN to have the engine ask for it again next time it needs it.
+     */
+    public void setNaturalOrientation(int naturalOrientation) {
+        mNaturalOrientation = naturalOrientation;
+    }
+
+    // endregion
+
+
+    // region ================== DECISIONS ==================
+    // ====== ================== ========= ==================
+
+
+    /**
+     * Step the engine through to its next decision (one of the DECISION_* values)
+     */
+    public int decide() {
+
+        RotationProfile profile = mProfile;
+
+        // Targets only ever belong to the ROTATE decision that set them, anything else leaves them unknown
+        mTargetAutoRotate = PowerStateTracker.STATE_UNKNOWN;
+        mTargetUserRotation = RotationMapping.ROTATION_NONE;
+
+        if (!profile.isMonitorEnabled()) {
+            return DECISION_MONITOR_DISABLED;
+        }
+
+        if (mPowerState.needsPlugState()) {
+            return DECISION_NEEDS_PLUG_STATE;
+        }
+
+        if (mPowerState.needsDockState()) {
+            return DECISION_NEEDS_DOCK_STATE;
+        }
+
+        mPowerStatus = mPowerState.getPowerStatus();
+        mRotationMode = profile.getRotationMode(mPowerStatus);
+
+        if (mRotationMode == RotationProfile.MODE_NO_CHANGE) {
+            return DECISION_NO_CHANGE;
+        }
+
+        if (mRotationMode == RotationProfile.MODE_AUTO_ROTATE) {
+            // Only need to enable Auto-Rotate; User Rotation not needed
+            mTargetAutoRotate = 1;
+            mTargetUserRotation = RotationMapping.ROTATION_NONE;
+
+        } else {
+            // Fixed Rotation set - so disable Auto-Rotate and set the User Rotation relative to the natural orientation
+            int naturalOrientation = mNaturalOrientation;
+
+            if (naturalOrientation == ORIENTATION_UNKNOWN) {
+                return DECISION_NEEDS_ORIENTATION;
+            }
+
+            mTargetAutoRotate = 0;
+            mTargetUserRotation = RotationMapping.getUserRotation(mRotationMode, naturalOrientation);
+        }
+
+        return DECISION_ROTATE;
+    }
+
+
+    /**
+     * Return the Power Status the last decision was made against
+     */
+    public int getPowerStatus() {
+        return mPowerStatus;
+    }
+
+
+    /**
+     * Return the Rotation Mode the last decision picked
+     */
+    public int getRotationMode() {
+        return mRotationMode;
+    }
+
+
+    /**
+     * Return the Auto-Rotate value (0 / 1) the last decision is aiming for, STATE_UNKNOWN unless it was a ROTATE
+     */
+    public int getTargetAutoRotate() {
+        return mTargetAutoRotate;
+    }
+
+
+    /**
+     * Return the User Rotation value the last decision is aiming for, ROTATION_NONE if it doesn't set
+     * one (or wasn't a ROTATE)
+     */
+    public int getTargetUserRotation() {
+        return mTargetUserRotation;
+    }
+
+
+    /**
+     * Return the Power Status, plug / dock state, Rotation Mode and Auto-Rotate / User Rotation targets
+     * of the last decision packed into a DeviceState (the targets are unknown unless it was a ROTATE)
+     */
+    public long getDeviceState() {
+        return DeviceState.pack(
+                mPowerStatus,
+                mPowerState.getPlugState(),
+                mPowerState.getDockState(),
+                mTargetAutoRotate,
+                mTargetUserRotation,
+                mRotationMode
+        );
+    }
+
+
+    /**
+     * Emit the write commands needed to get from the current Settings values to the given target ones.
+     * Static since it's meant to be run by whoever is doing the writes, against their latest view of the Settings.
+     */
+    public static void planWrites(int currentAutoRotate, int currentUserRotation,
+                                  int targetAutoRotate, int targetUserRotation,
+                                  long interWriteDelayMs,
+                                  WritePlan plan) {
+
+        TransitionPlanner.plan(
+                currentAutoRotate,
+                currentUserRotation,
+                targetAutoRotate,
+                targetUserRotation,
+                interWriteDelayMs,
+                plan
+        );
+    }
+
+    // endregion
+}
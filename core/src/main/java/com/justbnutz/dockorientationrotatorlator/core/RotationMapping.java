@@ -0,0 +1,176 @@
+/*
+ * Created by Brian Lau on 2018-04-10
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-11
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+
+/**
+ * Mappings between Rotation Modes, the "natural orientation" of the device and the User Rotation
+ * values (Surface.ROTATION_*).
+ *
+ * The User Rotation value is relative to the natural orientation of the device. So ROTATION_90 will
+ * be different on a tablet that is naturally landscape vs a phone that is naturally portrait.
+ *
+ * Reference: https://stackoverflow.com/a/9888357
+ * - 2018/04/10
+ */
+public final class RotationMapping {
+
+    // Configuration.ORIENTATION_* values
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_PORTRAIT = 1;
+    public static final int ORIENTATION_LANDSCAPE = 2;
+
+    // Surface.ROTATION_* values
+    public static final int ROTATION_0 = 0;
+    public static final int ROTATION_90 = 1;
+    public static final int ROTATION_180 = 2;
+    public static final int ROTATION_270 = 3;
+
+    // Marker for "no User Rotation to set"
+    public static final int ROTATION_NONE = -1;
+
+
+    // Number of ORIENTATION_* / ROTATION_* values, for sizing the lookup tables
+    private static final int ORIENTATION_COUNT = 3;
+    private static final int ROTATION_COUNT = 4;
+
+    // User Rotation for each [Rotation Mode][natural orientation], and the Rotation Mode shown for each
+    // [User Rotation][natural orientation]. Both worked out once up front, so lookups are just array loads.
+    private static final int[][] USER_ROTATIONS = new int[RotationProfile.MODE_COUNT][ORIENTATION_COUNT];
+    private static final int[][] ROTATION_MODES = new int[ROTATION_COUNT][ORIENTATION_COUNT];
+
+    static {
+        for (int naturalOrientation = 0; naturalOrientation < ORIENTATION_COUNT; naturalOrientation++) {
+
+            for (int userRotation = 0; userRotation < ROTATION_COUNT; userRotation++) {
+                ROTATION_MODES[userRotation][naturalOrientation] = RotationProfile.MODE_NO_CHANGE;
+            }
+
+            for (int rotationMode = 0; rotationMode < RotationProfile.MODE_COUNT; rotationMode++) {
+                int userRotation = computeUserRotation(rotationMode, naturalOrientation);
+                USER_ROTATIONS[rotationMode][naturalOrientation] = userRotation;
+
+                if (userRotation != ROTATION_NONE) {
+                    ROTATION_MODES[userRotation][naturalOrientation] = rotationMode;
+                }
+            }
+        }
+    }
+
+
+    private RotationMapping() {}
+
+
+    /**
+     * Return the User Rotation value for a fixed Rotation Mode relative to the given natural
+     * orientation, or ROTATION_NONE if there's no fixed rotation to set.
+     */
+    public static int getUserRotation(int rotationMode, int naturalOrientation) {
+
+        if (rotationMode < 0 || rotationMode >= RotationProfile.MODE_COUNT
+                || naturalOrientation < 0 || naturalOrientation >= ORIENTATION_COUNT) {
+            return ROTATION_NONE;
+        }
+
+        return USER_ROTATIONS[rotationMode][naturalOrientation];
+    }
+
+
+    /**
+     * The reverse of getUserRotation(), return which fixed Rotation Mode the given User Rotation
+     * corresponds to on a device with the given natural orientation. Returns MODE_NO_CHANGE if it
+     * can't be worked out.
+     */
+    public static int getRotationMode(int userRotation, int naturalOrientation) {
+
+        if (userRotation < 0 || userRotation >= ROTATION_COUNT
+                || naturalOrientation < 0 || naturalOrientation >= ORIENTATION_COUNT) {
+            return RotationProfile.MODE_NO_CHANGE;
+        }
+
+        return ROTATION_MODES[userRotation][naturalOrientation];
+    }
+
+
+    /**
+     * Fill in one entry of the User Rotation table
+     */
+    private static int computeUserRotation(int rotationMode, int naturalOrientation) {
+
+        // Make sure we have an baseline orientation to reference against
+        if (naturalOrientation == ORIENTATION_UNDEFINED) {
+            return ROTATION_NONE;
+        }
+
+        switch (rotationMode) {
+            case RotationProfile.MODE_PORTRAIT:
+                return (naturalOrientation == ORIENTATION_PORTRAIT)
+                        ? ROTATION_0
+                        : ROTATION_90;
+
+            case RotationProfile.MODE_PORTRAIT_INVERTED:
+                return (naturalOrientation == ORIENTATION_PORTRAIT)
+                        ? ROTATION_180
+                        : ROTATION_270;
+
+            case RotationProfile.MODE_LANDSCAPE:
+                return (naturalOrientation == ORIENTATION_LANDSCAPE)
+                        ? ROTATION_0
+                        : ROTATION_90;
+
+            case RotationProfile.MODE_LANDSCAPE_INVERTED:
+                return (naturalOrientation == ORIENTATION_LANDSCAPE)
+                        ? ROTATION_180
+                        : ROTATION_270;
+
+            default:
+                return ROTATION_NONE;
+        }
+    }
+
+
+    /**
+     * Work out the natural orientation of the device from its current rotation and the orientation
+     * the configuration is currently reporting.
+     */
+    public static int getNaturalOrientation(int currentRotation, int currentOrientation) {
+
+        boolean isUpright = (currentRotation == ROTATION_0) || (currentRotation == ROTATION_180);
+
+        // Natural orientation can be determined by comparing the two values against each other
+        if ((isUpright && currentOrientation == ORIENTATION_PORTRAIT)
+                || (!isUpright && currentOrientation == ORIENTATION_LANDSCAPE)) {
+            return ORIENTATION_PORTRAIT;
+
+        } else {
+            return ORIENTATION_LANDSCAPE;
+        }
+    }
+
+
+    /**
+     * Work out the natural orientation of the device from its current rotation and the real size of
+     * the display (in that rotation). Unlike the configuration this doesn't lag behind mid-rotation,
+     * since the rotation and size come from the same display. Returns ORIENTATION_UNDEFINED for a
+     * square display.
+     */
+    public static int getNaturalOrientationFromSize(int currentRotation, int displayWidth, int displayHeight) {
+
+        if (displayWidth == displayHeight) {
+            return ORIENTATION_UNDEFINED;
+        }
+
+        boolean isUpright = (currentRotation == ROTATION_0) || (currentRotation == ROTATION_180);
+        boolean isTall = displayHeight > displayWidth;
+
+        // Upright and tall, or turned on its side and wide, means the device is naturally portrait
+        return (isUpright == isTall)
+                ? ORIENTATION_PORTRAIT
+                : ORIENTATION_LANDSCAPE;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Created by Brian Lau on 2018-04-10
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-10
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+
+/**
+ * Immutable Rotation Profile: which Rotation Mode to use for each Power Status, and whether the
+ * monitor is enabled at all.
+ * - 2018/04/10
+ */
+public final class RotationProfile {
+
+    // Rotation Modes (these line up with the RotationMode ordinals in the app)
+    public static final int MODE_NO_CHANGE = 0;
+    public static final int MODE_PORTRAIT = 1;
+    public static final int MODE_PORTRAIT_INVERTED = 2;
+    public static final int MODE_LANDSCAPE = 3;
+    public static final int MODE_LANDSCAPE_INVERTED = 4;
+    public static final int MODE_AUTO_ROTATE = 5;
+    public static final int MODE_COUNT = 6;
+
+    // Profile with the monitor switched off and nothing set
+    public static final RotationProfile DISABLED = new RotationProfile(new int[PowerStateTracker.POWER_STATUS_COUNT], false);
+
+    // Rotation Modes, indexed by Power Status
+    private final int[] mRotationModes;
+    private final boolean mMonitorEnabled;
+
+
+    /**
+     * Build a profile from the given Rotation Mode indexes (indexed by Power Status), any index that
+     * is out of range falls back to MODE_NO_CHANGE.
+     */
+    public RotationProfile(int[] rotationModes, boolean monitorEnabled) {
+
+        mRotationModes = new int[PowerStateTracker.POWER_STATUS_COUNT];
+
+        for (int i = 0; i < mRotationModes.length && i < rotationModes.length; i++) {
+            mRotationModes[i] = sanitiseMode(rotationModes[i]);
+        }
+
+        mMonitorEnabled = monitorEnabled;
+    }
+
+
+    /**
+     * Make sure the given Rotation Mode index is valid, defaults to MODE_NO_CHANGE if it isn't
+     */
+    public static int sanitiseMode(int modeIndex) {
+        return (modeIndex >= 0 && modeIndex < MODE_COUNT)
+                ? modeIndex
+                : MODE_NO_CHANGE;
+    }
+
+
+    /**
+     * Return whether the given Rotation Mode locks the display to a fixed rotation
+     */
+    public static boolean isFixedMode(int rotationMode) {
+        return rotationMode == MODE_PORTRAIT
+                || rotationMode == MODE_PORTRAIT_INVERTED
+                || rotationMode == MODE_LANDSCAPE
+                || rotationMode == MODE_LANDSCAPE_INVERTED;
+    }
+
+
+    public boolean isMonitorEnabled() {
+        return mMonitorEnabled;
+    }
+
+
+    /**
+     * Take a given Power Status and return what Rotation Mode has been set for that state
+     */
+    public int getRotationMode(int powerStatus) {
+        return mRotationModes[powerStatus];
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Created by Brian Lau on 2018-04-14
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+
+/**
+ * Fixed-capacity in-memory recorder of trace section events, so whatever gets sent to the system
+ * trace can also be looked at (or asserted on) from a plain JVM.
+ *
+ * Events are kept in parallel arrays allocated up front; section names are expected to be constants,
+ * so only the reference gets stored. Once full, the oldest event gets overwritten.
+ *
+ * While it's disabled nothing gets recorded, and begin() says so, so the caller knows not to end() it.
+ * - 2018/04/14
+ */
+public final class TraceRecorder {
+
+    // Event types
+    public static final int EVENT_BEGIN = 0;
+    public static final int EVENT_END = 1;
+    public static final int EVENT_ASYNC_BEGIN = 2;
+    public static final int EVENT_ASYNC_END = 3;
+
+    private final int mCapacity;
+
+    private final int[] mTypes;
+    private final String[] mNames;
+    private final int[] mCookies;
+    private final long[] mThreadIds;
+    private final long[] mTimestampsNanos;
+
+    // Index of the oldest event, and how many events there are
+    private int mHead;
+    private int mSize;
+
+    private volatile boolean mEnabled;
+
+
+    public TraceRecorder(int capacity, boolean enabled) {
+        mCapacity = capacity;
+        mEnabled = enabled;
+
+        mTypes = new int[capacity];
+        mNames = new String[capacity];
+        mCookies = new int[capacity];
+        mThreadIds = new long[capacity];
+        mTimestampsNanos = new long[capacity];
+    }
+
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+
+    /**
+     * Start of a section on the current thread, returns whether it was actually recorded (only call
+     * end() for it if it was)
+     */
+    public boolean begin(String sectionName) {
+
+        if (!mEnabled) {
+            return false;
+        }
+
+        add(EVENT_BEGIN, sectionName, 0);
+        return true;
+    }
+
+
+    /**
+     * End of the most recent section begun on the current thread (same as the system trace, there's
+     * no name on this one). Always recorded, so a section stays balanced even if the recorder gets
+     * disabled halfway through it.
+     */
+    public void end() {
+        add(EVENT_END, null, 0);
+    }
+
+
+    /**
+     * Start of a section that can end on a different thread, matched up by name + cookie
+     */
+    public void beginAsync(String sectionName, int cookie) {
+
+        if (mEnabled) {
+            add(EVENT_ASYNC_BEGIN, sectionName, cookie);
+        }
+    }
+
+
+    public void endAsync(String sectionName, int cookie) {
+
+        if (mEnabled) {
+            add(EVENT_ASYNC_END, sectionName, cookie);
+        }
+    }
+
+
+    private synchronized void add(int eventType, String sectionName, int cookie) {
+
+        int tail = (mHead + mSize) % mCapacity;
+
+        mTypes[tail] = eventType;
+        mNames[tail] = sectionName;
+        mCookies[tail] = cookie;
+        mThreadIds[tail] = Thread.currentThread().getId();
+        mTimestampsNanos[tail] = System.nanoTime();
+
+        if (mSize < mCapacity) {
+            mSize++;
+
+        } else {
+            mHead = (mHead + 1) % mCapacity;
+        }
+    }
+
+
+    public synchronized void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+
+    // region ================== EVENT LOOKUPS ==================
+    // ====== ================== ============= ==================
+
+
+    /**
+     * Events are indexed from 0 (oldest) to size() - 1 (newest)
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+
+    public synchronized int getType(int position) {
+        return mTypes[getIndex(position)];
+    }
+
+
+    /**
+     * Return the section name of the given event, null for EVENT_END
+     */
+    public synchronized String getName(int position) {
+        return mNames[getIndex(position)];
+    }
+
+
+    public synchronized int getCookie(int position) {
+        return mCookies[getIndex(position)];
+    }
+
+
+    public synchronized long getThreadId(int position) {
+        return mThreadIds[getIndex(position)];
+    }
+
+
+    public synchronized long getTimestampNanos(int position) {
+        return mTimestampsNanos[getIndex(position)];
+    }
+
+
+    /**
+     * Return how many events of the given type / section name have been recorded (still in the buffer)
+     */
+    public synchronized int count(int eventType, String sectionName) {
+
+        int matches = 0;
+
+        for (int i = 0; i < mSize; i++) {
+            int index = getIndex(i);
+
+            if (mTypes[index] == eventType
+                    && (sectionName == null ? mNames[index] == null : sectionName.equals(mNames[index]))) {
+                matches++;
+            }
+        }
+
+        return matches;
+    }
+
+
+    private int getIndex(int position) {
+        return (mHead + position) % mCapacity;
+    }
+
+    // endregion
+}
@@ -0,0 +1,46 @@
+/*
+ * Created by Brian Lau on 2018-04-10
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-10
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+
+/**
+ * Works out the smallest ordered set of Settings writes needed to get from the current rotation
+ * state to the target one.
+ *
+ * When going to a fixed rotation, USER_ROTATION is written *before* Auto-Rotate is switched off.
+ * While Auto-Rotate is on the User Rotation value is ignored, so the screen only rotates once (when
+ * the lock goes on) rather than snapping to the old User Rotation first and then to the new one.
+ * - 2018/04/10
+ */
+public final class TransitionPlanner {
+
+    private TransitionPlanner() {}
+
+
+    /**
+     * Fill in the given plan with the writes needed to go from the current Auto-Rotate / User Rotation
+     * values to the target ones. A target User Rotation of ROTATION_NONE means it doesn't matter.
+     */
+    public static void plan(int currentAutoRotate, int currentUserRotation,
+                            int targetAutoRotate, int targetUserRotation,
+                            long interWriteDelayMs,
+                            WritePlan plan) {
+
+        plan.clear();
+        plan.setInterWriteDelayMs(interWriteDelayMs);
+
+        // Set the User Rotation while Auto-Rotate is still on (if it is), so it's already in place for the lock
+        if (targetUserRotation != RotationMapping.ROTATION_NONE && currentUserRotation != targetUserRotation) {
+            plan.addStep(WritePlan.SETTING_USER_ROTATION, targetUserRotation);
+        }
+
+        if (currentAutoRotate != targetAutoRotate) {
+            plan.addStep(WritePlan.SETTING_ACCELEROMETER_ROTATION, targetAutoRotate);
+        }
+    }
+}
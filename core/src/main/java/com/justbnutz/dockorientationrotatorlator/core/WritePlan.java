@@ -0,0 +1,73 @@
+/*
+ * Created by Brian Lau on 2018-04-10
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-10
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+
+/**
+ * Ordered list of rotation Settings writes for one transition. Meant to be reused, so filling it in
+ * doesn't allocate anything.
+ * - 2018/04/10
+ */
+public final class WritePlan {
+
+    // Which Setting a step writes to
+    public static final int SETTING_USER_ROTATION = 0;
+    public static final int SETTING_ACCELEROMETER_ROTATION = 1;
+
+    public static final int MAX_STEPS = 2;
+
+    private final int[] mSettings = new int[MAX_STEPS];
+    private final int[] mValues = new int[MAX_STEPS];
+
+    private int mStepCount;
+    private long mInterWriteDelayMs;
+
+
+    public void clear() {
+        mStepCount = 0;
+        mInterWriteDelayMs = 0;
+    }
+
+
+    void addStep(int setting, int value) {
+        mSettings[mStepCount] = setting;
+        mValues[mStepCount] = value;
+        mStepCount++;
+    }
+
+
+    void setInterWriteDelayMs(long interWriteDelayMs) {
+        mInterWriteDelayMs = interWriteDelayMs;
+    }
+
+
+    public int getStepCount() {
+        return mStepCount;
+    }
+
+
+    /**
+     * Return which Setting (SETTING_*) the given step writes to
+     */
+    public int getSetting(int step) {
+        return mSettings[step];
+    }
+
+
+    public int getValue(int step) {
+        return mValues[step];
+    }
+
+
+    /**
+     * Return how long to wait between consecutive steps
+     */
+    public long getInterWriteDelayMs() {
+        return mInterWriteDelayMs;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Packing round-trips, the all-ones unknown markers and the diff masks of the DeviceState.
+ * - 2018/04/16
+ */
+public class DeviceStateTest {
+
+    private long mState;
+
+
+    @Before
+    public void setUp() {
+        mState = DeviceState.pack(
+                PowerStateTracker.POWER_STATUS_PLUGGED_IN,
+                PowerStateTracker.PLUGGED_AC,
+                PowerStateTracker.DOCK_STATE_UNDOCKED,
+                0,
+                RotationMapping.ROTATION_90,
+                RotationProfile.MODE_LANDSCAPE
+        );
+    }
+
+
+    // region ================== PACKING ==================
+    // ====== ================== ======= ==================
+
+
+    @Test
+    public void pack_roundTripsEveryField() {
+        assertEquals(PowerStateTracker.POWER_STATUS_PLUGGED_IN, DeviceState.getPowerStatus(mState));
+        assertEquals(PowerStateTracker.PLUGGED_AC, DeviceState.getPlugState(mState));
+        assertEquals(PowerStateTracker.DOCK_STATE_UNDOCKED, DeviceState.getDockState(mState));
+        assertEquals(0, DeviceState.getAutoRotate(mState));
+        assertEquals(RotationMapping.ROTATION_90, DeviceState.getUserRotation(mState));
+        assertEquals(RotationProfile.MODE_LANDSCAPE, DeviceState.getRotationMode(mState));
+    }
+
+
+    @Test
+    public void pack_roundTripsTheLargestValues() {
+        long state = DeviceState.pack(
+                PowerStateTracker.POWER_STATUS_WIRELESSLY_CHARGING,
+                14,
+                14,
+                1,
+                RotationMapping.ROTATION_270,
+                RotationProfile.MODE_AUTO_ROTATE
+        );
+
+        assertEquals(PowerStateTracker.POWER_STATUS_WIRELESSLY_CHARGING, DeviceState.getPowerStatus(state));
+        assertEquals(14, DeviceState.getPlugState(state));
+        assertEquals(14, DeviceState.getDockState(state));
+        assertEquals(1, DeviceState.getAutoRotate(state));
+        assertEquals(RotationMapping.ROTATION_270, DeviceState.getUserRotation(state));
+        assertEquals(RotationProfile.MODE_AUTO_ROTATE, DeviceState.getRotationMode(state));
+    }
+
+
+    @Test
+    public void with_onlyChangesItsOwnField() {
+        long state = DeviceState.withDockState(mState, 2);
+
+        assertEquals(2, DeviceState.getDockState(state));
+        assertEquals(0L, DeviceState.diff(mState, state) & ~DeviceState.FIELD_DOCK_STATE);
+        assertTrue(DeviceState.equalsIgnoring(mState, state, DeviceState.FIELD_DOCK_STATE));
+
+        state = DeviceState.withAutoRotate(state, 1);
+        state = DeviceState.withUserRotation(state, RotationMapping.ROTATION_180);
+
+        assertEquals(1, DeviceState.getAutoRotate(state));
+        assertEquals(RotationMapping.ROTATION_180, DeviceState.getUserRotation(state));
+        assertEquals(PowerStateTracker.PLUGGED_AC, DeviceState.getPlugState(state));
+        assertEquals(RotationProfile.MODE_LANDSCAPE, DeviceState.getRotationMode(state));
+    }
+
+    // endregion
+
+
+    // region ================== UNKNOWNS ==================
+    // ====== ================== ======== ==================
+
+
+    @Test
+    public void unknownMarkers_comeBackOut() {
+        long state = DeviceState.pack(
+                PowerStateTracker.POWER_STATUS_DISCONNECTED,
+                PowerStateTracker.STATE_UNKNOWN,
+                PowerStateTracker.STATE_UNKNOWN,
+                PowerStateTracker.STATE_UNKNOWN,
+                RotationMapping.ROTATION_NONE,
+                RotationProfile.MODE_NO_CHANGE
+        );
+
+        assertEquals(PowerStateTracker.STATE_UNKNOWN, DeviceState.getPlugState(state));
+        assertEquals(PowerStateTracker.STATE_UNKNOWN, DeviceState.getDockState(state));
+        assertEquals(PowerStateTracker.STATE_UNKNOWN, DeviceState.getAutoRotate(state));
+        assertEquals(RotationMapping.ROTATION_NONE, DeviceState.getUserRotation(state));
+    }
+
+
+    @Test
+    public void unknown_isStoredAsAllOnes() {
+        long state = DeviceState.withPlugState(0L, PowerStateTracker.STATE_UNKNOWN);
+
+        assertEquals(DeviceState.FIELD_PLUG_STATE, state);
+    }
+
+
+    @Test
+    public void valuesThatDontFit_areStoredAsUnknown() {
+        // Auto-Rotate is 2 bits wide, 3 would be all ones
+        long state = DeviceState.withAutoRotate(mState, 3);
+
+        assertFalse(DeviceState.isKnown(state, DeviceState.FIELD_AUTO_ROTATE));
+        assertEquals(PowerStateTracker.STATE_UNKNOWN, DeviceState.getAutoRotate(state));
+    }
+
+
+    @Test
+    public void isKnown_checksEachFieldOnItsOwn() {
+        long state = DeviceState.withUserRotation(mState, RotationMapping.ROTATION_NONE);
+
+        assertFalse(DeviceState.isKnown(state, DeviceState.FIELD_USER_ROTATION));
+        assertTrue(DeviceState.isKnown(state, DeviceState.FIELD_AUTO_ROTATE));
+        assertTrue(DeviceState.isKnown(state, DeviceState.FIELD_PLUG_STATE));
+        assertTrue(DeviceState.isKnown(state, DeviceState.FIELD_ROTATION_MODE));
+    }
+
+
+    @Test
+    public void none_hasNothingKnown() {
+        assertFalse(DeviceState.isKnown(DeviceState.NONE, DeviceState.FIELD_POWER_STATUS));
+        assertFalse(DeviceState.isKnown(DeviceState.NONE, DeviceState.FIELD_PLUG_STATE));
+        assertFalse(DeviceState.isKnown(DeviceState.NONE, DeviceState.FIELD_DOCK_STATE));
+        assertFalse(DeviceState.isKnown(DeviceState.NONE, DeviceState.FIELD_AUTO_ROTATE));
+        assertFalse(DeviceState.isKnown(DeviceState.NONE, DeviceState.FIELD_USER_ROTATION));
+        assertFalse(DeviceState.isKnown(DeviceState.NONE, DeviceState.FIELD_ROTATION_MODE));
+
+        // An unknown Power Status stays unknown, the Rotation Mode falls back to no change
+        assertEquals(PowerStateTracker.POWER_STATUS_UNKNOWN, DeviceState.getPowerStatus(DeviceState.NONE));
+        assertEquals(RotationProfile.MODE_NO_CHANGE, DeviceState.getRotationMode(DeviceState.NONE));
+        assertEquals("none", DeviceState.toString(DeviceState.NONE));
+    }
+
+    // endregion
+
+
+    // region ================== DIFFS ==================
+    // ====== ================== ===== ==================
+
+
+    @Test
+    public void fieldMasks_dontOverlap() {
+        long[] fieldMasks = {
+                DeviceState.FIELD_POWER_STATUS,
+                DeviceState.FIELD_PLUG_STATE,
+                DeviceState.FIELD_DOCK_STATE,
+                DeviceState.FIELD_AUTO_ROTATE,
+                DeviceState.FIELD_USER_ROTATION,
+                DeviceState.FIELD_ROTATION_MODE
+        };
+
+        for (int i = 0; i < fieldMasks.length; i++) {
+            for (int j = i + 1; j < fieldMasks.length; j++) {
+                assertEquals(0L, fieldMasks[i] & fieldMasks[j]);
+            }
+        }
+    }
+
+
+    @Test
+    public void diff_ofTheSameState_isEmpty() {
+        long diff = DeviceState.diff(mState, mState);
+
+        assertEquals(0L, diff);
+        assertFalse(DeviceState.hasChanged(diff, ~0L));
+    }
+
+
+    @Test
+    public void diff_onlyFlagsTheChangedFields() {
+        long state = DeviceState.withPowerStatus(mState, PowerStateTracker.POWER_STATUS_DISCONNECTED);
+        state = DeviceState.withUserRotation(state, RotationMapping.ROTATION_0);
+
+        long diff = DeviceState.diff(mState, state);
+
+        assertTrue(DeviceState.hasChanged(diff, DeviceState.FIELD_POWER_STATUS));
+        assertTrue(DeviceState.hasChanged(diff, DeviceState.FIELD_USER_ROTATION));
+        assertTrue(DeviceState.hasChanged(diff, DeviceState.FIELD_PLUG_STATE | DeviceState.FIELD_USER_ROTATION));
+
+        assertFalse(DeviceState.hasChanged(diff, DeviceState.FIELD_PLUG_STATE));
+        assertFalse(DeviceState.hasChanged(diff, DeviceState.FIELD_DOCK_STATE));
+        assertFalse(DeviceState.hasChanged(diff, DeviceState.FIELD_AUTO_ROTATE));
+        assertFalse(DeviceState.hasChanged(diff, DeviceState.FIELD_ROTATION_MODE));
+    }
+
+
+    @Test
+    public void equalsIgnoring_onlyIgnoresTheGivenFields() {
+        long state = DeviceState.withAutoRotate(mState, 1);
+        state = DeviceState.withUserRotation(state, RotationMapping.ROTATION_NONE);
+
+        assertTrue(DeviceState.equalsIgnoring(mState, state, DeviceState.FIELD_AUTO_ROTATE | DeviceState.FIELD_USER_ROTATION));
+        assertFalse(DeviceState.equalsIgnoring(mState, state, DeviceState.FIELD_AUTO_ROTATE));
+    }
+
+    // endregion
+}
@@ -0,0 +1,170 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Bucket maths and percentile reads for the LatencyHistogram.
+ * - 2018/04/16
+ */
+public class LatencyHistogramTest {
+
+    // The most a recorded value and its bucket's midpoint should differ by
+    private static final double MAX_RELATIVE_ERROR = 0.125;
+
+    private LatencyHistogram mHistogram;
+
+
+    @Before
+    public void setUp() {
+        mHistogram = new LatencyHistogram();
+    }
+
+
+    @Test
+    public void smallValues_getABucketEach() {
+        assertEquals(0, LatencyHistogram.getBucketIndex(0));
+        assertEquals(7, LatencyHistogram.getBucketIndex(7));
+
+        assertEquals(0, LatencyHistogram.getBucketMidpoint(0));
+        assertEquals(7, LatencyHistogram.getBucketMidpoint(7));
+    }
+
+
+    @Test
+    public void firstPowerOfTwo_isStillExact() {
+        // 8 - 15 is split into 8 sub-buckets, so they're still one value wide
+        assertEquals(8, LatencyHistogram.getBucketIndex(8));
+        assertEquals(15, LatencyHistogram.getBucketIndex(15));
+
+        assertEquals(8, LatencyHistogram.getBucketLowerBound(8));
+        assertEquals(8, LatencyHistogram.getBucketMidpoint(8));
+        assertEquals(15, LatencyHistogram.getBucketLowerBound(15));
+    }
+
+
+    @Test
+    public void secondPowerOfTwo_bucketsAreTwoWide() {
+        assertEquals(16, LatencyHistogram.getBucketIndex(16));
+        assertEquals(16, LatencyHistogram.getBucketIndex(17));
+        assertEquals(17, LatencyHistogram.getBucketIndex(18));
+        assertEquals(23, LatencyHistogram.getBucketIndex(31));
+        assertEquals(24, LatencyHistogram.getBucketIndex(32));
+
+        assertEquals(16, LatencyHistogram.getBucketLowerBound(16));
+        assertEquals(17, LatencyHistogram.getBucketMidpoint(16));
+    }
+
+
+    @Test
+    public void bucketIndexes_neverGoBackwards() {
+        int previousIndex = 0;
+
+        for (long value = 0; value < (1L << 20); value++) {
+            int bucketIndex = LatencyHistogram.getBucketIndex(value);
+
+            assertTrue(bucketIndex == previousIndex || bucketIndex == previousIndex + 1);
+            assertTrue(LatencyHistogram.getBucketLowerBound(bucketIndex) <= value);
+
+            previousIndex = bucketIndex;
+        }
+    }
+
+
+    @Test
+    public void hugeValues_clampIntoTheTopBucket() {
+        int topBucket = LatencyHistogram.BUCKET_COUNT - 1;
+
+        assertEquals(topBucket, LatencyHistogram.getBucketIndex(1L << 36));
+        assertEquals(topBucket, LatencyHistogram.getBucketIndex(Long.MAX_VALUE));
+
+        // The last value that isn't clamped lands in it as well
+        assertEquals(topBucket, LatencyHistogram.getBucketIndex((1L << 36) - 1));
+    }
+
+
+    @Test
+    public void midpoints_stayWithinTheErrorBound() {
+        for (long value = 1; value < (1L << 30); value = (value * 3 / 2) + 1) {
+            long midpoint = LatencyHistogram.getBucketMidpoint(LatencyHistogram.getBucketIndex(value));
+
+            assertTrue(
+                    "value " + value + " midpoint " + midpoint,
+                    Math.abs(midpoint - value) <= value * MAX_RELATIVE_ERROR
+            );
+        }
+    }
+
+
+    @Test
+    public void emptyHistogram_readsZero() {
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getPercentile(50));
+    }
+
+
+    @Test
+    public void negativeValues_countAsZero() {
+        mHistogram.record(-5);
+
+        assertEquals(1, mHistogram.getCount());
+        assertEquals(0, mHistogram.getMaxValue());
+        assertEquals(0, mHistogram.getPercentile(99));
+    }
+
+
+    @Test
+    public void percentiles_areWithinTheErrorBound() {
+        for (long value = 1; value <= 10000; value++) {
+            mHistogram.record(value * 100);
+        }
+
+        assertEquals(10000, mHistogram.getCount());
+        assertEquals(1000000, mHistogram.getMaxValue());
+
+        assertWithinError(500000, mHistogram.getPercentile(50));
+        assertWithinError(950000, mHistogram.getPercentile(95));
+        assertWithinError(990000, mHistogram.getPercentile(99));
+    }
+
+
+    @Test
+    public void percentiles_areCappedAtTheMax() {
+        mHistogram.record(1000);
+        mHistogram.record(1001);
+
+        // The bucket midpoint would be above anything actually recorded
+        assertTrue(mHistogram.getPercentile(100) <= 1001);
+        assertWithinError(1001, mHistogram.getPercentile(100));
+    }
+
+
+    @Test
+    public void reset_clearsEverything() {
+        mHistogram.record(12345);
+        mHistogram.reset();
+
+        assertEquals(0, mHistogram.getCount());
+        assertEquals(0, mHistogram.getMaxValue());
+        assertEquals(0, mHistogram.getPercentile(50));
+    }
+
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(
+                "expected ~" + expected + " got " + actual,
+                Math.abs(actual - expected) <= expected * MAX_RELATIVE_ERROR
+        );
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Steps the decision engine through each of its decisions, the same way ReceiverPortStatus drives it.
+ * - 2018/04/16
+ */
+public class RotationEngineTest {
+
+    private RotationEngine mEngine;
+
+
+    @Before
+    public void setUp() {
+        mEngine = new RotationEngine();
+    }
+
+
+    /**
+     * Profile with the given Rotation Mode for each of DISCONNECTED / PLUGGED_IN / WIRELESSLY_CHARGING
+     */
+    private static RotationProfile profile(boolean monitorEnabled, int disconnectedMode, int pluggedInMode, int wirelessMode) {
+        return new RotationProfile(new int[] {disconnectedMode, pluggedInMode, wirelessMode}, monitorEnabled);
+    }
+
+
+    @Test
+    public void monitorDisabled_winsOverEverythingElse() {
+        mEngine.setProfile(profile(false, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE));
+
+        // Even with nothing known about the ports, there's no point asking for them
+        assertEquals(RotationEngine.DECISION_MONITOR_DISABLED, mEngine.decide());
+    }
+
+
+    @Test
+    public void defaultProfile_isDisabled() {
+        assertEquals(RotationEngine.DECISION_MONITOR_DISABLED, mEngine.decide());
+    }
+
+
+    @Test
+    public void unknownPlugState_needsPlugState() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE));
+
+        assertEquals(RotationEngine.DECISION_NEEDS_PLUG_STATE, mEngine.decide());
+    }
+
+
+    @Test
+    public void powerConnected_stillNeedsPlugState() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE));
+        mEngine.getPowerState().onPlugState(PowerStateTracker.PLUGGED_NONE);
+        mEngine.getPowerState().onDockState(PowerStateTracker.DOCK_STATE_UNDOCKED);
+
+        // Connected, but no idea what to yet
+        mEngine.getPowerState().onPowerConnected();
+
+        assertEquals(RotationEngine.DECISION_NEEDS_PLUG_STATE, mEngine.decide());
+    }
+
+
+    @Test
+    public void unpluggedWithUnknownDock_needsDockState() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE));
+        mEngine.getPowerState().onPowerDisconnected();
+
+        assertEquals(RotationEngine.DECISION_NEEDS_DOCK_STATE, mEngine.decide());
+    }
+
+
+    @Test
+    public void pluggedInWithUnknownDock_doesNotNeedDockState() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_NO_CHANGE, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_NO_CHANGE));
+        mEngine.getPowerState().onPlugState(PowerStateTracker.PLUGGED_USB);
+
+        assertEquals(RotationEngine.DECISION_ROTATE, mEngine.decide());
+        assertEquals(PowerStateTracker.POWER_STATUS_PLUGGED_IN, mEngine.getPowerStatus());
+    }
+
+
+    @Test
+    public void noChangeMode_noChange() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_NO_CHANGE, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE));
+        mEngine.getPowerState().onPlugState(PowerStateTracker.PLUGGED_NONE);
+        mEngine.getPowerState().onDockState(PowerStateTracker.DOCK_STATE_UNDOCKED);
+
+        assertEquals(RotationEngine.DECISION_NO_CHANGE, mEngine.decide());
+        assertEquals(PowerStateTracker.POWER_STATUS_DISCONNECTED, mEngine.getPowerStatus());
+        assertEquals(RotationProfile.MODE_NO_CHANGE, mEngine.getRotationMode());
+    }
+
+
+    @Test
+    public void autoRotateMode_rotatesWithoutOrientation() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_NO_CHANGE, RotationProfile.MODE_NO_CHANGE, RotationProfile.MODE_AUTO_ROTATE));
+        mEngine.getPowerState().onPlugState(PowerStateTracker.PLUGGED_WIRELESS);
+
+        // Auto-Rotate doesn't care about the natural orientation
+        assertEquals(RotationEngine.DECISION_ROTATE, mEngine.decide());
+        assertEquals(PowerStateTracker.POWER_STATUS_WIRELESSLY_CHARGING, mEngine.getPowerStatus());
+        assertEquals(1, mEngine.getTargetAutoRotate());
+        assertEquals(RotationMapping.ROTATION_NONE, mEngine.getTargetUserRotation());
+    }
+
+
+    @Test
+    public void fixedModeWithUnknownOrientation_needsOrientation() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_NO_CHANGE, RotationProfile.MODE_PORTRAIT, RotationProfile.MODE_NO_CHANGE));
+        mEngine.getPowerState().onPlugState(PowerStateTracker.PLUGGED_AC);
+
+        assertEquals(RotationEngine.DECISION_NEEDS_ORIENTATION, mEngine.decide());
+
+        // Once it's fed in, the same decision goes through
+        mEngine.setNaturalOrientation(RotationMapping.ORIENTATION_PORTRAIT);
+
+        assertEquals(RotationEngine.DECISION_ROTATE, mEngine.decide());
+        assertEquals(0, mEngine.getTargetAutoRotate());
+        assertEquals(RotationMapping.ROTATION_0, mEngine.getTargetUserRotation());
+    }
+
+
+    @Test
+    public void dockedWhileUnplugged_countsAsPluggedIn() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_NO_CHANGE, RotationProfile.MODE_LANDSCAPE, RotationProfile.MODE_NO_CHANGE));
+        mEngine.setNaturalOrientation(RotationMapping.ORIENTATION_PORTRAIT);
+        mEngine.getPowerState().onPowerDisconnected();
+        mEngine.getPowerState().onDockState(1);
+
+        assertEquals(RotationEngine.DECISION_ROTATE, mEngine.decide());
+        assertEquals(PowerStateTracker.POWER_STATUS_PLUGGED_IN, mEngine.getPowerStatus());
+        assertEquals(RotationProfile.MODE_LANDSCAPE, mEngine.getRotationMode());
+        assertEquals(
+                RotationMapping.getUserRotation(RotationProfile.MODE_LANDSCAPE, RotationMapping.ORIENTATION_PORTRAIT),
+                mEngine.getTargetUserRotation()
+        );
+    }
+
+
+    @Test
+    public void noChangeAfterRotate_dropsTheOldTargets() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_NO_CHANGE, RotationProfile.MODE_LANDSCAPE, RotationProfile.MODE_NO_CHANGE));
+        mEngine.setNaturalOrientation(RotationMapping.ORIENTATION_PORTRAIT);
+        mEngine.getPowerState().onPlugState(PowerStateTracker.PLUGGED_AC);
+        mEngine.getPowerState().onDockState(PowerStateTracker.DOCK_STATE_UNDOCKED);
+
+        assertEquals(RotationEngine.DECISION_ROTATE, mEngine.decide());
+        assertTrue(DeviceState.isKnown(mEngine.getDeviceState(), DeviceState.FIELD_AUTO_ROTATE));
+        assertTrue(DeviceState.isKnown(mEngine.getDeviceState(), DeviceState.FIELD_USER_ROTATION));
+
+        // Unplugging goes to NO_CHANGE, which mustn't carry the landscape targets along with it
+        mEngine.getPowerState().onPowerDisconnected();
+
+        assertEquals(RotationEngine.DECISION_NO_CHANGE, mEngine.decide());
+        assertEquals(PowerStateTracker.STATE_UNKNOWN, mEngine.getTargetAutoRotate());
+        assertEquals(RotationMapping.ROTATION_NONE, mEngine.getTargetUserRotation());
+
+        long deviceState = mEngine.getDeviceState();
+
+        assertFalse(DeviceState.isKnown(deviceState, DeviceState.FIELD_AUTO_ROTATE));
+        assertFalse(DeviceState.isKnown(deviceState, DeviceState.FIELD_USER_ROTATION));
+        assertEquals(PowerStateTracker.POWER_STATUS_DISCONNECTED, DeviceState.getPowerStatus(deviceState));
+        assertEquals(RotationProfile.MODE_NO_CHANGE, DeviceState.getRotationMode(deviceState));
+    }
+
+
+    @Test
+    public void resetPowerState_asksForPlugStateAgain() {
+        mEngine.setProfile(profile(true, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE, RotationProfile.MODE_AUTO_ROTATE));
+        mEngine.getPowerState().onPlugState(PowerStateTracker.PLUGGED_AC);
+
+        assertEquals(RotationEngine.DECISION_ROTATE, mEngine.decide());
+
+        mEngine.getPowerState().reset();
+
+        assertEquals(RotationEngine.DECISION_NEEDS_PLUG_STATE, mEngine.decide());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * What the TraceRecorder mirrors out of TraceSections, checked the way a test of the pipeline would.
+ * - 2018/04/16
+ */
+public class TraceRecorderTest {
+
+    private static final String SECTION_OUTER = "Test.outer";
+    private static final String SECTION_INNER = "Test.inner";
+    private static final String SECTION_ASYNC = "Test.async";
+
+    private static final int CAPACITY = 8;
+
+    private TraceRecorder mRecorder;
+
+
+    @Before
+    public void setUp() {
+        mRecorder = new TraceRecorder(CAPACITY, true);
+    }
+
+
+    @Test
+    public void nestedSections_areBalanced() {
+        assertTrue(mRecorder.begin(SECTION_OUTER));
+        assertTrue(mRecorder.begin(SECTION_INNER));
+        mRecorder.end();
+        mRecorder.end();
+
+        assertEquals(4, mRecorder.size());
+        assertEquals(
+                mRecorder.count(TraceRecorder.EVENT_BEGIN, SECTION_OUTER) + mRecorder.count(TraceRecorder.EVENT_BEGIN, SECTION_INNER),
+                mRecorder.count(TraceRecorder.EVENT_END, null)
+        );
+
+        // Oldest first, and ends don't carry a name
+        assertEquals(TraceRecorder.EVENT_BEGIN, mRecorder.getType(0));
+        assertEquals(SECTION_OUTER, mRecorder.getName(0));
+        assertEquals(SECTION_INNER, mRecorder.getName(1));
+        assertEquals(TraceRecorder.EVENT_END, mRecorder.getType(3));
+        assertNull(mRecorder.getName(3));
+
+        assertEquals(Thread.currentThread().getId(), mRecorder.getThreadId(0));
+        assertTrue(mRecorder.getTimestampNanos(3) >= mRecorder.getTimestampNanos(0));
+    }
+
+
+    @Test
+    public void count_matchesTypeAndName() {
+        mRecorder.begin(SECTION_OUTER);
+        mRecorder.end();
+        mRecorder.begin(SECTION_OUTER);
+        mRecorder.end();
+        mRecorder.beginAsync(SECTION_OUTER, 1);
+
+        assertEquals(2, mRecorder.count(TraceRecorder.EVENT_BEGIN, SECTION_OUTER));
+        assertEquals(1, mRecorder.count(TraceRecorder.EVENT_ASYNC_BEGIN, SECTION_OUTER));
+        assertEquals(2, mRecorder.count(TraceRecorder.EVENT_END, null));
+        assertEquals(0, mRecorder.count(TraceRecorder.EVENT_BEGIN, SECTION_INNER));
+    }
+
+
+    @Test
+    public void asyncSections_keepTheirCookies() {
+        mRecorder.beginAsync(SECTION_ASYNC, 42);
+        mRecorder.endAsync(SECTION_ASYNC, 42);
+
+        assertEquals(TraceRecorder.EVENT_ASYNC_BEGIN, mRecorder.getType(0));
+        assertEquals(42, mRecorder.getCookie(0));
+        assertEquals(TraceRecorder.EVENT_ASYNC_END, mRecorder.getType(1));
+        assertEquals(42, mRecorder.getCookie(1));
+    }
+
+
+    @Test
+    public void full_overwritesTheOldest() {
+        for (int i = 0; i < CAPACITY + 3; i++) {
+            mRecorder.beginAsync(SECTION_ASYNC, i);
+        }
+
+        assertEquals(CAPACITY, mRecorder.size());
+
+        // The first three have gone, the rest are still in order
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(i + 3, mRecorder.getCookie(i));
+        }
+
+        assertEquals(CAPACITY, mRecorder.count(TraceRecorder.EVENT_ASYNC_BEGIN, SECTION_ASYNC));
+    }
+
+
+    @Test
+    public void disabled_recordsNothing() {
+        mRecorder.setEnabled(false);
+
+        assertFalse(mRecorder.begin(SECTION_OUTER));
+        mRecorder.beginAsync(SECTION_ASYNC, 1);
+        mRecorder.endAsync(SECTION_ASYNC, 1);
+
+        assertFalse(mRecorder.isEnabled());
+        assertEquals(0, mRecorder.size());
+    }
+
+
+    @Test
+    public void disabledHalfway_stillEndsTheSection() {
+        assertTrue(mRecorder.begin(SECTION_OUTER));
+
+        mRecorder.setEnabled(false);
+        mRecorder.end();
+
+        assertEquals(1, mRecorder.count(TraceRecorder.EVENT_BEGIN, SECTION_OUTER));
+        assertEquals(1, mRecorder.count(TraceRecorder.EVENT_END, null));
+    }
+
+
+    @Test
+    public void clear_emptiesIt() {
+        mRecorder.begin(SECTION_OUTER);
+        mRecorder.end();
+        mRecorder.clear();
+
+        assertEquals(0, mRecorder.size());
+        assertEquals(0, mRecorder.count(TraceRecorder.EVENT_END, null));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Created by Brian Lau on 2018-04-16
+ * Copyright (c) 2018. All rights reserved.
+ *
+ * Last modified: 2018-04-16
+ */
+
+package com.justbnutz.dockorientationrotatorlator.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Write ordering and skipping for the TransitionPlanner.
+ * - 2018/04/16
+ */
+public class TransitionPlannerTest {
+
+    private WritePlan mPlan;
+
+
+    @Before
+    public void setUp() {
+        mPlan = new WritePlan();
+    }
+
+
+    @Test
+    public void autoRotateToFixed_writesUserRotationFirst() {
+        TransitionPlanner.plan(1, RotationMapping.ROTATION_0, 0, RotationMapping.ROTATION_90, 0, mPlan);
+
+        assertEquals(2, mPlan.getStepCount());
+
+        assertEquals(WritePlan.SETTING_USER_ROTATION, mPlan.getSetting(0));
+        assertEquals(RotationMapping.ROTATION_90, mPlan.getValue(0));
+
+        assertEquals(WritePlan.SETTING_ACCELEROMETER_ROTATION, mPlan.getSetting(1));
+        assertEquals(0, mPlan.getValue(1));
+    }
+
+
+    @Test
+    public void matchingUserRotation_onlyWritesAutoRotate() {
+        TransitionPlanner.plan(1, RotationMapping.ROTATION_90, 0, RotationMapping.ROTATION_90, 0, mPlan);
+
+        assertEquals(1, mPlan.getStepCount());
+        assertEquals(WritePlan.SETTING_ACCELEROMETER_ROTATION, mPlan.getSetting(0));
+        assertEquals(0, mPlan.getValue(0));
+    }
+
+
+    @Test
+    public void matchingAutoRotate_onlyWritesUserRotation() {
+        TransitionPlanner.plan(0, RotationMapping.ROTATION_0, 0, RotationMapping.ROTATION_270, 0, mPlan);
+
+        assertEquals(1, mPlan.getStepCount());
+        assertEquals(WritePlan.SETTING_USER_ROTATION, mPlan.getSetting(0));
+        assertEquals(RotationMapping.ROTATION_270, mPlan.getValue(0));
+    }
+
+
+    @Test
+    public void alreadyThere_writesNothing() {
+        TransitionPlanner.plan(0, RotationMapping.ROTATION_180, 0, RotationMapping.ROTATION_180, 0, mPlan);
+        assertEquals(0, mPlan.getStepCount());
+
+        TransitionPlanner.plan(1, RotationMapping.ROTATION_180, 1, RotationMapping.ROTATION_NONE, 0, mPlan);
+        assertEquals(0, mPlan.getStepCount());
+    }
+
+
+    @Test
+    public void toAutoRotate_leavesUserRotationAlone() {
+        TransitionPlanner.plan(0, RotationMapping.ROTATION_90, 1, RotationMapping.ROTATION_NONE, 0, mPlan);
+
+        assertEquals(1, mPlan.getStepCount());
+        assertEquals(WritePlan.SETTING_ACCELEROMETER_ROTATION, mPlan.getSetting(0));
+        assertEquals(1, mPlan.getValue(0));
+    }
+
+
+    @Test
+    public void replanning_clearsThePreviousPlan() {
+        TransitionPlanner.plan(1, RotationMapping.ROTATION_0, 0, RotationMapping.ROTATION_90, 120, mPlan);
+        assertEquals(2, mPlan.getStepCount());
+        assertEquals(120, mPlan.getInterWriteDelayMs());
+
+        TransitionPlanner.plan(0, RotationMapping.ROTATION_90, 0, RotationMapping.ROTATION_90, 0, mPlan);
+        assertEquals(0, mPlan.getStepCount());
+        assertEquals(0, mPlan.getInterWriteDelayMs());
+    }
+}